@@ -0,0 +1,123 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Choosing a bed on a 100,000-bed home in four-bed rooms, 80% occupied by residents of
+ * random gender (so many rooms are mixed and take no one): single choices with and without
+ * a preferred ward, single allocations that also assign, and one batch of admissions.
+ * Allocations fill the home, so they run in fixed batches on a home rebuilt for each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AllocationBenchmark {
+    static final int BEDS = 100_000;
+    static final int WARDS = BEDS / 2_000;
+
+    private BedAllocator allocator;
+    private final Random random = new Random(1);
+    private int next;
+
+    static CareHome build() {
+        return new FacilityGenerator(5).wards(WARDS, 500, 4).occupancy(0.8).staff(1, 1, 0).generate();
+    }
+
+    static Resident resident(Random random, String id) {
+        return new Resident(id, "Load Test", random.nextBoolean() ? Gender.M : Gender.F, null);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        allocator = build().getBedAllocator();
+    }
+
+    /** A fresh home per iteration with residents waiting for the 5,000 single allocations. */
+    @State(Scope.Thread)
+    public static class Singles {
+        CareHome home;
+        Resident[] waiting;
+        String[] wards;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            home = build();
+            Random random = new Random(2);
+            waiting = new Resident[5_000];
+            wards = new String[waiting.length];
+            for (int i = 0; i < waiting.length; i++) {
+                waiting[i] = resident(random, "A" + i);
+                home.getResidents().add(waiting[i]);
+                wards[i] = "W" + (random.nextInt(WARDS) + 1);
+            }
+            next = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception {
+            home.close();
+        }
+    }
+
+    /** A fresh home per invocation with a batch of 2,000 admissions, a fifth of them in pairs. */
+    @State(Scope.Thread)
+    public static class Intake {
+        CareHome home;
+        List<BedAllocator.Request> batch;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            home = build();
+            Random random = new Random(3);
+            batch = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                Resident r = resident(random, "B" + i);
+                home.getResidents().add(r);
+                batch.add(new BedAllocator.Request(r).group(i % 10 < 2 ? "pair" + i / 2 : null));
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws Exception {
+            home.close();
+        }
+    }
+
+    @Benchmark
+    public Bed chooseAnyWard() {
+        return allocator.choose(new BedAllocator.Request(resident(random, "C" + next++)));
+    }
+
+    @Benchmark
+    public Bed choosePreferredWard() {
+        return allocator.choose(new BedAllocator.Request(resident(random, "C" + next++))
+                .ward("W" + (random.nextInt(WARDS) + 1)));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2, batchSize = 5_000)
+    @Measurement(iterations = 5, batchSize = 5_000)
+    public void allocateBed(Singles singles) throws Exception {
+        int i = singles.next++;
+        singles.home.allocateBed("N1", new BedAllocator.Request(singles.waiting[i]).ward(singles.wards[i]));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void allocateBeds(Intake intake) throws Exception {
+        intake.home.allocateBeds("N1", intake.batch);
+    }
+}
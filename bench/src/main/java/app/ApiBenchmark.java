@@ -0,0 +1,138 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests against ApiServer on a 20,000-bed home, 90% occupied, from 2,000 clients, each a
+ * virtual thread on its own keep-alive connection over plain sockets (so the client costs
+ * little next to the server). Every invocation has each client send a few requests in turn;
+ * the mix is 40% resident views by occupied bed (logged), 30% resident lookups, 20%
+ * occupancy and 10% compliance reports. Any status but 200 fails the run. The client and
+ * server ends of the connections need a file limit (ulimit -n) above 4,000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ApiBenchmark {
+    static final int CLIENTS = 2000;
+    static final int REQUESTS = 5; // per client per invocation
+
+    private CareHome home;
+    private ApiServer api;
+    private String[] occupied;   // bed ids; the resident in bed Bn is RESn
+    private Socket[] sockets;
+    private InputStream[] ins;
+    private ExecutorService clients;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        home = new FacilityGenerator(7).wards(10, 500, 4).occupancy(0.9).staff(2, 50, 10).generate();
+        List<String> full = new ArrayList<>();
+        for (Ward ward : home.getWards()) {
+            for (Room room : ward.getRooms()) {
+                for (Bed bed : room.getBeds()) {
+                    if (!bed.isVacant()) full.add(bed.getBedId());
+                }
+            }
+        }
+        occupied = full.toArray(new String[0]);
+        api = new ApiServer(home, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        api.start();
+        sockets = new Socket[CLIENTS];
+        ins = new InputStream[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            sockets[i] = new Socket(InetAddress.getLoopbackAddress(), api.getPort());
+            sockets[i].setTcpNoDelay(true);
+            ins[i] = new BufferedInputStream(sockets[i].getInputStream());
+        }
+        clients = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        clients.close();
+        for (Socket socket : sockets) {
+            if (socket != null) socket.close();
+        }
+        api.close();
+        home.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(CLIENTS * REQUESTS)
+    public void requests() throws Exception {
+        List<Future<?>> pending = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            int client = i;
+            pending.add(clients.submit(() -> {
+                for (int r = 0; r < REQUESTS; r++) {
+                    request(client);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : pending) {
+            f.get();
+        }
+    }
+
+    private void request(int client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String bedId = occupied[random.nextInt(occupied.length)];
+        int pick = random.nextInt(10);
+        String path = pick < 4 ? "/beds/" + bedId + "/resident"
+                : pick < 7 ? "/residents/RES" + bedId.substring(1)
+                : pick < 9 ? "/occupancy" : "/compliance";
+        int status = exchange(sockets[client], ins[client], path, "N" + (random.nextInt(50) + 1));
+        if (status != 200) {
+            throw new IllegalStateException("HTTP " + status + " for " + path);
+        }
+    }
+
+    /** One keep-alive GET; returns the status after reading the whole response. */
+    private static int exchange(Socket socket, InputStream in, String path, String staffId) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nX-Staff-Id: " + staffId + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        String status = line(in);
+        int length = 0;
+        for (String header; !(header = line(in)).isEmpty(); ) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        if (in.readNBytes(length).length < length) throw new EOFException();
+        return Integer.parseInt(status.substring(9, 12));
+    }
+
+    private static String line(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int b; (b = in.read()) != '\n'; ) {
+            if (b < 0) throw new EOFException();
+            if (b != '\r') line.append((char) b);
+        }
+        return line.toString();
+    }
+}
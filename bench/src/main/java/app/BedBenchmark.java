@@ -0,0 +1,64 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bed lookups through the public operations: moveResident resolves two bed ids and
+ * assignResidentToBed one, plus the staff lookup and authorization check in front of each.
+ * Every invocation moves a resident out and back so the home does not drift.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BedBenchmark {
+    @Param({"1000", "100000"})
+    int beds;
+
+    private CareHome home;
+    private String[] occupied;
+    private String[] vacant;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        home = BenchHomes.build(beds, 10);
+        List<String> full = new ArrayList<>();
+        List<String> empty = new ArrayList<>();
+        for (Ward ward : home.getWards()) {
+            for (Room room : ward.getRooms()) {
+                for (Bed bed : room.getBeds()) {
+                    (bed.isVacant() ? empty : full).add(bed.getBedId());
+                }
+            }
+        }
+        int pairs = Math.min(full.size(), empty.size());
+        occupied = full.subList(0, pairs).toArray(new String[0]);
+        vacant = empty.subList(0, pairs).toArray(new String[0]);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearLogs() {
+        home.getLogs().clear();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void moveResident() throws Exception {
+        cursor = (cursor + 1) % occupied.length;
+        home.moveResident("M1", occupied[cursor], vacant[cursor]);
+        home.moveResident("M1", vacant[cursor], occupied[cursor]);
+    }
+
+    @Benchmark
+    public Resident viewResidentDetails() throws Exception {
+        cursor = (cursor + 1) % occupied.length;
+        return home.viewResidentDetails("M1", occupied[cursor]);
+    }
+}
@@ -0,0 +1,27 @@
+package app;
+
+/**
+ * The homes the benchmarks run against, from {@link FacilityGenerator} with a fixed seed:
+ * wards of twenty 10-bed rooms, half the beds occupied, and a weekly roster for every
+ * nurse and doctor. Nurses are N1..Nn.
+ */
+final class BenchHomes {
+    static final long SEED = 42;
+
+    private BenchHomes() {
+    }
+
+    static CareHome build(int beds, int nurses) {
+        return generator(beds, nurses).generate();
+    }
+
+    static FacilityGenerator generator(int beds, int nurses) {
+        int rooms = Math.max(1, beds / 10);
+        FacilityGenerator generator = new FacilityGenerator(SEED)
+                .occupancy(0.5)
+                .staff(2, nurses, Math.max(7, nurses / 10));
+        return rooms <= 20
+                ? generator.wards(1, rooms, 10)
+                : generator.wards(rooms / 20, 20, 10);
+    }
+}
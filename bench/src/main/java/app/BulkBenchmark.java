@@ -0,0 +1,96 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placing and moving a whole intake, one resident at a time against one batch call, with
+ * and without the journal. Each invocation times the full batch on homes built fresh for
+ * it: one empty, and one already holding the intake for the moves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BulkBenchmark {
+    @Param({"5000"})
+    int residents;
+
+    @Param({"false", "true"})
+    boolean journaled;
+
+    private CareHome vacant;
+    private CareHome placed;
+    private File dir;
+    private Map<String, Resident> assignments;
+    private Map<String, String> moves;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("carehome-bench").toFile();
+        assignments = new LinkedHashMap<>();
+        for (int i = 0; i < residents; i++) {
+            assignments.put(FacilityGenerator.bedId(i), new Resident("RES" + i, "Load Test", Gender.M, "None"));
+        }
+        // Walk backwards so every target is already empty when the loop reaches it
+        moves = new LinkedHashMap<>();
+        for (int i = residents - 1; i >= 0; i--) {
+            moves.put(FacilityGenerator.bedId(i), FacilityGenerator.bedId(i + 1));
+        }
+        vacant = open("vacant");
+        placed = open("placed");
+        placed.assignResidentsToBeds("N1", assignments);
+    }
+
+    private CareHome open(String name) throws Exception {
+        CareHome home = new FacilityGenerator(3).wards(Math.max(1, residents / 500), 25, 41)
+                .occupancy(0).staff(1, 1, 0).generate();
+        if (journaled) {
+            File snapshot = new File(dir, name + ".dat");
+            home.saveData(snapshot);
+            home.openJournal(new File(dir, name + ".journal"), snapshot);
+        }
+        return home;
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws Exception {
+        vacant.close();
+        placed.close();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void assignLoop() throws Exception {
+        for (Map.Entry<String, Resident> a : assignments.entrySet()) {
+            vacant.assignResidentToBed("N1", a.getValue(), a.getKey());
+        }
+    }
+
+    @Benchmark
+    public void assignBulk() throws Exception {
+        vacant.assignResidentsToBeds("N1", assignments);
+    }
+
+    @Benchmark
+    public void moveLoop() throws Exception {
+        for (Map.Entry<String, String> m : moves.entrySet()) {
+            placed.moveResident("N1", m.getKey(), m.getValue());
+        }
+    }
+
+    @Benchmark
+    public void moveBulk() throws Exception {
+        placed.moveResidents("N1", moves);
+    }
+}
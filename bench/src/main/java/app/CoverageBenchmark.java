@@ -0,0 +1,66 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuilding CoverageAnalyzer after a shift change, and answering on-duty and
+ * understaffing queries from it, for a roster of five random shifts per head (one
+ * doctor in ten).
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoverageBenchmark {
+    @Param({"10000"})
+    int staff;
+
+    private Schedule schedule;
+    private CoverageAnalyzer coverage;
+    private final Random random = new Random(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        schedule = new Schedule();
+        schedule.setRoleLookup(id -> id.startsWith("D") ? Role.DOCTOR : Role.NURSE);
+        for (int i = 0; i < staff; i++) {
+            String id = (i % 10 == 0 ? "D" : "N") + i;
+            for (DayOfWeek day : Arrays.copyOf(DayOfWeek.values(), 5)) {
+                schedule.addShift(id, shift(day));
+            }
+        }
+        coverage = schedule.getCoverage();
+    }
+
+    private Shift shift(DayOfWeek day) {
+        int start = random.nextInt(16 * 60);
+        int end = start + 4 * 60 + random.nextInt(4 * 60);
+        return new Shift(day, LocalTime.of(start / 60, start % 60), LocalTime.of(end / 60, end % 60));
+    }
+
+    @Benchmark
+    public CoverageAnalyzer rebuild() {
+        schedule.coverageChanged();
+        return schedule.getCoverage();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int onDuty() {
+        return coverage.onDuty(DayOfWeek.of(random.nextInt(7) + 1),
+                LocalTime.of(random.nextInt(24), random.nextInt(60))).size();
+    }
+
+    @Benchmark
+    public int understaffed() {
+        return coverage.understaffed(Role.NURSE, staff / 20).size();
+    }
+}
@@ -0,0 +1,104 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Journaled moves across a FacilityRegistry as facilities are added, with eight client
+ * threads spread evenly over 2,000-bed facilities, half empty; plus the group save. With
+ * nothing shared between shards the rate should grow with the facility count until the
+ * cores or the disk run out. Every invocation moves a resident out and back so the homes
+ * do not drift.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class FacilityBenchmark {
+    static final int CLIENTS = 8;
+
+    @Param({"1", "2", "4", "8"})
+    int facilities;
+
+    private File root;
+    private FacilityRegistry registry;
+    private final AtomicInteger clients = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("carehome-bench").toFile();
+        registry = new FacilityRegistry(root);
+        for (int i = 0; i < facilities; i++) {
+            registry.add("F" + i, new FacilityGenerator(i).wards(1, 500, 4).occupancy(0.5).staff(1, 1, 0).generate());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        registry.close();
+        delete(root);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+
+    /** One client: its facility, and the share of that facility's beds no other client moves. */
+    @State(Scope.Thread)
+    public static class Client {
+        CareHome home;
+        String[] occupied;
+        String[] vacant;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(FacilityBenchmark bench) {
+            int client = bench.clients.getAndIncrement();
+            int facility = client % bench.facilities;
+            int share = client / bench.facilities;
+            int shares = CLIENTS / bench.facilities;
+            home = bench.registry.get("F" + facility);
+            List<String> full = new ArrayList<>();
+            List<String> empty = new ArrayList<>();
+            for (Ward ward : home.getWards()) {
+                for (Room room : ward.getRooms()) {
+                    for (Bed bed : room.getBeds()) {
+                        (bed.isVacant() ? empty : full).add(bed.getBedId());
+                    }
+                }
+            }
+            int pairs = Math.min(full.size(), empty.size()) / shares;
+            occupied = full.subList(share * pairs, (share + 1) * pairs).toArray(new String[0]);
+            vacant = empty.subList(share * pairs, (share + 1) * pairs).toArray(new String[0]);
+        }
+    }
+
+    @Benchmark
+    @Threads(CLIENTS)
+    @OperationsPerInvocation(2)
+    public void moveResident(Client client) throws Exception {
+        client.cursor = (client.cursor + 1) % client.occupied.length;
+        client.home.moveResident("M1", client.occupied[client.cursor], client.vacant[client.cursor]);
+        client.home.moveResident("M1", client.vacant[client.cursor], client.occupied[client.cursor]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(1)
+    public void saveAll() throws Exception {
+        registry.saveAll();
+    }
+}
@@ -0,0 +1,85 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * FacilityImporter on generated files: one bed and one resident (placed in it) per row as
+ * CSV, and one prescription line per resident as JSONL, all imported into a fresh home per
+ * invocation. Everything imported stays live, so the fork gets a young generation large
+ * enough to show the parsing rate rather than the collector; run with -prof gc for the
+ * allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmn1g"})
+public class ImportBenchmark {
+    @Param({"1000000"})
+    int rows;
+
+    private File dir;
+    private Path beds;
+    private Path residents;
+    private Path prescriptions;
+    private CareHome home;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("carehome-bench").toFile();
+        beds = write("beds.csv", "ward,ward_name,room,bed",
+                i -> "W" + i / 1000 + ",Ward " + i / 1000 + ",W" + i / 1000 + "-R" + i / 20 % 50 + ",B" + i);
+        residents = write("residents.csv", "id,name,gender,condition,bed",
+                i -> "R" + i + ",\"Resident, " + i + "\"," + (i % 2 == 0 ? "F" : "M") + ",,B" + i);
+        prescriptions = write("prescriptions.jsonl", null,
+                i -> "{\"resident\": \"R" + i + "\", \"medicine\": \"Medicine " + i % 40
+                        + "\", \"dose\": \"" + (i % 4 + 1) * 50 + " mg\", \"time\": \"" + String.format("%02d", i % 24)
+                        + ":00\"}");
+    }
+
+    private Path write(String name, String header, IntFunction<String> row) throws Exception {
+        Path file = new File(dir, name).toPath();
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            if (header != null) {
+                out.write(header);
+                out.newLine();
+            }
+            for (int i = 0; i < rows; i++) {
+                out.write(row.apply(i));
+                out.newLine();
+            }
+        }
+        return file;
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeHome() throws Exception {
+        home.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void importAll() throws Exception {
+        home = new CareHome();
+        FacilityImporter importer = new FacilityImporter(home);
+        importer.importFile(FacilityImporter.Kind.BEDS, beds);
+        importer.importFile(FacilityImporter.Kind.RESIDENTS, residents);
+        importer.importFile(FacilityImporter.Kind.PRESCRIPTIONS, prescriptions);
+        importer.finish();
+    }
+}
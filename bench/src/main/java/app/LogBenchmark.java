@@ -0,0 +1,55 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending to the action log, with and without the write-ahead journal. The journal
+ * variant pays for an fsync per entry, so it shows the durability cost directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogBenchmark {
+    @Param({"false", "true"})
+    boolean journaled;
+
+    private CareHome home;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        home = BenchHomes.build(100, 10);
+        if (journaled) {
+            File dir = Files.createTempDirectory("carehome-bench").toFile();
+            home.openJournal(new File(dir, "carehome.journal"), new File(dir, "carehome.dat"));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearLogs() {
+        home.getLogs().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        home.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void log() {
+        home.log("N1", "Checked on resident");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void logContended() {
+        home.log("N1", "Checked on resident");
+    }
+}
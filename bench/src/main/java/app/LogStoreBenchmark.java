@@ -0,0 +1,75 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading back a LogStore of generated entries: reopening it (the scan that finds every
+ * record), a full iteration, random reads by position, and a staff query once the index
+ * is built. The store is written once per trial through the home's temporary store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogStoreBenchmark {
+    @Param({"100000", "1000000"})
+    int logEntries;
+
+    private File dir;
+    private LogStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("carehome-bench").toFile();
+        CareHome home = BenchHomes.generator(1000, 10)
+                .logs(logEntries, LocalDateTime.now().minusDays(365))
+                .generate();
+        home.openLogStore(dir);
+        home.close();
+        store = new LogStore(dir);
+        store.query(new LogQuery().staff("N1")).count();  // build the index
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public int reopen() throws Exception {
+        LogStore reopened = new LogStore(dir);
+        int size = reopened.size();
+        reopened.close();
+        return size;
+    }
+
+    @Benchmark
+    public int scan() {
+        int count = 0;
+        for (LogEntry ignored : store) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public LogEntry get() {
+        return store.get(ThreadLocalRandom.current().nextInt(logEntries));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long queryByStaff() {
+        return store.query(new LogQuery().staff("N1")).count();
+    }
+}
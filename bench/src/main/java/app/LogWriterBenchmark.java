@@ -0,0 +1,76 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of moveResident with the action log written inline on the caller's thread,
+ * through the background writer, and discarded, so the difference is what logging costs
+ * the caller. Sampled rather than averaged, for the percentiles. Every invocation moves a
+ * resident out and back so the home does not drift.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogWriterBenchmark {
+    @Param({"inline", "async", "off"})
+    String log;
+
+    private CareHome home;
+    private String[] occupied;
+    private String[] vacant;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        home = BenchHomes.build(10_000, 10);
+        switch (log) {
+            case "inline" -> home.setAsyncLogging(false);
+            case "off" -> home.setLogSink(new AsyncLogWriter.Sink() {
+                public void write(LogEntry[] entries, long[] seqs, int count) {
+                }
+
+                public void force() {
+                }
+            });
+            default -> {
+            }
+        }
+        List<String> full = new ArrayList<>();
+        List<String> empty = new ArrayList<>();
+        for (Ward ward : home.getWards()) {
+            for (Room room : ward.getRooms()) {
+                for (Bed bed : room.getBeds()) {
+                    (bed.isVacant() ? empty : full).add(bed.getBedId());
+                }
+            }
+        }
+        int pairs = Math.min(full.size(), empty.size());
+        occupied = full.subList(0, pairs).toArray(new String[0]);
+        vacant = empty.subList(0, pairs).toArray(new String[0]);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearLogs() {
+        home.getLogs().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        home.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void moveResident() throws Exception {
+        cursor = (cursor + 1) % occupied.length;
+        home.moveResident("M1", occupied[cursor], vacant[cursor]);
+        home.moveResident("M1", vacant[cursor], occupied[cursor]);
+    }
+}
@@ -0,0 +1,59 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One dose in a medication round, checked by staff id (lookup, role and duty check on every
+ * call) and through a StaffSession (cached duty window). The clock is pinned inside the
+ * nurse's shift.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrescriptionBenchmark {
+    @Param({"100", "10000"})
+    int nurses;
+
+    private CareHome home;
+    private StaffSession session;
+    private String residentId;
+    private Medicine medicine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        home = BenchHomes.build(1000, nurses);
+        home.getSchedule().assignShift(home.findStaff("N1"),
+                new Shift(DayOfWeek.MONDAY, LocalTime.of(6, 0), LocalTime.of(14, 0)));
+        ZoneId zone = ZoneId.systemDefault();
+        home.setClock(Clock.fixed(LocalDateTime.of(2024, 6, 3, 10, 0).atZone(zone).toInstant(), zone)); // a Monday
+        Prescription p = home.getPrescriptions().values().iterator().next();
+        residentId = p.getResidentId();
+        medicine = p.getLines().get(0).getMedicine();
+        session = home.openSession("N1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        home.close();
+    }
+
+    @Benchmark
+    public void administerByStaffId() throws Exception {
+        home.administerPrescription("N1", residentId, medicine, "10mg");
+    }
+
+    @Benchmark
+    public void administerWithSession() throws Exception {
+        home.administerPrescription(session, residentId, medicine, "10mg");
+    }
+}
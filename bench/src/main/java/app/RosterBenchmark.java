@@ -0,0 +1,60 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rostering a large staff with RosterGenerator on one thread and on the common pool: a
+ * quarter of the nurses on each nurse slot every day, and one doctor per ten nurses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RosterBenchmark {
+    @Param({"5000"})
+    int nurses;
+
+    @Param({"1", "common"})
+    String threads;
+
+    private List<Staff> staff;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        staff = new ArrayList<>();
+        for (int i = 0; i < nurses; i++) {
+            staff.add(new Nurse("N" + i, "Nurse", Gender.F, "n" + i, "p"));
+        }
+        for (int i = 0; i < nurses / 10; i++) {
+            staff.add(new Doctor("D" + i, "Doctor", Gender.M, "d" + i, "p"));
+        }
+        pool = threads.equals("common") ? ForkJoinPool.commonPool() : new ForkJoinPool(Integer.parseInt(threads));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public RosterGenerator.Roster generate() {
+        return new RosterGenerator(staff, new Schedule())
+                .slot(Role.NURSE, LocalTime.of(8, 0), LocalTime.of(16, 0), nurses / 4)
+                .slot(Role.NURSE, LocalTime.of(16, 0), LocalTime.of(23, 59), nurses / 4)
+                .slot(Role.DOCTOR, LocalTime.of(9, 0), LocalTime.of(10, 0), nurses / 100 + 1)
+                .budget(Duration.ofSeconds(5)).pool(pool)
+                .generate();
+    }
+}
@@ -0,0 +1,52 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Duty checks and the compliance scan over a roster of two shifts per nurse. */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScheduleBenchmark {
+    @Param({"100", "10000"})
+    int nurses;
+
+    private CareHome home;
+    private Schedule schedule;
+    private Staff[] staff;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        home = BenchHomes.build(100, nurses);
+        schedule = home.getSchedule();
+        staff = new Staff[nurses];
+        for (int i = 0; i < nurses; i++) {
+            staff[i] = home.findStaff("N" + (i + 1));
+        }
+    }
+
+    @Benchmark
+    public boolean isOnDuty() {
+        next = (next + 1) % staff.length;
+        return schedule.isOnDuty(staff[next], DayOfWeek.of(next % 7 + 1), LocalTime.of(10, 30));
+    }
+
+    @Benchmark
+    public List<String> onDutyAt() {
+        return schedule.getOnDuty(DayOfWeek.WEDNESDAY, LocalTime.of(15, 0));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void checkCompliance() throws Exception {
+        schedule.checkCompliance();
+    }
+}
@@ -0,0 +1,86 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A mixed workload against one shared 3,200-bed CareHome, half occupied: 40% moves between
+ * random beds (most fail on an empty source or a taken target, as they would at the desk),
+ * 30% staff lookups, 20% on-duty checks and 10% log entries. Compare the single thread with
+ * the contended run, or pick another thread count with -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class SharedHomeBenchmark {
+    private CareHome home;
+    private int beds;
+    private final AtomicInteger seeds = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FacilityGenerator generator = new FacilityGenerator(7).wards(64, 5, 10).occupancy(0.5);
+        home = generator.generate();
+        beds = generator.bedCount();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearLogs() {
+        home.getLogs().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        home.close();
+    }
+
+    /** Each thread's own random sequence. */
+    @State(Scope.Thread)
+    public static class Worker {
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp(SharedHomeBenchmark bench) {
+            random = new SplittableRandom(bench.seeds.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object mixed(Worker worker) {
+        return step(worker.random);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object mixedContended(Worker worker) {
+        return step(worker.random);
+    }
+
+    private Object step(SplittableRandom random) {
+        int pick = random.nextInt(10);
+        if (pick < 4) {
+            try {
+                home.moveResident("M1", FacilityGenerator.bedId(random.nextInt(beds)),
+                        FacilityGenerator.bedId(random.nextInt(beds)));
+            } catch (Exception expected) {
+                // empty source or occupied target
+            }
+            return null;
+        } else if (pick < 7) {
+            return home.findStaff(random.nextBoolean() ? "N1" : "D1");
+        } else if (pick < 9) {
+            return home.getStaffOnDuty(DayOfWeek.MONDAY, LocalTime.of(10, 0));
+        }
+        home.log("M1", "stress");
+        return null;
+    }
+}
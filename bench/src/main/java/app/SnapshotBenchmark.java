@@ -0,0 +1,42 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/** Full saveData / loadData round trips of the binary snapshot. */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({"1000", "100000"})
+    int beds;
+
+    private CareHome home;
+    private File saved;
+    private File scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        home = BenchHomes.build(beds, 100);
+        saved = File.createTempFile("carehome-bench", ".dat");
+        scratch = File.createTempFile("carehome-bench", ".dat");
+        saved.deleteOnExit();
+        scratch.deleteOnExit();
+        home.saveData(saved);
+    }
+
+    @Benchmark
+    public void save() throws Exception {
+        home.saveData(scratch);
+    }
+
+    @Benchmark
+    public CareHome load() throws Exception {
+        return CareHome.loadData(saved);
+    }
+}
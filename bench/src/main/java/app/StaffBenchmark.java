@@ -0,0 +1,47 @@
+package app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Staff lookups by id and username, and the per-role listing used by the menus. */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StaffBenchmark {
+    @Param({"100", "10000"})
+    int nurses;
+
+    private CareHome home;
+    private String[] ids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        home = BenchHomes.build(100, nurses);
+        ids = new String[nurses];
+        for (int i = 0; i < nurses; i++) {
+            ids[i] = "N" + (i + 1);
+        }
+    }
+
+    @Benchmark
+    public Staff findStaff() {
+        next = (next + 1) % ids.length;
+        return home.findStaff(ids[next]);
+    }
+
+    @Benchmark
+    public Staff findStaffByUsername() {
+        next = (next + 1) % ids.length;
+        return home.findStaffByUsername("n" + (next + 1));
+    }
+
+    @Benchmark
+    public int staffByRole() {
+        return home.getStaffByRole(Role.NURSE).size();
+    }
+}
@@ -0,0 +1,19 @@
+package app;
+
+/**
+ * What a log entry records. The log store writes the ordinal, so new codes must only ever
+ * be appended at the end.
+ */
+public enum ActionCode {
+    NOTE,
+    ASSIGN_BED,
+    MOVE_RESIDENT,
+    VIEW_RESIDENT,
+    ATTACH_PRESCRIPTION,
+    UPDATE_PRESCRIPTION,
+    ADMINISTER_PRESCRIPTION,
+    ADMIT_RESIDENTS,
+    ASSIGN_BEDS,
+    MOVE_RESIDENTS,
+    ASSIGN_SHIFTS
+}
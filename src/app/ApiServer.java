@@ -0,0 +1,455 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP/JSON front end for one CareHome, on the JDK's built-in server with a virtual thread
+ * per request, so thousands of clients can wait on ward locks or the journal without
+ * tying up platform threads.
+ *
+ *   java app.Main --serve [PORT]     (default 8080, localhost only)
+ *
+ * The acting staff member is named in an X-Staff-Id header, as commands name them in a
+ * batch script; there is no sign-in, so the server only listens on the loopback address
+ * unless given another. Request bodies are flat JSON objects. Routes:
+ *
+ *   GET  /occupancy
+ *   POST /residents                       {"id", "name", "gender", ["condition"]}
+ *   GET  /residents/ID
+ *   GET  /beds/BED/resident               (logged as a view)
+ *   PUT  /beds/BED/resident               {"resident"}
+ *   POST /beds/allocate                   {"resident", ["ward"]}   -> {"bed"}
+ *   POST /moves                           {"from", "to"}
+ *   POST /beds/BED/prescription           (empty prescription for the resident in BED)
+ *   GET  /prescriptions/RESIDENT
+ *   POST /prescriptions/RESIDENT/lines    {"medicine", "dose", "time"}
+ *   POST /prescriptions/RESIDENT/doses    {"medicine", "dose"}       (administered)
+ *   GET  /shifts/STAFF
+ *   POST /shifts                          {"staff", "day", "start", "end"}
+ *   GET  /on-duty?day=MONDAY&time=08:00
+ *   GET  /compliance
+ *   GET  /logs?staff=&resident=&bed=&action=&from=&to=&page=&size=   (newest first, 100 a page)
+ *
+ * Errors come back as {"error": message} with 400 for bad input, 401 without a staff id,
+ * 403 for unauthorized or off-duty staff, 404 for unknown ids, 409 when the home
+ * refuses the change (bed taken, no vacant bed and so on) and 500 for anything else.
+ */
+public class ApiServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    static final int PAGE_SIZE = 100;
+
+    private final CareHome home;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Resident> residents = new ConcurrentHashMap<>(); // residentId -> resident, filled on demand
+    private final Map<String, StaffSession> sessions = new ConcurrentHashMap<>(); // staffId -> session
+
+    /** Thrown by handlers for a response other than 200; message is sent as the error. */
+    static final class HttpError extends Exception {
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /** Keep-alive connections kept open between requests; the JDK's default of 200 drops the rest. */
+    static final int MAX_IDLE_CONNECTIONS = 10_000;
+
+    static {
+        // The server writes headers and body separately; without this, Nagle's algorithm and
+        // the client's delayed ACK hold every response back by about 40 ms.
+        defaultProperty("sun.net.httpserver.nodelay", "true");
+        defaultProperty("sun.net.httpserver.maxIdleConnections", "" + MAX_IDLE_CONNECTIONS);
+    }
+
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    public ApiServer(CareHome home, InetSocketAddress address) throws IOException {
+        this.home = home;
+        this.server = HttpServer.create(address, 4096);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        CareHome home = Main.openHome();
+        ApiServer api = new ApiServer(home, new InetSocketAddress("127.0.0.1", port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.close();
+            try {
+                home.close();
+            } catch (IOException e) {
+                System.out.println("ERROR closing: " + e.getMessage());
+            }
+        }));
+        api.start();
+        System.out.println("Serving on http://127.0.0.1:" + api.getPort() + "/ (Ctrl+C to stop)");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Stop accepting requests, let running ones finish for up to a second, then stop. */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+    // ---------- Dispatch ----------
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            body = route(exchange.getRequestMethod(), segments(exchange.getRequestURI().getRawPath()), exchange);
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (UnauthorizedActionException | NotOnDutyException e) {
+            status = 403;
+            body = error(e.getMessage());
+        } catch (NoSuchElementException e) {
+            status = 404;
+            body = error(e.getMessage());
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(e.getMessage());
+        } catch (Exception e) {
+            status = 409;
+            body = error(e.getMessage());
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String route(String method, List<String> path, HttpExchange exchange) throws Exception {
+        String first = path.isEmpty() ? "" : path.get(0);
+        int n = path.size();
+        switch (method + " " + first + "/" + n) {
+            case "GET occupancy/1" -> {
+                return occupancy(home.getOccupancy());
+            }
+            case "POST residents/1" -> {
+                Map<String, String> in = body(exchange);
+                Resident r = new Resident(required(in, "id"), required(in, "name"), gender(required(in, "gender")),
+                        in.get("condition"));
+                if (!home.addResidentIfAbsent(r)) {
+                    throw new HttpError(409, "Duplicate resident id: " + r.getResidentId());
+                }
+                residents.put(r.getResidentId(), r);
+                return resident(r);
+            }
+            case "GET residents/2" -> {
+                return resident(resident(path.get(1), true));
+            }
+            case "GET beds/3", "PUT beds/3" -> {
+                if (!path.get(2).equals("resident")) break;
+                if (method.equals("GET")) {
+                    return resident(home.viewResidentDetails(staff(exchange), path.get(1)));
+                }
+                home.assignResidentToBed(staff(exchange), resident(required(body(exchange), "resident"), true), path.get(1));
+                return "{}";
+            }
+            case "POST beds/2" -> {
+                if (!path.get(1).equals("allocate")) break;
+                Map<String, String> in = body(exchange);
+                Bed bed = home.allocateBed(staff(exchange),
+                        new BedAllocator.Request(resident(required(in, "resident"), true)).ward(in.get("ward")));
+                return "{\"bed\":" + quote(bed.getBedId()) + "}";
+            }
+            case "POST moves/1" -> {
+                Map<String, String> in = body(exchange);
+                home.moveResident(staff(exchange), required(in, "from"), required(in, "to"));
+                return "{}";
+            }
+            case "POST beds/3" -> {
+                if (!path.get(2).equals("prescription")) break;
+                Bed bed = home.getBedRegistry().find(path.get(1));
+                if (bed == null) throw new NoSuchElementException("Bed not found: " + path.get(1));
+                Resident r = bed.getResident();
+                if (r == null) throw new HttpError(409, "No resident in bed " + path.get(1));
+                home.attachPrescription(session(exchange), path.get(1), new Prescription(r.getResidentId()));
+                return "{}";
+            }
+            case "GET prescriptions/2" -> {
+                Prescription p = home.getPrescriptions().get(path.get(1));
+                if (p == null) throw new NoSuchElementException("No prescription for resident " + path.get(1));
+                return prescription(p);
+            }
+            case "POST prescriptions/3" -> {
+                Map<String, String> in = body(exchange);
+                Medicine medicine = new Medicine(required(in, "medicine"));
+                switch (path.get(2)) {
+                    case "lines" -> home.updatePrescription(session(exchange), path.get(1), medicine,
+                            required(in, "dose"), LocalTime.parse(required(in, "time")));
+                    case "doses" -> home.administerPrescription(session(exchange), path.get(1), medicine,
+                            required(in, "dose"));
+                    default -> throw new HttpError(404, "No such route: " + method + " " + String.join("/", path));
+                }
+                return "{}";
+            }
+            case "GET shifts/2" -> {
+                Staff s = home.findStaff(path.get(1));
+                if (s == null) throw new NoSuchElementException("Staff not found: " + path.get(1));
+                StringBuilder out = new StringBuilder("[");
+                for (Shift shift : home.getSchedule().getShiftsForStaff(s)) {
+                    if (out.length() > 1) out.append(',');
+                    out.append(shift(shift));
+                }
+                return out.append(']').toString();
+            }
+            case "POST shifts/1" -> {
+                Map<String, String> in = body(exchange);
+                Shift shift = new Shift(day(required(in, "day")), LocalTime.parse(required(in, "start")),
+                        LocalTime.parse(required(in, "end")));
+                String staffId = required(in, "staff");
+                if (home.findStaff(staffId) == null) throw new NoSuchElementException("Staff not found: " + staffId);
+                home.assignShifts(staff(exchange), Map.of(staffId, List.of(shift)));
+                return shift(shift);
+            }
+            case "GET on-duty/1" -> {
+                Map<String, String> q = query(exchange);
+                return strings(home.getSchedule().getOnDuty(day(required(q, "day")), LocalTime.parse(required(q, "time"))));
+            }
+            case "GET compliance/1" -> {
+                return compliance(home.getComplianceReport());
+            }
+            case "GET logs/1" -> {
+                return logs(query(exchange));
+            }
+            default -> {
+            }
+        }
+        throw new HttpError(404, "No such route: " + method + " /" + String.join("/", path));
+    }
+
+    private static List<String> segments(String rawPath) {
+        return Arrays.stream(rawPath.split("/"))
+                .filter(s -> !s.isEmpty())
+                .map(s -> URLDecoder.decode(s, StandardCharsets.UTF_8))
+                .toList();
+    }
+
+    // ---------- Requests ----------
+
+    private static String staff(HttpExchange exchange) throws HttpError {
+        String staffId = exchange.getRequestHeaders().getFirst("X-Staff-Id");
+        if (staffId == null || staffId.isBlank()) {
+            throw new HttpError(401, "X-Staff-Id header required");
+        }
+        return staffId;
+    }
+
+    /** One session per staff member for the life of the server, so repeated duty checks stay cheap. */
+    private StaffSession session(HttpExchange exchange) throws Exception {
+        String staffId = staff(exchange);
+        StaffSession s = sessions.get(staffId);
+        if (s == null) {
+            if (home.findStaff(staffId) == null) throw new NoSuchElementException("Staff not found: " + staffId);
+            s = sessions.computeIfAbsent(staffId, id -> {
+                try {
+                    return home.openSession(id);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        return s;
+    }
+
+    /** Resident by id; the index is refilled from the home when it has residents the index lacks. */
+    private Resident resident(String residentId, boolean required) {
+        Resident r = residents.get(residentId);
+        List<Resident> all = home.getResidents();
+        if (r == null && all.size() != residents.size()) {  // only rescan when someone was added
+            synchronized (all) {
+                for (Resident each : all) {
+                    residents.putIfAbsent(each.getResidentId(), each);
+                }
+            }
+            r = residents.get(residentId);
+        }
+        if (r == null && required) {
+            throw new NoSuchElementException("Resident not found: " + residentId);
+        }
+        return r;
+    }
+
+    private static Map<String, String> body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8).replace('\n', ' ').replace('\r', ' ');
+            return text.isBlank() ? new HashMap<>() : FacilityImporter.json(text);
+        } catch (StringIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed JSON body");
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (!value.isEmpty()) params.put(key, value);
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> in, String key) {
+        String value = in.get(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return value;
+    }
+
+    private static Gender gender(String text) {
+        return Gender.valueOf(text.toUpperCase());
+    }
+
+    private static DayOfWeek day(String text) {
+        return DayOfWeek.valueOf(text.toUpperCase());
+    }
+
+    private String logs(Map<String, String> q) {
+        LogQuery query = new LogQuery().staff(q.get("staff")).resident(q.get("resident")).bed(q.get("bed")).newestFirst();
+        if (q.containsKey("action")) {
+            query.actions(ActionCode.valueOf(q.get("action").toUpperCase()));
+        }
+        if (q.containsKey("from") || q.containsKey("to")) {
+            query.between(q.containsKey("from") ? LocalDateTime.parse(q.get("from")) : null,
+                    q.containsKey("to") ? LocalDateTime.parse(q.get("to")) : null);
+        }
+        query.page(Integer.parseInt(q.getOrDefault("page", "0")), Integer.parseInt(q.getOrDefault("size", "" + PAGE_SIZE)));
+        StringBuilder out = new StringBuilder("[");
+        home.queryLogs(query).forEach(e -> {
+            if (out.length() > 1) out.append(',');
+            out.append("{\"time\":").append(quote(e.getTimestamp().toString()))
+                    .append(",\"action\":").append(quote(e.getCode().name()))
+                    .append(",\"staff\":").append(quote(e.getStaffId()))
+                    .append(",\"resident\":").append(quote(e.getResidentId()))
+                    .append(",\"bed\":").append(quote(e.getBedId()))
+                    .append(",\"text\":").append(quote(e.getAction())).append('}');
+        });
+        return out.append(']').toString();
+    }
+
+    // ---------- JSON ----------
+
+    private static String occupancy(Occupancy o) {
+        return "{\"beds\":" + o.getBeds() + ",\"occupied\":" + o.getOccupied() + ",\"vacant\":" + o.getVacant()
+                + ",\"male\":" + o.getOccupied(Gender.M) + ",\"female\":" + o.getOccupied(Gender.F) + "}";
+    }
+
+    private static String resident(Resident r) {
+        return "{\"id\":" + quote(r.getResidentId()) + ",\"name\":" + quote(r.getName())
+                + ",\"gender\":" + quote(r.getGender() == null ? null : r.getGender().name())
+                + ",\"condition\":" + quote(r.getMedicalCondition()) + "}";
+    }
+
+    private static String prescription(Prescription p) {
+        StringBuilder out = new StringBuilder("{\"resident\":").append(quote(p.getResidentId())).append(",\"lines\":[");
+        boolean first = true;
+        for (PrescriptionLine line : p.getLines()) {
+            if (!first) out.append(',');
+            first = false;
+            out.append("{\"medicine\":").append(quote(line.getMedicine().toString()))
+                    .append(",\"dose\":").append(quote(line.getDose()))
+                    .append(",\"time\":").append(quote(line.getTime() == null ? null : line.getTime().toString())).append('}');
+        }
+        return out.append("]}").toString();
+    }
+
+    private static String shift(Shift s) {
+        return "{\"day\":" + quote(s.getDay().name()) + ",\"start\":" + quote(s.getStart().toString())
+                + ",\"end\":" + quote(s.getEnd().toString()) + "}";
+    }
+
+    private static String compliance(ComplianceReport report) {
+        StringBuilder out = new StringBuilder("{\"compliant\":").append(report.isCompliant()).append(",\"violations\":[");
+        boolean first = true;
+        for (ComplianceViolation v : report.getViolations()) {
+            if (!first) out.append(',');
+            first = false;
+            out.append("{\"type\":").append(quote(v.getType().name()))
+                    .append(",\"staff\":").append(quote(v.getStaffId()))
+                    .append(",\"detail\":").append(quote(v.getDetail())).append('}');
+        }
+        return out.append("]}").toString();
+    }
+
+    private static String strings(Collection<String> values) {
+        StringBuilder out = new StringBuilder("[");
+        for (String value : values) {
+            if (out.length() > 1) out.append(',');
+            out.append(quote(value));
+        }
+        return out.append(']').toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message == null ? "Internal error" : message) + "}";
+    }
+
+    static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder out = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c)); else out.append(c);
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -0,0 +1,268 @@
+package app;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves action-log writes off the caller's thread. Callers publish entries into a fixed
+ * ring buffer, which takes one CAS and no lock. A single background thread wakes every
+ * flush interval (or early, once the ring is half full) and writes whatever has been
+ * published to the sink in one batch, in publication order.
+ *
+ * When the ring is full the backpressure policy decides: BLOCK waits for space, DROP
+ * discards the entry and counts it (see {@link #getDropped}), CALLER_RUNS has the caller
+ * write out the ring itself, as the background thread would, before queueing its entry.
+ * Batches are written under one lock whichever thread writes them, so entries always reach
+ * the sink in publication order. DROP is for logs that may lose entries; replay only
+ * restores the most recent ones, so CareHome does not allow it for its audit log.
+ *
+ * Durability BUFFERED leaves written batches to the OS page cache until {@link #flush} or
+ * close forces them; FLUSHED forces after every batch. Either way the journal, not the log,
+ * is what makes a mutation durable, and replay restores any entries lost in a crash.
+ *
+ * A batch the sink throws on stays unwritten (it counts as pending) and the writer stops:
+ * from then on publish, drain, flush and close all throw with the sink's failure, so it
+ * reaches every caller that depends on the log rather than whichever happens to look first.
+ * Close marks the claim counter before draining, so an entry is either claimed in time to be
+ * written or refused.
+ */
+public class AsyncLogWriter implements Closeable {
+    public enum Durability { BUFFERED, FLUSHED }
+
+    public enum Backpressure { BLOCK, DROP, CALLER_RUNS }
+
+    /**
+     * Where batches go; called by one thread at a time (the writer, or a caller under
+     * CALLER_RUNS). A write that throws is taken to have written none of its batch.
+     */
+    interface Sink {
+        void write(LogEntry[] entries, long[] journalSeqs, int count);
+
+        void force();
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 20;
+    private static final long CLOSED = Long.MIN_VALUE; // set in claimed once close has begun
+
+    private final LogEntry[] entries;
+    private final long[] journalSeqs;
+    private final AtomicLongArray published; // slot -> sequence of the entry published there
+    private final int mask;
+    private final long flushIntervalNanos;
+    private final Durability durability;
+    private final Backpressure backpressure;
+    private final Sink sink;
+
+    private final AtomicLong claimed = new AtomicLong();  // next sequence to hand out, plus CLOSED
+    private final AtomicLong written = new AtomicLong();  // everything below has reached the sink
+    private final LongAdder dropped = new LongAdder();
+    private final Thread consumer;
+    private final ReentrantLock writing = new ReentrantLock();  // held while a batch goes to the sink
+    private final LogEntry[] batch;       // guarded by writing
+    private final long[] batchSeqs;       // guarded by writing
+    private boolean dirty;                // guarded by writing: written but not yet forced
+    private volatile boolean running = true;
+    private volatile RuntimeException failure; // the sink's, once it has thrown
+
+    AsyncLogWriter(int capacity, long flushIntervalMillis, Durability durability, Backpressure backpressure, Sink sink) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.entries = new LogEntry[capacity];
+        this.journalSeqs = new long[capacity];
+        this.batch = new LogEntry[capacity];
+        this.batchSeqs = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000;
+        this.durability = durability;
+        this.backpressure = backpressure;
+        this.sink = sink;
+        this.consumer = new Thread(this::run, "carehome-log-writer");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /** Queue an entry. Returns false only if it was dropped under the DROP policy. */
+    public boolean publish(LogEntry entry, long journalSeq) {
+        long seq;
+        while (true) {
+            seq = claimed.get();
+            if (seq < 0) {
+                throw new IllegalStateException("Log writer closed");
+            }
+            checkFailure();
+            if (seq - written.get() < entries.length) {
+                if (claimed.compareAndSet(seq, seq + 1)) break;
+                continue;
+            }
+            LockSupport.unpark(consumer);
+            switch (backpressure) {
+                case DROP -> {
+                    dropped.increment();
+                    return false;
+                }
+                case CALLER_RUNS -> {
+                    int count;
+                    writing.lock();
+                    try {
+                        count = writeBatch();
+                    } finally {
+                        writing.unlock();
+                    }
+                    if (count == 0) LockSupport.parkNanos(10_000);  // next slot claimed, not yet published
+                }
+                default -> LockSupport.parkNanos(10_000);
+            }
+        }
+        int slot = (int) seq & mask;
+        entries[slot] = entry;
+        journalSeqs[slot] = journalSeq;
+        published.set(slot, seq);
+        if (seq - written.get() == entries.length / 2) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /** Wait until everything published so far has been written to the sink. */
+    public void drain() {
+        long target = claimed();
+        while (written.get() < target) {
+            checkFailure();
+            if (!consumer.isAlive()) {
+                throw new IllegalStateException("Log writer stopped");
+            }
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(50_000);
+        }
+        checkFailure();
+    }
+
+    /** Drain, then force the sink to disk. */
+    public void flush() {
+        drain();
+        writing.lock();
+        try {
+            sink.force();
+        } finally {
+            writing.unlock();
+        }
+    }
+
+    /** Entries discarded because the ring was full under the DROP policy. */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /** Entries published but not yet written. */
+    public long getPending() {
+        return claimed() - written.get();
+    }
+
+    /** Write out and force everything still queued, then stop the writer thread. */
+    @Override
+    public void close() {
+        if (claimed.getAndUpdate(c -> c | CLOSED) < 0) return;
+        try {
+            drain();
+        } finally {
+            running = false;
+            LockSupport.unpark(consumer);
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        checkFailure();
+    }
+
+    private long claimed() {
+        return claimed.get() & ~CLOSED;
+    }
+
+    private void checkFailure() {
+        RuntimeException f = failure;
+        if (f != null) {
+            throw new IllegalStateException("Log writer failed", f);
+        }
+    }
+
+    // ---------- Writer thread ----------
+
+    private void run() {
+        while (failure == null && (running || written.get() < claimed())) {
+            int count;
+            writing.lock();
+            try {
+                count = writeBatch();
+            } finally {
+                writing.unlock();
+            }
+            if (count == 0 && running) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+        writing.lock();
+        try {
+            if (dirty && failure == null) {
+                sink.force();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            writing.unlock();
+        }
+    }
+
+    /**
+     * Write every entry published so far, in order, and return how many; call holding
+     * writing. Nothing is written once the sink has failed, and a failed batch stays queued.
+     */
+    private int writeBatch() {
+        if (failure != null) return 0;
+        long next = written.get();
+        int count = 0;
+        while (count < batch.length) {
+            int slot = (int) (next + count) & mask;
+            if (published.get(slot) != next + count) break;
+            batch[count] = entries[slot];
+            batchSeqs[count] = journalSeqs[slot];
+            count++;
+        }
+        try {
+            if (count > 0) {
+                sink.write(batch, batchSeqs, count);
+                dirty = true;
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            return 0;
+        } finally {
+            Arrays.fill(batch, 0, count, null);
+        }
+        for (int i = 0; i < count; i++) {
+            entries[(int) (next + i) & mask] = null;
+        }
+        written.set(next + count);
+        if (dirty && durability == Durability.FLUSHED) {
+            try {
+                sink.force();
+                dirty = false;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,212 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headless mode: runs a script of CareHome operations, one per line, with no menu and
+ * buffered output. Only failures, query results and a closing summary are printed.
+ *
+ *   java app.Main --batch script.txt     (or "-" / nothing for stdin)
+ *
+ * Tokens are separated by spaces; wrap a token in double quotes to include spaces. Blank
+ * lines and lines starting with # are skipped. Commands:
+ *
+ *   add-resident ID "NAME" M|F ["CONDITION"]
+ *   assign STAFF RESIDENT BED
+ *   allocate STAFF RESIDENT [WARD]             (best vacant bed; see BedAllocator)
+ *   move STAFF FROM_BED TO_BED
+ *   attach DOCTOR BED                          (empty prescription)
+ *   prescribe DOCTOR RESIDENT MEDICINE DOSE HH:MM
+ *   administer STAFF RESIDENT MEDICINE DOSE
+ *   shift STAFF DAY HH:MM HH:MM
+ *   doctor-present DAY Y|N
+ *   log STAFF "TEXT"
+ *   compliance
+ *   save
+ *
+ * A failing command is reported with its line number and the script carries on.
+ */
+public class BatchRunner {
+    private final CareHome home;
+    private final PrintWriter out;
+    private final Map<String, Resident> residents = new HashMap<>();
+    private final Map<String, StaffSession> sessions = new HashMap<>();
+
+    public BatchRunner(CareHome home, PrintWriter out) {
+        this.home = home;
+        this.out = out;
+        for (Resident r : home.getResidents()) {
+            residents.put(r.getResidentId(), r);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        CareHome home = Main.openHome();
+        try (Reader in = args.length == 0 || args[0].equals("-")
+                ? new InputStreamReader(System.in)
+                : new FileReader(args[0])) {
+            new BatchRunner(home, new PrintWriter(new OutputStreamWriter(System.out), false)).run(in);
+        }
+    }
+
+    /** Run every command in the script. Returns the number that failed. */
+    public int run(Reader script) throws IOException {
+        BufferedReader lines = script instanceof BufferedReader b ? b : new BufferedReader(script, 1 << 16);
+        int commands = 0;
+        int failures = 0;
+        long start = System.nanoTime();
+        String line;
+        for (int number = 1; (line = lines.readLine()) != null; number++) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            commands++;
+            try {
+                execute(tokens(trimmed));
+            } catch (Exception e) {
+                failures++;
+                out.println("line " + number + ": " + trimmed + " -> ERROR: " + e.getMessage());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("%d commands, %d failed, %.3f s, %.0f commands/s%n", commands, failures, seconds,
+                seconds > 0 ? commands / seconds : 0.0);
+        out.flush();
+        return failures;
+    }
+
+    private void execute(List<String> t) throws Exception {
+        switch (t.get(0)) {
+            case "add-resident" -> {
+                arguments(t, 3, 4);
+                Resident r = new Resident(t.get(1), t.get(2), Gender.valueOf(t.get(3).toUpperCase()),
+                        t.size() > 4 ? t.get(4) : null);
+                if (residents.containsKey(r.getResidentId())) {
+                    throw new IllegalArgumentException("Duplicate resident id: " + r.getResidentId());
+                }
+                home.addResident(r);
+                residents.put(r.getResidentId(), r);
+            }
+            case "assign" -> {
+                arguments(t, 3, 3);
+                home.assignResidentToBed(t.get(1), resident(t.get(2)), t.get(3));
+            }
+            case "allocate" -> {
+                arguments(t, 2, 3);
+                home.allocateBed(t.get(1), new BedAllocator.Request(resident(t.get(2))).ward(t.size() > 3 ? t.get(3) : null));
+            }
+            case "move" -> {
+                arguments(t, 3, 3);
+                home.moveResident(t.get(1), t.get(2), t.get(3));
+            }
+            case "attach" -> {
+                arguments(t, 2, 2);
+                Bed bed = home.getBedRegistry().find(t.get(2));
+                if (bed == null || bed.getResident() == null) {
+                    throw new Exception("No resident in bed " + t.get(2));
+                }
+                home.attachPrescription(session(t.get(1)), t.get(2), new Prescription(bed.getResident().getResidentId()));
+            }
+            case "prescribe" -> {
+                arguments(t, 5, 5);
+                home.updatePrescription(session(t.get(1)), t.get(2), new Medicine(t.get(3)), t.get(4),
+                        LocalTime.parse(t.get(5)));
+            }
+            case "administer" -> {
+                arguments(t, 4, 4);
+                home.administerPrescription(session(t.get(1)), t.get(2), new Medicine(t.get(3)), t.get(4));
+            }
+            case "shift" -> {
+                arguments(t, 4, 4);
+                Staff s = home.findStaff(t.get(1));
+                if (s == null) throw new Exception("Staff not found: " + t.get(1));
+                home.getSchedule().assignShift(s, new Shift(DayOfWeek.valueOf(t.get(2).toUpperCase()),
+                        LocalTime.parse(t.get(3)), LocalTime.parse(t.get(4))));
+            }
+            case "doctor-present" -> {
+                arguments(t, 2, 2);
+                home.getSchedule().setDoctorPresent(DayOfWeek.valueOf(t.get(1).toUpperCase()),
+                        t.get(2).toUpperCase().startsWith("Y"));
+            }
+            case "log" -> {
+                arguments(t, 2, 2);
+                home.log(t.get(1), t.get(2));
+            }
+            case "compliance" -> {
+                arguments(t, 0, 0);
+                out.println(home.getComplianceReport());
+            }
+            case "save" -> {
+                arguments(t, 0, 0);
+                Main.save(home);
+            }
+            default -> throw new IllegalArgumentException("Unknown command " + t.get(0));
+        }
+    }
+
+    private Resident resident(String residentId) throws Exception {
+        Resident r = residents.get(residentId);
+        if (r == null) throw new Exception("Resident not found: " + residentId);
+        return r;
+    }
+
+    /** One session per staff member for the whole script, so repeated checks stay cheap. */
+    private StaffSession session(String staffId) throws Exception {
+        StaffSession s = sessions.get(staffId);
+        if (s == null) {
+            s = home.openSession(staffId);
+            sessions.put(staffId, s);
+        }
+        return s;
+    }
+
+    private static void arguments(List<String> t, int min, int max) {
+        int given = t.size() - 1;
+        if (given < min || given > max) {
+            throw new IllegalArgumentException(t.get(0) + " takes " + (min == max ? min : min + "-" + max)
+                    + " arguments, got " + given);
+        }
+    }
+
+    /** Split on spaces, keeping double-quoted tokens whole. */
+    static List<String> tokens(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quote");
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
@@ -4,7 +4,8 @@ import java.io.Serializable;
 
 public class Bed implements Serializable {
     private final String bedId;
-    private Resident resident;
+    private volatile Resident resident;
+    private volatile Room room;
 
     public Bed(String bedId) { this.bedId = bedId; }
 
@@ -12,13 +13,27 @@ public class Bed implements Serializable {
     public Resident getResident() { return resident; }
     public boolean isVacant() { return resident == null; }
 
-    public void assignResident(Resident r) throws Exception {
+    /** Room this bed belongs to, or null if it has not been added to one yet. */
+    public Room getRoom() { return room; }
+
+    void setRoom(Room room) { this.room = room; }
+
+    public synchronized void assignResident(Resident r) throws Exception {
         if (!isVacant()) throw new Exception("Bed " + bedId + " is already occupied!");
         this.resident = r;
+        Room room = this.room;
+        if (room != null) {
+            room.occupancyChanged(this, r.getGender(), 1);
+        }
     }
 
-    public void removeResident() {
+    public synchronized void removeResident() {
+        Resident r = resident;
         this.resident = null;
+        Room room = this.room;
+        if (r != null && room != null) {
+            room.occupancyChanged(this, r.getGender(), -1);
+        }
     }
 
     @Override
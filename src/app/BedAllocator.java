@@ -0,0 +1,183 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * Picks vacant beds for residents. A resident only goes into an empty room or one whose
+ * residents are all of their own gender. Among those, in order of preference:
+ *
+ *   1. the room of the bed named with {@link Request#nextTo} (an existing room-mate),
+ *      or of an earlier resident in the same batch group (the first of a group looks for
+ *      a room with space for all of them);
+ *   2. the preferred ward, filling rooms that already have residents before opening an
+ *      empty one, so empty rooms stay free for either gender;
+ *   3. the same across the whole home.
+ *
+ * Each step is a lookup in the free-room buckets that wards and the home keep up to date
+ * (see FreeRooms), so the cost does not depend on the number of beds.
+ *
+ * Choosing does not assign: use {@link CareHome#allocateBed} and
+ * {@link CareHome#allocateBeds}, which choose and assign in one step.
+ */
+public class BedAllocator {
+    /** Rooms looked at when seeking space for a whole group, before settling for any bed. */
+    private static final int GROUP_SCAN = 64;
+
+    /** What to place and where it would rather go. */
+    public static final class Request {
+        final Resident resident;
+        String wardId;
+        String nextToBedId;
+        String group;
+
+        public Request(Resident resident) {
+            if (resident == null) throw new IllegalArgumentException("Request needs a resident");
+            this.resident = resident;
+        }
+
+        public Resident getResident() { return resident; }
+
+        public Request ward(String wardId) {
+            this.wardId = wardId;
+            return this;
+        }
+
+        /** Prefer the room of this bed, so the newcomer joins its occupant. */
+        public Request nextTo(String bedId) {
+            this.nextToBedId = bedId;
+            return this;
+        }
+
+        /** In a batch, prefer the same room as others with the same group (a couple, say). */
+        public Request group(String group) {
+            this.group = group;
+            return this;
+        }
+    }
+
+    private final CareHome home;
+
+    BedAllocator(CareHome home) {
+        this.home = home;
+    }
+
+    /** The best vacant bed for the request, or null if no suitable bed is free. */
+    public Bed choose(Request request) {
+        return new Plan().place(request, 1);
+    }
+
+    /**
+     * Beds for every request in one pass, each chosen as if the ones before it had already
+     * moved in (room-mates and gender included); null where nothing suitable is left.
+     */
+    public List<Bed> chooseAll(List<Request> requests) {
+        Map<String, Integer> groupSizes = new HashMap<>();
+        for (Request r : requests) {
+            if (r.group != null) groupSizes.merge(r.group, 1, Integer::sum);
+        }
+        Plan plan = new Plan();
+        List<Bed> beds = new ArrayList<>(requests.size());
+        for (Request r : requests) {
+            beds.add(plan.place(r, r.group == null ? 1 : groupSizes.get(r.group)));
+        }
+        return beds;
+    }
+
+    /** Beds taken so far in one pass, and what that does to their rooms. */
+    private final class Plan {
+        private final Set<Bed> taken = new HashSet<>();
+        private final Map<Room, Integer> claimedKey = new HashMap<>();  // room -> FreeRooms key it now has
+        private final Map<String, Room> groups = new HashMap<>();
+        // where the last scan of each bucket stopped, per resident key: rooms before it are no
+        // use to this pass, so a batch does not rescan the rooms it has just filled
+        private final Map<NavigableSet<Room>, Room[]> cursors = new IdentityHashMap<>();
+
+        /** Choose for r; need is how many beds its room should have free (its group's size). */
+        Bed place(Request r, int need) {
+            int key = FreeRooms.key(r.resident.getGender());
+            Bed bed = null;
+            if (r.group != null && groups.containsKey(r.group)) {
+                bed = vacantIn(groups.get(r.group), key);
+            }
+            if (bed == null && r.nextToBedId != null) {
+                Bed mate = home.getBedRegistry().find(r.nextToBedId);
+                if (mate != null && mate.getRoom() != null) {
+                    bed = vacantIn(mate.getRoom(), key);
+                }
+            }
+            if (bed == null) {
+                bed = fromFreeRooms(r, key, need);
+            }
+            if (bed == null && need > 1) {
+                bed = fromFreeRooms(r, key, 1);
+            }
+            if (bed != null) {
+                taken.add(bed);
+                Room room = bed.getRoom();
+                claimedKey.put(room, key);
+                if (r.group != null) groups.putIfAbsent(r.group, room);
+            }
+            return bed;
+        }
+
+        /** A bed in the preferred ward, else anywhere. */
+        private Bed fromFreeRooms(Request r, int key, int need) {
+            Bed bed = null;
+            if (r.wardId != null) {
+                Ward ward = findWard(r.wardId);
+                if (ward != null) {
+                    bed = first(ward.getFreeRooms(), key, need);
+                }
+            }
+            return bed != null ? bed : first(home.getBedRegistry().getFreeRooms(), key, need);
+        }
+
+        /** A bed in a partly filled room of the resident's gender, else in an empty room. */
+        private Bed first(FreeRooms free, int key, int need) {
+            Bed bed = key == FreeRooms.MIXED ? null : scan(free.rooms(key), key, need);
+            return bed != null ? bed : scan(free.rooms(FreeRooms.EMPTY), key, need);
+        }
+
+        private Bed scan(NavigableSet<Room> rooms, int key, int need) {
+            if (need > 1) {
+                int looked = 0;
+                for (Room room : rooms) {
+                    Bed bed = vacantIn(room, key);
+                    if (bed != null && room.countVacant(taken) >= need) return bed;
+                    if (++looked == GROUP_SCAN) break;
+                }
+                return null;
+            }
+            Room[] marks = cursors.computeIfAbsent(rooms, k -> new Room[FreeRooms.MIXED + 1]);
+            Room from = marks[key];
+            for (Room room : from == null ? rooms : rooms.tailSet(from, true)) {
+                marks[key] = room;
+                Bed bed = vacantIn(room, key);
+                if (bed != null) return bed;
+            }
+            return null;
+        }
+
+        /** A bed in room the resident may take, allowing for earlier choices in this pass. */
+        private Bed vacantIn(Room room, int key) {
+            Integer claimed = claimedKey.get(room);
+            int state = claimed != null ? claimed : room.getFreeKey();
+            boolean fits = state == FreeRooms.EMPTY || (state == key && key != FreeRooms.MIXED);
+            return fits ? room.getVacantBed(taken) : null;
+        }
+    }
+
+    private Ward findWard(String wardId) {
+        for (Ward w : home.getWards()) {
+            if (w.getWardId().equals(wardId)) return w;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+package app;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of every bed in the home by bedId. Wards keep it up to date as rooms and beds
+ * are added or removed, so lookups never walk the ward/room/bed tree. Lookups are lock-free;
+ * registrations are serialized so the duplicate check holds.
+ */
+public class BedRegistry {
+    private final Map<String, Bed> beds = new ConcurrentHashMap<>();
+    private final Occupancy occupancy = new Occupancy();  // over every registered ward
+    private final FreeRooms freeRooms = new FreeRooms();
+
+    public synchronized void register(Bed bed) {
+        Bed existing = beds.putIfAbsent(bed.getBedId(), bed);
+        if (existing != null && existing != bed) {
+            throw new IllegalArgumentException("Duplicate bed id: " + bed.getBedId());
+        }
+    }
+
+    public void unregister(Bed bed) {
+        beds.remove(bed.getBedId(), bed);
+    }
+
+    /** Register every bed in the given rooms, or none of them if any id is already taken. */
+    public synchronized void registerAll(List<Room> rooms) {
+        Set<String> incoming = new HashSet<>();
+        for (Room room : rooms) {
+            for (Bed bed : room.getBeds()) {
+                Bed existing = beds.get(bed.getBedId());
+                if ((existing != null && existing != bed) || !incoming.add(bed.getBedId())) {
+                    throw new IllegalArgumentException("Duplicate bed id: " + bed.getBedId());
+                }
+            }
+        }
+        rooms.forEach(room -> room.getBeds().forEach(bed -> beds.put(bed.getBedId(), bed)));
+    }
+
+    public void unregisterAll(List<Room> rooms) {
+        rooms.forEach(room -> room.getBeds().forEach(this::unregister));
+    }
+
+    public Bed find(String bedId) {
+        return beds.get(bedId);
+    }
+
+    public Room roomOf(Bed bed) {
+        return bed.getRoom();
+    }
+
+    public Ward wardOf(Bed bed) {
+        Room room = bed.getRoom();
+        return room == null ? null : room.getWard();
+    }
+
+    /** Beds and residents across the home; kept current by the wards, so reading it is O(1). */
+    public Occupancy getOccupancy() {
+        return occupancy;
+    }
+
+    FreeRooms getFreeRooms() {
+        return freeRooms;
+    }
+
+    public int size() {
+        return beds.size();
+    }
+
+    public void clear() {
+        beds.clear();
+        occupancy.clear();
+        freeRooms.clear();
+    }
+}
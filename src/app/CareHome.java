@@ -1,73 +1,356 @@
 package app;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
 import java.time.DayOfWeek;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
-public class CareHome implements Serializable {
-    private static CareHome instance;
+/**
+ * The care home engine. Safe to share between threads: bed operations lock only the
+ * ward(s) they touch (two wards are always locked in Ward lock order), other mutations
+ * share a home-wide read lock, and snapshots take that lock exclusively so they see a
+ * consistent home.
+ */
+public class CareHome {
+    private static volatile CareHome instance;
+
+    /** Journal size at which a background compaction is started. */
+    private static final long COMPACT_THRESHOLD_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Log entries reach the store in publication order, which can differ from journal order
+     * by at most the number of concurrent writers; replay checks this many recent entries for
+     * gaps instead of trusting the highest stored sequence number alone.
+     */
+    private static final int REPLAY_WINDOW = 4096;
+
+    /** The journal record each thread appended and has yet to wait on; see record. */
+    private static final ThreadLocal<Unsynced> unsynced = new ThreadLocal<>();
 
     private final List<Ward> wards;
+    private final BedRegistry beds;
+    private final BedAllocator allocator = new BedAllocator(this);
     private final List<Staff> staff;
+    private final StaffDirectory directory;
     private final List<Resident> residents;
-    private final List<LogEntry> logs;
+    private volatile LogStore logs;
     private final Schedule schedule;
     private final Map<String, Prescription> prescriptions; // residentId -> prescription
+    private long journalSeq; // last journal record folded into this snapshot
+    private volatile WeekClock clock = new WeekClock(Clock.systemDefaultZone());
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
 
-    private CareHome() {
-        wards = new ArrayList<>();
-        staff = new ArrayList<>();
-        residents = new ArrayList<>();
-        logs = new ArrayList<>();
+    private volatile Journal journal;
+    private volatile MedicationRounds rounds; // built on first use
+    private File snapshotFile;
+    private ExecutorService compactor;
+    private CompletableFuture<Void> compaction;
+    private long logReplayFloor; // journal records up to here already have their log entries...
+    private LogStore.RecentSeqs logReplaySeen = LogStore.RecentSeqs.NONE; // ...except gaps among these
+    private volatile AsyncLogWriter logWriter;
+    private Map<String, Resident> replayResidents; // residents by id while the journal is replayed
+    private boolean asyncLogging = true;
+    private AsyncLogWriter.Sink logSink; // null: the store
+    private int logCapacity = AsyncLogWriter.DEFAULT_CAPACITY;
+    private long logFlushMillis = AsyncLogWriter.DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private AsyncLogWriter.Durability logDurability = AsyncLogWriter.Durability.BUFFERED;
+    private AsyncLogWriter.Backpressure logBackpressure = AsyncLogWriter.Backpressure.BLOCK;
+    private long droppedLogEntries;
+
+    CareHome() {
+        beds = new BedRegistry();
+        wards = new TrackedList<>(w -> {
+            w.setRegistry(beds);
+            rounds = null;
+        }, w -> {
+            w.setRegistry(null);
+            rounds = null;
+        });
+        directory = new StaffDirectory();
         schedule = new Schedule();
-        prescriptions = new HashMap<>();
+        schedule.setRoleLookup(id -> {
+            Staff s = directory.findById(id);
+            return s == null ? null : s.getRole();
+        });
+        staff = new TrackedList<>(s -> {
+            directory.add(s);
+            schedule.coverageChanged();
+        }, s -> {
+            directory.remove(s);
+            schedule.coverageChanged();
+        });
+        residents = Collections.synchronizedList(new ArrayList<>());
+        logs = new LogStore();
+        prescriptions = new ConcurrentHashMap<>();
     }
 
     public static CareHome getInstance() {
-        if (instance == null) {
-            instance = new CareHome();
+        CareHome local = instance;
+        if (local == null) {
+            synchronized (CareHome.class) {
+                local = instance;
+                if (local == null) {
+                    instance = local = new CareHome();
+                }
+            }
         }
-        return instance;
+        return local;
     }
 
     // ---------- Basic Management ----------
 
     public void addWard(Ward ward) {
-        wards.add(ward);
+        stateLock.writeLock().lock();
+        try {
+            wards.add(ward);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
     }
 
     public List<Ward> getWards() {
         return wards;
     }
 
+    public BedRegistry getBedRegistry() {
+        return beds;
+    }
+
+    /** Home-wide bed and resident counts; see Ward and Room for the same per ward and room. */
+    public Occupancy getOccupancy() {
+        return beds.getOccupancy();
+    }
+
     public void addStaff(Staff s) {
-        staff.add(s);
+        stateLock.readLock().lock();
+        try {
+            synchronized (directory) {
+                directory.checkNew(s);
+                record(JournalOp.ADD_STAFF, System.currentTimeMillis(), out -> writeStaff(out, s));
+                staff.add(s);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
     }
 
     public List<Staff> getStaff() {
         return staff;
     }
 
+    /** Staff member with the given id, or null if there is none. */
+    public Staff findStaff(String staffId) {
+        return directory.findById(staffId);
+    }
+
+    public Staff findStaffByUsername(String username) {
+        return directory.findByUsername(username);
+    }
+
+    public List<Staff> getStaffByRole(Role role) {
+        return directory.withRole(role);
+    }
+
+    /** Everyone rostered at the given day+time. */
+    public List<Staff> getStaffOnDuty(DayOfWeek day, LocalTime time) {
+        List<Staff> onDuty = new ArrayList<>();
+        for (String staffId : schedule.getOnDuty(day, time)) {
+            Staff s = directory.findById(staffId);
+            if (s != null) onDuty.add(s);
+        }
+        return onDuty;
+    }
+
     public void addResident(Resident r) {
-        residents.add(r);
+        stateLock.readLock().lock();
+        try {
+            record(JournalOp.ADD_RESIDENT, System.currentTimeMillis(), out -> writeResident(out, r));
+            residents.add(r);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+    }
+
+    /** As addResident, unless a resident with the same id is already registered; false then. */
+    public boolean addResidentIfAbsent(Resident r) {
+        stateLock.readLock().lock();
+        try {
+            synchronized (residents) {
+                for (Resident each : residents) {
+                    if (each.getResidentId().equals(r.getResidentId())) return false;
+                }
+                record(JournalOp.ADD_RESIDENT, System.currentTimeMillis(), out -> writeResident(out, r));
+                residents.add(r);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+        return true;
     }
 
     public List<Resident> getResidents() {
         return residents;
     }
 
+    /** The action log, including every entry logged before this call. */
     public List<LogEntry> getLogs() {
+        drainLogs();
         return logs;
     }
 
+    /** Search the action log by staff, resident, bed, action and time; see {@link LogQuery}. */
+    public Stream<LogEntry> queryLogs(LogQuery query) {
+        drainLogs();
+        return logs.query(query);
+    }
+
     public Schedule getSchedule() {
         return schedule;
     }
 
     public void log(String staffId, String action) {
-        logs.add(new LogEntry(staffId, action, LocalDateTime.now()));
+        stateLock.readLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.LOG, now, out -> {
+                out.writeUTF(staffId);
+                out.writeUTF(action);
+            });
+            addLog(LogEntry.note(staffId, action, now), seq);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+    }
+
+    /**
+     * Append to the action log, through the background writer unless async logging is off.
+     * seq is the journal record behind the entry; entries the store already holds (it
+     * persists on its own) are skipped when the journal is replayed.
+     */
+    private void addLog(LogEntry entry, long seq) {
+        if (seq != 0 && seq <= logReplayFloor
+                && (seq < logReplaySeen.first || logReplaySeen.seqs.contains(seq))) {
+            return;
+        }
+        if (!asyncLogging) {
+            logs.append(entry, seq);
+            return;
+        }
+        AsyncLogWriter writer = logWriter;
+        if (writer == null) {
+            synchronized (this) {
+                if (logWriter == null) {
+                    logWriter = new AsyncLogWriter(logCapacity, logFlushMillis, logDurability, logBackpressure,
+                            logSink != null ? logSink : new AsyncLogWriter.Sink() {
+                                public void write(LogEntry[] entries, long[] seqs, int count) {
+                                    logs.appendAll(entries, seqs, count);
+                                }
+
+                                public void force() {
+                                    logs.flush();
+                                }
+                            });
+                }
+                writer = logWriter;
+            }
+        }
+        writer.publish(entry, seq);
+    }
+
+    /**
+     * Set up the background log writer: ring capacity (a power of two), how often it
+     * writes batches, whether each batch is forced to disk, and what a full ring does.
+     * DROP is refused while the log goes to the store: it is the audit trail, and replay
+     * restores only the most recent entries, so a dropped one would be lost for good.
+     */
+    public synchronized void configureLogWriter(int capacity, long flushIntervalMillis,
+                                                AsyncLogWriter.Durability durability,
+                                                AsyncLogWriter.Backpressure backpressure) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        if (backpressure == AsyncLogWriter.Backpressure.DROP && logSink == null) {
+            throw new IllegalArgumentException("DROP would lose audit log entries");
+        }
+        stopLogWriter();
+        logCapacity = capacity;
+        logFlushMillis = flushIntervalMillis;
+        logDurability = durability;
+        logBackpressure = backpressure;
+    }
+
+    /** With async logging off, entries are written on the caller's thread as they are logged. */
+    public synchronized void setAsyncLogging(boolean enabled) {
+        if (!enabled) {
+            stopLogWriter();
+        }
+        asyncLogging = enabled;
+    }
+
+    /** Send log batches to sink instead of the store; for measuring the cost of logging itself. */
+    synchronized void setLogSink(AsyncLogWriter.Sink sink) {
+        if (sink == null && logBackpressure == AsyncLogWriter.Backpressure.DROP) {
+            throw new IllegalArgumentException("DROP would lose audit log entries");
+        }
+        stopLogWriter();
+        logSink = sink;
+    }
+
+    /** The background writer, or null before the first entry is logged or with async logging off. */
+    public AsyncLogWriter getLogWriter() {
+        return logWriter;
+    }
+
+    /** Log entries discarded by a full ring under DROP, across every writer this home has run. */
+    public synchronized long getDroppedLogEntries() {
+        return droppedLogEntries + (logWriter != null ? logWriter.getDropped() : 0);
+    }
+
+    private synchronized void stopLogWriter() {
+        if (logWriter != null) {
+            droppedLogEntries += logWriter.getDropped();
+            try {
+                logWriter.close();
+            } finally {
+                logWriter = null;
+            }
+        }
+    }
+
+    private void drainLogs() {
+        AsyncLogWriter writer = logWriter;
+        if (writer != null) {
+            writer.drain();
+        }
+    }
+
+    /** Make every logged entry durable in the store. */
+    private void flushLogs() {
+        drainLogs();
+        logs.flush();
+    }
+
+    // ---------- Sessions ----------
+
+    /** Sign a staff member in, for repeated prescription work; see {@link StaffSession}. */
+    public StaffSession openSession(String staffId) throws Exception {
+        return new StaffSession(this, getStaffById(staffId), schedule.versionOf(staffId));
     }
 
     // ---------- Resident & Bed Management ----------
@@ -77,11 +360,28 @@ public class CareHome implements Serializable {
         checkAuthorization(s, Role.MANAGER, Role.NURSE);
 
         Bed bed = findBed(bedId);
-        if (!bed.isVacant()) {
-            throw new Exception("Bed " + bedId + " is already occupied.");
-        }
+        withWards(bed, bed, () -> {
+            if (!bed.isVacant()) {
+                throw new Exception("Bed " + bedId + " is already occupied.");
+            }
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.ASSIGN_BED, now, out -> {
+                out.writeUTF(staffId);
+                writeResident(out, resident);
+                out.writeUTF(bedId);
+            });
+            applyAssign(staffId, resident, bed, now, seq);
+            return null;
+        });
+    }
+
+    private void applyAssign(String staffId, Resident resident, Bed bed, long timestamp, long seq) throws Exception {
         bed.assignResident(resident);
-        log(staffId, "Assigned resident " + resident.getResidentId() + " to bed " + bedId);
+        MedicationRounds r = rounds;
+        if (r != null) {
+            r.placed(resident.getResidentId(), bed);
+        }
+        addLog(new LogEntry(ActionCode.ASSIGN_BED, staffId, resident.getResidentId(), bed.getBedId(), null, null, timestamp), seq);
     }
 
     public void moveResident(String staffId, String fromBedId, String toBedId) throws Exception {
@@ -91,18 +391,37 @@ public class CareHome implements Serializable {
         Bed from = findBed(fromBedId);
         Bed to = findBed(toBedId);
 
-        if (from.getResident() == null) {
-            throw new Exception("No resident in bed " + fromBedId);
-        }
-        if (!to.isVacant()) {
-            throw new Exception("Bed " + toBedId + " already occupied");
-        }
+        // Both wards stay locked from the checks to the move, so no one sees the resident in
+        // neither bed or both
+        withWards(from, to, () -> {
+            if (from.getResident() == null) {
+                throw new Exception("No resident in bed " + fromBedId);
+            }
+            if (!to.isVacant()) {
+                throw new Exception("Bed " + toBedId + " already occupied");
+            }
+
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.MOVE_RESIDENT, now, out -> {
+                out.writeUTF(staffId);
+                out.writeUTF(fromBedId);
+                out.writeUTF(toBedId);
+            });
+            applyMove(staffId, from, to, now, seq);
+            return null;
+        });
+    }
 
+    private void applyMove(String staffId, Bed from, Bed to, long timestamp, long seq) throws Exception {
         Resident r = from.getResident();
         from.removeResident();
         to.assignResident(r);
+        MedicationRounds due = rounds;
+        if (due != null) {
+            due.placed(r.getResidentId(), to);
+        }
 
-        log(staffId, "Moved resident " + r.getResidentId() + " from " + fromBedId + " to " + toBedId);
+        addLog(new LogEntry(ActionCode.MOVE_RESIDENT, staffId, r.getResidentId(), from.getBedId(), to.getBedId(), null, timestamp), seq);
     }
 
     public Resident viewResidentDetails(String staffId, String bedId) throws Exception {
@@ -110,11 +429,24 @@ public class CareHome implements Serializable {
         checkAuthorization(s, Role.DOCTOR, Role.NURSE, Role.MANAGER);
 
         Bed bed = findBed(bedId);
-        if (bed.getResident() == null) {
+        Resident resident = bed.getResident();
+        if (resident == null) {
             throw new Exception("No resident in bed " + bedId);
         }
-        log(staffId, "Viewed resident details for bed " + bedId);
-        return bed.getResident();
+        stateLock.readLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.VIEW_RESIDENT, now, out -> {
+                out.writeUTF(staffId);
+                out.writeUTF(resident.getResidentId());
+                out.writeUTF(bedId);
+            });
+            addLog(new LogEntry(ActionCode.VIEW_RESIDENT, staffId, resident.getResidentId(), bed.getBedId(), null, null, now), seq);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+        return resident;
     }
 
     // ---------- Prescription Management ----------
@@ -125,14 +457,49 @@ public class CareHome implements Serializable {
         checkAuthorization(s, Role.DOCTOR);
 
         checkOnDuty(s);
+        attachChecked(staffId, bedId, prescription);
+    }
+
+    /** As above, with the authorization and duty check answered from the session. */
+    public void attachPrescription(StaffSession session, String bedId, Prescription prescription)
+            throws UnauthorizedActionException, NotOnDutyException, Exception {
+        checkAuthorization(session, Role.DOCTOR);
+        checkOnDuty(session);
+        attachChecked(session.getStaffId(), bedId, prescription);
+    }
 
+    private void attachChecked(String staffId, String bedId, Prescription prescription) throws Exception {
         Bed bed = findBed(bedId);
-        if (bed.getResident() == null) {
-            throw new Exception("No resident in bed " + bedId);
-        }
+        withWards(bed, bed, () -> {
+            if (bed.getResident() == null) {
+                throw new Exception("No resident in bed " + bedId);
+            }
 
-        prescriptions.put(bed.getResident().getResidentId(), prescription);
-        log(staffId, "Attached prescription for resident " + bed.getResident().getResidentId());
+            String residentId = bed.getResident().getResidentId();
+            // Updates hold the prescription they change, so an update lands wholly before or after this
+            Prescription replaced = prescriptions.get(residentId);
+            synchronized (replaced != null ? replaced : prescription) {
+                synchronized (prescription) {
+                    long now = System.currentTimeMillis();
+                    long seq = record(JournalOp.ATTACH_PRESCRIPTION, now, out -> {
+                        out.writeUTF(staffId);
+                        out.writeUTF(residentId);
+                        writePrescription(out, prescription);
+                    });
+                    applyAttach(staffId, residentId, prescription, now, seq);
+                }
+            }
+            return null;
+        });
+    }
+
+    private void applyAttach(String staffId, String residentId, Prescription prescription, long timestamp, long seq) {
+        prescriptions.put(residentId, prescription);
+        MedicationRounds r = rounds;
+        if (r != null) {
+            r.prescribed(prescription);
+        }
+        addLog(new LogEntry(ActionCode.ATTACH_PRESCRIPTION, staffId, residentId, null, null, null, timestamp), seq);
     }
 
     public void updatePrescription(String staffId, String residentId, Medicine med, String dose, LocalTime time)
@@ -141,13 +508,96 @@ public class CareHome implements Serializable {
         checkAuthorization(s, Role.DOCTOR);
 
         checkOnDuty(s);
+        updateChecked(staffId, residentId, med, dose, time);
+    }
 
-        Prescription p = prescriptions.get(residentId);
-        if (p == null) {
-            throw new IllegalArgumentException("No prescription found for resident " + residentId);
-        }
+    /** As above, with the authorization and duty check answered from the session. */
+    public void updatePrescription(StaffSession session, String residentId, Medicine med, String dose, LocalTime time)
+            throws UnauthorizedActionException, NotOnDutyException, Exception {
+        checkAuthorization(session, Role.DOCTOR);
+        checkOnDuty(session);
+        updateChecked(session.getStaffId(), residentId, med, dose, time);
+    }
+
+    private void updateChecked(String staffId, String residentId, Medicine med, String dose, LocalTime time) throws Exception {
+        withPrescription(residentId, p -> {
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.UPDATE_PRESCRIPTION, now, out -> {
+                out.writeUTF(staffId);
+                out.writeUTF(residentId);
+                out.writeUTF(med.getName());
+                out.writeUTF(dose);
+                out.writeInt(time.toSecondOfDay());
+            });
+            applyUpdate(staffId, p, med, dose, time, now, seq);
+        });
+    }
+
+    private void applyUpdate(String staffId, Prescription p, Medicine med, String dose, LocalTime time, long timestamp, long seq) {
         p.addItem(med, dose, time);
-        log(staffId, "Updated prescription for resident " + residentId + " with " + med.getName());
+        MedicationRounds r = rounds;
+        if (r != null) {
+            r.prescribed(p);
+        }
+        addLog(new LogEntry(ActionCode.UPDATE_PRESCRIPTION, staffId, p.getResidentId(), null, med.getName(), dose, timestamp), seq);
+    }
+
+    /**
+     * Add or replace many lines at once, e.g. a doctor entering a full regimen: one
+     * authorization and duty check, one journal record and one log entry for the lot.
+     */
+    public void updatePrescription(String staffId, String residentId, List<PrescriptionLine> lines)
+            throws UnauthorizedActionException, NotOnDutyException, Exception {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("No prescription lines given");
+        }
+        Staff s = getStaffById(staffId);
+        checkAuthorization(s, Role.DOCTOR);
+
+        checkOnDuty(s);
+        updateLinesChecked(staffId, residentId, lines);
+    }
+
+    /** As above, with the authorization and duty check answered from the session. */
+    public void updatePrescription(StaffSession session, String residentId, List<PrescriptionLine> lines)
+            throws UnauthorizedActionException, NotOnDutyException, Exception {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("No prescription lines given");
+        }
+        checkAuthorization(session, Role.DOCTOR);
+        checkOnDuty(session);
+        updateLinesChecked(session.getStaffId(), residentId, lines);
+    }
+
+    private void updateLinesChecked(String staffId, String residentId, List<PrescriptionLine> lines) throws Exception {
+        withPrescription(residentId, p -> {
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.UPDATE_PRESCRIPTION_LINES, now, out -> {
+                out.writeUTF(staffId);
+                out.writeUTF(residentId);
+                out.writeInt(lines.size());
+                for (PrescriptionLine line : lines) {
+                    out.writeUTF(line.getMedicine().getName());
+                    out.writeUTF(line.getDose());
+                    out.writeInt(line.getTime().toSecondOfDay());
+                }
+            });
+            applyUpdateLines(staffId, p, lines, now, seq);
+        });
+    }
+
+    private void applyUpdateLines(String staffId, Prescription p, List<PrescriptionLine> lines, long timestamp, long seq) {
+        StringBuilder names = new StringBuilder();
+        for (PrescriptionLine line : lines) {
+            p.addLine(line);
+            if (names.length() > 0) names.append(", ");
+            names.append(line.getMedicine().getName());
+        }
+        MedicationRounds r = rounds;
+        if (r != null) {
+            r.prescribed(p);
+        }
+        addLog(new LogEntry(ActionCode.UPDATE_PRESCRIPTION, staffId, p.getResidentId(), null, names.toString(), null, timestamp), seq);
     }
 
     public void administerPrescription(String staffId, String residentId, Medicine med, String dose)
@@ -156,34 +606,459 @@ public class CareHome implements Serializable {
         checkAuthorization(s, Role.NURSE, Role.DOCTOR);
 
         checkOnDuty(s);
+        administerChecked(staffId, residentId, med, dose);
+    }
 
+    /**
+     * As above for a signed-in staff member: while their shift lasts and their roster is
+     * unchanged, the authorization and duty check cost no lookups.
+     */
+    public void administerPrescription(StaffSession session, String residentId, Medicine med, String dose)
+            throws UnauthorizedActionException, NotOnDutyException, Exception {
+        checkAuthorization(session, Role.NURSE, Role.DOCTOR);
+        checkOnDuty(session);
+        administerChecked(session.getStaffId(), residentId, med, dose);
+    }
+
+    private void administerChecked(String staffId, String residentId, Medicine med, String dose) throws Exception {
         Prescription p = prescriptions.get(residentId);
         if (p == null) {
             throw new IllegalArgumentException("No prescription for resident " + residentId);
         }
 
-        LocalTime now = LocalTime.now();
-        log(staffId, "Administered " + dose + " of " + med.getName() + " to resident " + residentId + " at " + now);
+        stateLock.readLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.ADMINISTER_PRESCRIPTION, now, out -> {
+                out.writeUTF(staffId);
+                out.writeUTF(residentId);
+                out.writeUTF(med.getName());
+                out.writeUTF(dose);
+            });
+            applyAdminister(staffId, residentId, med.getName(), dose, now, seq);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+    }
+
+    private void applyAdminister(String staffId, String residentId, String medName, String dose, long timestamp, long seq) {
+        addLog(new LogEntry(ActionCode.ADMINISTER_PRESCRIPTION, staffId, residentId, null, medName, dose, timestamp), seq);
+    }
+
+    // ---------- Bulk Operations ----------
+    //
+    // Each batch checks the staff member once, validates every item before changing
+    // anything, and is then applied under one set of locks as one journal record and one
+    // grouped log entry. A batch that fails validation changes nothing.
+
+    /** Add many residents to the home; ids must be new and distinct. */
+    public void admitResidents(String staffId, List<Resident> admitted) throws Exception {
+        Staff s = getStaffById(staffId);
+        checkAuthorization(s, Role.MANAGER, Role.NURSE);
+
+        stateLock.readLock().lock();
+        try {
+            synchronized (residents) {
+                Set<String> ids = new HashSet<>();
+                for (Resident r : residents) {
+                    ids.add(r.getResidentId());
+                }
+                for (Resident r : admitted) {
+                    if (!ids.add(r.getResidentId())) {
+                        throw new IllegalArgumentException("Duplicate resident id: " + r.getResidentId());
+                    }
+                }
+                long now = System.currentTimeMillis();
+                long seq = record(JournalOp.ADMIT_RESIDENTS, now, out -> {
+                    out.writeUTF(staffId);
+                    out.writeInt(admitted.size());
+                    for (Resident r : admitted) {
+                        writeResident(out, r);
+                    }
+                });
+                applyAdmit(staffId, admitted, now, seq);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+    }
+
+    private void applyAdmit(String staffId, List<Resident> admitted, long timestamp, long seq) {
+        residents.addAll(admitted);
+        List<LogEntry.Item> items = new ArrayList<>(admitted.size());
+        for (Resident r : admitted) {
+            items.add(new LogEntry.Item(r.getResidentId(), null, null, null));
+        }
+        addLog(LogEntry.bulk(ActionCode.ADMIT_RESIDENTS, staffId, items, timestamp), seq);
+    }
+
+    /** Put each resident into its bed (bedId -> resident); every bed must be vacant. */
+    public void assignResidentsToBeds(String staffId, Map<String, Resident> assignments) throws Exception {
+        Staff s = getStaffById(staffId);
+        checkAuthorization(s, Role.MANAGER, Role.NURSE);
+
+        List<Bed> targets = new ArrayList<>(assignments.size());
+        List<Resident> placed = new ArrayList<>(assignments.size());
+        Set<String> residentIds = new HashSet<>();
+        for (Map.Entry<String, Resident> a : assignments.entrySet()) {
+            if (!residentIds.add(a.getValue().getResidentId())) {
+                throw new IllegalArgumentException("Resident " + a.getValue().getResidentId() + " assigned twice");
+            }
+            targets.add(findBed(a.getKey()));
+            placed.add(a.getValue());
+        }
+        withWards(targets, () -> {
+            for (Bed bed : targets) {
+                if (!bed.isVacant()) {
+                    throw new Exception("Bed " + bed.getBedId() + " is already occupied.");
+                }
+            }
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.ASSIGN_BEDS, now, out -> {
+                out.writeUTF(staffId);
+                out.writeInt(targets.size());
+                for (int i = 0; i < targets.size(); i++) {
+                    writeResident(out, placed.get(i));
+                    out.writeUTF(targets.get(i).getBedId());
+                }
+            });
+            applyAssignAll(staffId, placed, targets, now, seq);
+            return null;
+        });
+    }
+
+    private void applyAssignAll(String staffId, List<Resident> placed, List<Bed> targets, long timestamp, long seq)
+            throws Exception {
+        MedicationRounds due = rounds;
+        List<LogEntry.Item> items = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            Resident r = placed.get(i);
+            Bed bed = targets.get(i);
+            bed.assignResident(r);
+            if (due != null) {
+                due.placed(r.getResidentId(), bed);
+            }
+            items.add(new LogEntry.Item(r.getResidentId(), bed.getBedId(), null, null));
+        }
+        addLog(LogEntry.bulk(ActionCode.ASSIGN_BEDS, staffId, items, timestamp), seq);
+    }
+
+    /**
+     * Move residents between beds (fromBedId -> toBedId) in one step. A target may be a bed
+     * that another move in the batch empties, so residents can swap beds or a whole ward can
+     * be rearranged.
+     */
+    public void moveResidents(String staffId, Map<String, String> moves) throws Exception {
+        Staff s = getStaffById(staffId);
+        checkAuthorization(s, Role.MANAGER, Role.NURSE);
+
+        List<Bed> sources = new ArrayList<>(moves.size());
+        List<Bed> targets = new ArrayList<>(moves.size());
+        Set<String> targetIds = new HashSet<>();
+        for (Map.Entry<String, String> m : moves.entrySet()) {
+            if (!targetIds.add(m.getValue())) {
+                throw new IllegalArgumentException("Bed " + m.getValue() + " is the target of two moves");
+            }
+            sources.add(findBed(m.getKey()));
+            targets.add(findBed(m.getValue()));
+        }
+        List<Bed> involved = new ArrayList<>(sources);
+        involved.addAll(targets);
+        withWards(involved, () -> {
+            for (Bed from : sources) {
+                if (from.getResident() == null) {
+                    throw new Exception("No resident in bed " + from.getBedId());
+                }
+            }
+            for (Bed to : targets) {
+                if (!to.isVacant() && !moves.containsKey(to.getBedId())) {
+                    throw new Exception("Bed " + to.getBedId() + " already occupied");
+                }
+            }
+            long now = System.currentTimeMillis();
+            long seq = record(JournalOp.MOVE_RESIDENTS, now, out -> {
+                out.writeUTF(staffId);
+                out.writeInt(sources.size());
+                for (int i = 0; i < sources.size(); i++) {
+                    out.writeUTF(sources.get(i).getBedId());
+                    out.writeUTF(targets.get(i).getBedId());
+                }
+            });
+            applyMoveAll(staffId, sources, targets, now, seq);
+            return null;
+        });
+    }
+
+    private void applyMoveAll(String staffId, List<Bed> sources, List<Bed> targets, long timestamp, long seq)
+            throws Exception {
+        // Empty every source first, so a target vacated by another move is free
+        List<Resident> moving = new ArrayList<>(sources.size());
+        for (Bed from : sources) {
+            moving.add(from.getResident());
+            from.removeResident();
+        }
+        MedicationRounds due = rounds;
+        List<LogEntry.Item> items = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            Resident r = moving.get(i);
+            targets.get(i).assignResident(r);
+            if (due != null) {
+                due.placed(r.getResidentId(), targets.get(i));
+            }
+            items.add(new LogEntry.Item(r.getResidentId(), sources.get(i).getBedId(), targets.get(i).getBedId(), null));
+        }
+        addLog(LogEntry.bulk(ActionCode.MOVE_RESIDENTS, staffId, items, timestamp), seq);
+    }
+
+    /** Roster many shifts (staffId -> shifts) in one step; managers only. */
+    public void assignShifts(String staffId, Map<String, List<Shift>> shiftsByStaff) throws Exception {
+        Staff s = getStaffById(staffId);
+        checkAuthorization(s, Role.MANAGER);
+
+        int count = 0;
+        for (Map.Entry<String, List<Shift>> e : shiftsByStaff.entrySet()) {
+            getStaffById(e.getKey());
+            for (Shift shift : e.getValue()) {
+                if (shift.getDay() == null || shift.getStart() == null || shift.getEnd() == null) {
+                    throw new IllegalArgumentException("Incomplete shift for " + e.getKey());
+                }
+                count++;
+            }
+        }
+        int total = count;
+        stateLock.readLock().lock();
+        try {
+            synchronized (schedule) {
+                long now = System.currentTimeMillis();
+                long seq = record(JournalOp.ASSIGN_SHIFTS, now, out -> {
+                    out.writeUTF(staffId);
+                    out.writeInt(total);
+                    for (Map.Entry<String, List<Shift>> e : shiftsByStaff.entrySet()) {
+                        for (Shift shift : e.getValue()) {
+                            out.writeUTF(e.getKey());
+                            out.writeByte(shift.getDay().ordinal());
+                            out.writeInt(shift.getStart().toSecondOfDay());
+                            out.writeInt(shift.getEnd().toSecondOfDay());
+                        }
+                    }
+                });
+                applyShifts(staffId, shiftsByStaff, now, seq);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+    }
+
+    private void applyShifts(String staffId, Map<String, List<Shift>> shiftsByStaff, long timestamp, long seq) {
+        List<LogEntry.Item> items = new ArrayList<>();
+        for (Map.Entry<String, List<Shift>> e : shiftsByStaff.entrySet()) {
+            for (Shift shift : e.getValue()) {
+                schedule.addShift(e.getKey(), shift);
+                items.add(new LogEntry.Item(null, null, e.getKey(), shift.toString()));
+            }
+        }
+        addLog(LogEntry.bulk(ActionCode.ASSIGN_SHIFTS, staffId, items, timestamp), seq);
+    }
+
+    // ---------- Bed Allocation ----------
+
+    public BedAllocator getBedAllocator() {
+        return allocator;
+    }
+
+    /** Put the resident into the best vacant bed (see BedAllocator) and return it. */
+    public Bed allocateBed(String staffId, BedAllocator.Request request) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            Bed bed = allocator.choose(request);
+            if (bed == null) {
+                throw new Exception("No suitable vacant bed for resident " + request.getResident().getResidentId());
+            }
+            try {
+                assignResidentToBed(staffId, request.getResident(), bed.getBedId());
+                return bed;
+            } catch (Exception e) {
+                if (bed.isVacant() || attempt == 2) throw e;
+                // someone else took the bed between choosing and assigning; choose again
+            }
+        }
+    }
+
+    /**
+     * Place a whole batch of admissions in one pass: beds are chosen for everyone, then
+     * assigned together as with assignResidentsToBeds. All or nothing; fails without
+     * placing anyone if any resident has no suitable bed. Returns residentId -> bedId.
+     */
+    public Map<String, String> allocateBeds(String staffId, List<BedAllocator.Request> requests) throws Exception {
+        checkAuthorization(getStaffById(staffId), Role.MANAGER, Role.NURSE);
+        List<Bed> chosen = allocator.chooseAll(requests);
+        Map<String, Resident> assignments = new LinkedHashMap<>();
+        Map<String, String> placed = new LinkedHashMap<>();
+        List<String> unplaced = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            Resident r = requests.get(i).getResident();
+            Bed bed = chosen.get(i);
+            if (bed == null) {
+                unplaced.add(r.getResidentId());
+                continue;
+            }
+            assignments.put(bed.getBedId(), r);
+            placed.put(r.getResidentId(), bed.getBedId());
+        }
+        if (!unplaced.isEmpty()) {
+            throw new Exception("No suitable vacant bed for " + unplaced.size() + " residents: "
+                    + String.join(", ", unplaced));
+        }
+        assignResidentsToBeds(staffId, assignments);
+        return placed;
+    }
+
+    // ---------- Medication Rounds ----------
+
+    /**
+     * Prescribed doses by time of day, per ward and home-wide. Built from the current beds
+     * and prescriptions on first use and kept up to date by every change after that.
+     */
+    public MedicationRounds getMedicationRounds() {
+        MedicationRounds r = rounds;
+        if (r != null) return r;
+        stateLock.writeLock().lock();
+        try {
+            if (rounds == null) {
+                MedicationRounds built = new MedicationRounds(beds);
+                for (Ward ward : wards) {
+                    for (Room room : ward.getRooms()) {
+                        for (Bed bed : room.getBeds()) {
+                            Resident resident = bed.getResident();
+                            if (resident != null) built.placed(resident.getResidentId(), bed);
+                        }
+                    }
+                }
+                prescriptions.values().forEach(built::prescribed);
+                rounds = built;
+            }
+            return rounds;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
     }
 
     // ---------- Helpers ----------
 
     private Staff getStaffById(String staffId) throws Exception {
-        return staff.stream()
-                .filter(s -> s.getStaffId().equals(staffId))
-                .findFirst()
-                .orElseThrow(() -> new Exception("Staff not found: " + staffId));
+        Staff s = directory.findById(staffId);
+        if (s == null) {
+            throw new Exception("Staff not found: " + staffId);
+        }
+        return s;
     }
 
     private Bed findBed(String bedId) throws Exception {
-        for (Ward w : wards) {
-            for (Room r : w.getRooms()) {
-                for (Bed b : r.getBeds()) {
-                    if (b.getBedId().equals(bedId)) return b;
+        Bed bed = beds.find(bedId);
+        if (bed == null) {
+            throw new Exception("Bed not found: " + bedId);
+        }
+        return bed;
+    }
+
+    /** Body of an operation run under ward locks. */
+    private interface Locked<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Run action holding the home's shared lock plus the locks of the wards holding beds a
+     * and b. Two different wards are locked in Ward lock order, so concurrent cross-ward
+     * moves in opposite directions cannot deadlock.
+     */
+    private <T> T withWards(Bed a, Bed b, Locked<T> action) throws Exception {
+        Ward first = beds.wardOf(a);
+        Ward second = beds.wardOf(b);
+        if (first == null || second == null) {
+            throw new Exception("Bed " + (first == null ? a : b).getBedId() + " is not in a ward");
+        }
+        if (second == first) {
+            second = null;
+        } else if (second.getLockOrder() < first.getLockOrder()) {
+            Ward swap = first;
+            first = second;
+            second = swap;
+        }
+        T result;
+        stateLock.readLock().lock();
+        first.getLock().lock();
+        if (second != null) second.getLock().lock();
+        try {
+            result = action.run();
+        } finally {
+            if (second != null) second.getLock().unlock();
+            first.getLock().unlock();
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+        return result;
+    }
+
+    /** Body of an operation run on a resident's prescription under its monitor. */
+    private interface Prescribing {
+        void run(Prescription p) throws Exception;
+    }
+
+    /**
+     * Run action on the resident's prescription, holding the home's shared lock and the
+     * prescription's monitor. An attach holds the monitor of the prescription it replaces,
+     * so if one got in between the lookup and the lock, look the prescription up again.
+     */
+    private void withPrescription(String residentId, Prescribing action) throws Exception {
+        stateLock.readLock().lock();
+        try {
+            while (true) {
+                Prescription p = prescriptions.get(residentId);
+                if (p == null) {
+                    throw new IllegalArgumentException("No prescription found for resident " + residentId);
+                }
+                synchronized (p) {
+                    if (prescriptions.get(residentId) == p) {
+                        action.run(p);
+                        break;
+                    }
                 }
             }
+        } finally {
+            stateLock.readLock().unlock();
         }
-        throw new Exception("Bed not found: " + bedId);
+        awaitDurable();
+    }
+
+    /** As above for any number of beds: every ward involved is locked, in Ward lock order. */
+    private <T> T withWards(Collection<Bed> involved, Locked<T> action) throws Exception {
+        Map<Long, Ward> locked = new TreeMap<>();
+        for (Bed bed : involved) {
+            Ward ward = beds.wardOf(bed);
+            if (ward == null) {
+                throw new Exception("Bed " + bed.getBedId() + " is not in a ward");
+            }
+            locked.put(ward.getLockOrder(), ward);
+        }
+        T result;
+        stateLock.readLock().lock();
+        List<Ward> held = new ArrayList<>(locked.size());
+        try {
+            for (Ward ward : locked.values()) {
+                ward.getLock().lock();
+                held.add(ward);
+            }
+            result = action.run();
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).getLock().unlock();
+            }
+            stateLock.readLock().unlock();
+        }
+        awaitDurable();
+        return result;
     }
 
     private void checkAuthorization(Staff s, Role... allowed) throws UnauthorizedActionException {
@@ -194,63 +1069,435 @@ public class CareHome implements Serializable {
     }
 
     private void checkOnDuty(Staff s) throws NotOnDutyException {
-        LocalDateTime now = LocalDateTime.now();
-        DayOfWeek today = now.getDayOfWeek();
-        LocalTime time = now.toLocalTime();
-        if (!schedule.isOnDuty(s, today, time)) {
+        if (!schedule.isOnDuty(s.getStaffId(), clock.minuteOfWeekNow())) {
             throw new NotOnDutyException("Staff " + s.getStaffId() + " is not on duty at this time.");
         }
     }
 
+    private void checkAuthorization(StaffSession session, Role... allowed) throws UnauthorizedActionException {
+        if (session.getHome() != this) {
+            throw new IllegalArgumentException("Session for " + session.getStaffId() + " belongs to another home");
+        }
+        checkAuthorization(session.getStaff(), allowed);
+    }
+
+    /**
+     * Answered from the session's cached duty window while it lasts; otherwise the window
+     * is resolved again from the roster: how long from this minute the staff member stays
+     * on duty without a break.
+     */
+    private void checkOnDuty(StaffSession session) throws NotOnDutyException {
+        long now = clock.millis();
+        if (session.covers(now)) return;
+        long version = session.rosterVersion();
+        int minutes = schedule.dutyRunFrom(session.getStaffId(), clock.minuteOfWeek(now));
+        long validUntil = minutes == 0 ? Long.MIN_VALUE : now - Math.floorMod(now, 60_000L) + minutes * 60_000L;
+        session.resolved(validUntil, version);
+        if (now >= validUntil) {
+            throw new NotOnDutyException("Staff " + session.getStaffId() + " is not on duty at this time.");
+        }
+    }
+
+    /** Replace the clock used for duty checks (tests pin it to a known time). */
+    void setClock(Clock clock) {
+        this.clock = new WeekClock(clock);
+    }
+
     // ---------- Compliance ----------
 
-    public void checkCompliance() throws Exception {
-        schedule.checkCompliance();
+    /** Throws ComplianceException, carrying every violation, if the roster breaks a rule. */
+    public ComplianceReport checkCompliance() throws ComplianceException {
+        return schedule.checkCompliance();
+    }
+
+    public ComplianceReport getComplianceReport() {
+        return schedule.getComplianceReport();
     }
 
     // ---------- Save/Load ----------
 
     public void saveData(File file) throws IOException {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
-            out.writeObject(this);
+        stateLock.writeLock().lock();
+        try {
+            synchronized (schedule) {
+                flushLogs();
+                if (journal != null) {
+                    journalSeq = journal.lastSeq();
+                }
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    SnapshotCodec.write(this, out);
+                }
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /** Load a snapshot and make it the home returned by getInstance. */
+    public static CareHome loadData(File file) throws IOException {
+        CareHome loaded = read(file);
+        instance = loaded;
+        return loaded;
+    }
+
+    /** Load a snapshot as a home of its own, leaving getInstance alone (see FacilityRegistry). */
+    public static CareHome read(File file) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return SnapshotCodec.read(in);
+        }
+    }
+
+    long getJournalSeq() {
+        return journalSeq;
+    }
+
+    void setJournalSeq(long journalSeq) {
+        this.journalSeq = journalSeq;
+    }
+
+    Map<String, Prescription> getPrescriptions() {
+        return prescriptions;
+    }
+
+    /** Rebuild the medication round index on next use, after prescriptions were put directly. */
+    void resetMedicationRounds() {
+        rounds = null;
+    }
+
+    // ---------- Log Store ----------
+
+    /**
+     * Keep the action log in dir from now on. Entries written before this call (to the
+     * temporary store every home starts with) are carried over.
+     */
+    public void openLogStore(File dir) throws IOException {
+        if (dir.getAbsoluteFile().equals(logs.getDirectory())) return;
+        drainLogs();
+        LogStore opened = new LogStore(dir);
+        LogStore previous = logs;
+        if (previous.isTemporary()) {
+            for (LogEntry entry : previous) {
+                opened.add(entry);
+            }
+            previous.delete();
+        } else {
+            previous.close();
         }
+        logs = opened;
     }
 
-    public static CareHome loadData(File file) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-            instance = (CareHome) in.readObject();
-            return instance;
+    // ---------- Journal ----------
+
+    /**
+     * Start journalling every mutation to journalFile. Records written after the loaded
+     * snapshot are replayed first, so this also serves as crash recovery at startup.
+     * snapshotFile is where background compaction writes the folded state.
+     */
+    public synchronized void openJournal(File journalFile, File snapshotFile) throws Exception {
+        if (journal != null) {
+            throw new IllegalStateException("Journal already open");
+        }
+        drainLogs();
+        logReplayFloor = logs.lastJournalSeq();
+        logReplaySeen = logs.recentJournalSeqs(REPLAY_WINDOW);
+        Journal opened;
+        replayResidents = new HashMap<>();
+        try {
+            synchronized (residents) {
+                for (Resident r : residents) {
+                    replayResidents.putIfAbsent(r.getResidentId(), r);
+                }
+            }
+            opened = Journal.open(journalFile, journalSeq, this::replay);
+        } finally {
+            replayResidents = null;
         }
+        journalSeq = opened.lastSeq();
+        this.snapshotFile = snapshotFile;
+        compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "carehome-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        schedule.setJournal(opened);
+        journal = opened;
     }
 
-    // ---------- LogEntry Inner Class ----------
+    public boolean isJournaling() {
+        return journal != null;
+    }
 
-    public static class LogEntry implements Serializable {
-        private final String staffId;
-        private final String action;
-        private final LocalDateTime timestamp;
+    /**
+     * Stop journalling. The journal is detached under the exclusive lock so no mutation is
+     * half-recorded, then any running compaction is allowed to finish before the file closes.
+     */
+    public void closeJournal() throws IOException {
+        Journal closing;
+        ExecutorService worker;
+        stateLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                closing = journal;
+                worker = compactor;
+                if (closing == null) return;
+                schedule.setJournal(null);
+                journal = null;
+                compactor = null;
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        worker.shutdown();
+        CompletableFuture<Void> pending = compaction;
+        if (pending != null) {
+            pending.join();
+        }
+        closing.close();
+    }
+
+    /** Stop journalling and the log writer, and release the log store's files. */
+    public void close() throws IOException {
+        closeJournal();
+        stopLogWriter();
+        logs.close();
+    }
+
+    /**
+     * Fold the journal into a fresh snapshot on the background compactor thread. Mutations
+     * pause only while the home is encoded into memory; writing the file and deleting the
+     * older journal generations happens after they resume.
+     */
+    public synchronized CompletableFuture<Void> compact() {
+        if (journal == null) {
+            throw new IllegalStateException("Journal not open");
+        }
+        if (compaction != null && !compaction.isDone()) {
+            return compaction;
+        }
+        Journal current = journal;
+        File target = snapshotFile;
+        compaction = CompletableFuture.runAsync(() -> {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                int keepFrom;
+                stateLock.writeLock().lock();
+                try {
+                    synchronized (schedule) {
+                        flushLogs();
+                        journalSeq = current.lastSeq();
+                        SnapshotCodec.write(this, Channels.newChannel(bytes));
+                        keepFrom = current.rotate();
+                    }
+                } finally {
+                    stateLock.writeLock().unlock();
+                }
+                File tmp = new File(target.getPath() + ".tmp");
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    bytes.writeTo(out);
+                    out.getFD().sync();
+                }
+                Files.move(tmp.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                current.deleteBefore(keepFrom);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Compaction failed", e);
+            }
+        }, compactor);
+        return compaction;
+    }
 
-        public LogEntry(String staffId, String action, LocalDateTime timestamp) {
-            this.staffId = staffId;
-            this.action = action;
-            this.timestamp = timestamp;
+    /**
+     * Journal one mutation. Returns the record's sequence number, or 0 while journalling is
+     * off. The record is not yet durable: the caller applies the mutation, releases its locks
+     * and then calls awaitDurable, so no lock is held across the fsync. Anyone who sees the
+     * mutation before then can only journal after it, and a sync covers every earlier record.
+     */
+    private long record(JournalOp op, long timestamp, Journal.Body body) {
+        Journal current = journal;
+        if (current == null) return 0;
+        try {
+            long seq = current.append(op, timestamp, body);
+            unsynced.set(new Unsynced(current, seq));
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal " + op, e);
         }
+    }
 
-        public String getStaffId() {
-            return staffId;
+    /** Wait until the last record this thread journaled is on disk; call with no locks held. */
+    private void awaitDurable() {
+        Unsynced pending = unsynced.get();
+        if (pending == null) return;
+        unsynced.remove();
+        Journal current = pending.journal;
+        try {
+            if (current != journal) return;  // closed since, which syncs it
+            current.sync(pending.seq);
+            if (current.size() > COMPACT_THRESHOLD_BYTES) {
+                synchronized (this) {
+                    if (journal == current) compact();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync journal", e);
         }
+    }
 
-        public String getAction() {
-            return action;
+    /** A journal record appended by this thread but not yet waited on. */
+    private record Unsynced(Journal journal, long seq) {
+    }
+
+    private void replay(JournalOp op, long seq, long timestamp, DataInput in) throws Exception {
+        switch (op) {
+            case ADD_RESIDENT -> {
+                Resident r = readResident(in);
+                residents.add(r);
+                replayResidents.putIfAbsent(r.getResidentId(), r);
+            }
+            case ADD_STAFF -> staff.add(readStaff(in));
+            case ASSIGN_BED -> {
+                String staffId = in.readUTF();
+                Resident r = readResident(in);
+                applyAssign(staffId, r, findBed(in.readUTF()), timestamp, seq);
+            }
+            case MOVE_RESIDENT -> {
+                String staffId = in.readUTF();
+                Bed from = findBed(in.readUTF());
+                applyMove(staffId, from, findBed(in.readUTF()), timestamp, seq);
+            }
+            case ATTACH_PRESCRIPTION -> {
+                String staffId = in.readUTF();
+                String residentId = in.readUTF();
+                applyAttach(staffId, residentId, readPrescription(in), timestamp, seq);
+            }
+            case UPDATE_PRESCRIPTION -> {
+                String staffId = in.readUTF();
+                Prescription p = prescriptions.get(in.readUTF());
+                Medicine med = new Medicine(in.readUTF());
+                String dose = in.readUTF();
+                applyUpdate(staffId, p, med, dose, LocalTime.ofSecondOfDay(in.readInt()), timestamp, seq);
+            }
+            case UPDATE_PRESCRIPTION_LINES -> {
+                String staffId = in.readUTF();
+                Prescription p = prescriptions.get(in.readUTF());
+                int count = in.readInt();
+                List<PrescriptionLine> lines = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    lines.add(new PrescriptionLine(new Medicine(in.readUTF()), in.readUTF(),
+                            LocalTime.ofSecondOfDay(in.readInt())));
+                }
+                applyUpdateLines(staffId, p, lines, timestamp, seq);
+            }
+            case ADMIT_RESIDENTS -> {
+                String staffId = in.readUTF();
+                int count = in.readInt();
+                List<Resident> admitted = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    admitted.add(readResident(in));
+                }
+                applyAdmit(staffId, admitted, timestamp, seq);
+                for (Resident r : admitted) {
+                    replayResidents.putIfAbsent(r.getResidentId(), r);
+                }
+            }
+            case ASSIGN_BEDS -> {
+                String staffId = in.readUTF();
+                int count = in.readInt();
+                List<Resident> placed = new ArrayList<>(count);
+                List<Bed> targets = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    placed.add(readResident(in));
+                    targets.add(findBed(in.readUTF()));
+                }
+                applyAssignAll(staffId, placed, targets, timestamp, seq);
+            }
+            case MOVE_RESIDENTS -> {
+                String staffId = in.readUTF();
+                int count = in.readInt();
+                List<Bed> sources = new ArrayList<>(count);
+                List<Bed> targets = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    sources.add(findBed(in.readUTF()));
+                    targets.add(findBed(in.readUTF()));
+                }
+                applyMoveAll(staffId, sources, targets, timestamp, seq);
+            }
+            case ASSIGN_SHIFTS -> {
+                String staffId = in.readUTF();
+                int count = in.readInt();
+                Map<String, List<Shift>> shiftsByStaff = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String rostered = in.readUTF();
+                    DayOfWeek day = DayOfWeek.values()[in.readByte()];
+                    LocalTime start = LocalTime.ofSecondOfDay(in.readInt());
+                    shiftsByStaff.computeIfAbsent(rostered, k -> new ArrayList<>())
+                            .add(new Shift(day, start, LocalTime.ofSecondOfDay(in.readInt())));
+                }
+                applyShifts(staffId, shiftsByStaff, timestamp, seq);
+            }
+            case ADMINISTER_PRESCRIPTION -> applyAdminister(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), timestamp, seq);
+            case ASSIGN_SHIFT, SET_DOCTOR_PRESENT -> schedule.replay(op, in);
+            case LOG -> addLog(LogEntry.note(in.readUTF(), in.readUTF(), timestamp), seq);
+            case VIEW_RESIDENT -> {
+                String staffId = in.readUTF();
+                String residentId = in.readUTF();
+                addLog(new LogEntry(ActionCode.VIEW_RESIDENT, staffId, residentId, in.readUTF(), null, null, timestamp), seq);
+            }
         }
+    }
 
-        public LocalDateTime getTimestamp() {
-            return timestamp;
+    private static void writeResident(DataOutput out, Resident r) throws IOException {
+        out.writeUTF(r.getResidentId());
+        out.writeUTF(r.getName());
+        out.writeByte(r.getGender().ordinal());
+        out.writeUTF(r.getMedicalCondition() == null ? "" : r.getMedicalCondition());
+    }
+
+    /** Read a resident record during replay, reusing the existing object when the id is already known. */
+    private Resident readResident(DataInput in) throws IOException {
+        String id = in.readUTF();
+        String name = in.readUTF();
+        Gender gender = Gender.values()[in.readByte()];
+        String condition = in.readUTF();
+        Resident known = replayResidents.get(id);
+        return known != null ? known : new Resident(id, name, gender, condition.isEmpty() ? null : condition);
+    }
+
+    private static void writeStaff(DataOutput out, Staff s) throws IOException {
+        out.writeByte(s.getRole().ordinal());
+        out.writeUTF(s.getStaffId());
+        out.writeUTF(s.getName());
+        out.writeByte(s.getGender().ordinal());
+        out.writeUTF(s.getUsername());
+        out.writeUTF(s.password);
+    }
+
+    private static Staff readStaff(DataInput in) throws IOException {
+        Role role = Role.values()[in.readByte()];
+        String id = in.readUTF();
+        String name = in.readUTF();
+        Gender gender = Gender.values()[in.readByte()];
+        String username = in.readUTF();
+        return Staff.create(role, id, name, gender, username, in.readUTF());
+    }
+
+    private static void writePrescription(DataOutput out, Prescription p) throws IOException {
+        out.writeUTF(p.getResidentId());
+        List<PrescriptionLine> lines = p.getLines();
+        out.writeInt(lines.size());
+        for (PrescriptionLine line : lines) {
+            out.writeUTF(line.getMedicine().getName());
+            out.writeUTF(line.toItemString());
         }
+    }
 
-        @Override
-        public String toString() {
-            return "[" + timestamp + "] Staff: " + staffId + " -> " + action;
+    private static Prescription readPrescription(DataInput in) throws IOException {
+        Prescription p = new Prescription(in.readUTF());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            p.putItem(new Medicine(in.readUTF()), in.readUTF());
         }
+        return p;
     }
 }
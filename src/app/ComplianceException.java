@@ -0,0 +1,15 @@
+package app;
+
+/** Thrown by checkCompliance when the schedule breaks a rule; carries the full report. */
+public class ComplianceException extends Exception {
+    private final transient ComplianceReport report;
+
+    public ComplianceException(ComplianceReport report) {
+        super("Compliance violation: " + report);
+        this.report = report;
+    }
+
+    public ComplianceReport getReport() {
+        return report;
+    }
+}
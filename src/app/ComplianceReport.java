@@ -0,0 +1,31 @@
+package app;
+
+import java.util.Collections;
+import java.util.List;
+
+/** Every rule currently broken by the schedule; empty when the roster is compliant. */
+public class ComplianceReport {
+    private final List<ComplianceViolation> violations;
+
+    public ComplianceReport(List<ComplianceViolation> violations) {
+        this.violations = Collections.unmodifiableList(violations);
+    }
+
+    public boolean isCompliant() {
+        return violations.isEmpty();
+    }
+
+    public List<ComplianceViolation> getViolations() {
+        return violations;
+    }
+
+    @Override
+    public String toString() {
+        if (violations.isEmpty()) return "No compliance violations";
+        StringBuilder sb = new StringBuilder(violations.size() + " compliance violation(s)");
+        for (ComplianceViolation v : violations) {
+            sb.append(System.lineSeparator()).append("  ").append(v);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package app;
+
+
+/** One broken scheduling rule for one staff member. */
+public class ComplianceViolation {
+    public enum Type {
+        SHIFT_TOO_LONG,
+        OVERLAPPING_SHIFTS,
+        WEEKLY_HOURS_EXCEEDED
+    }
+
+    private final Type type;
+    private final String staffId;
+    private final String detail;
+
+    public ComplianceViolation(Type type, String staffId, String detail) {
+        this.type = type;
+        this.staffId = staffId;
+        this.detail = detail;
+    }
+
+    public Type getType() { return type; }
+    public String getStaffId() { return staffId; }
+    public String getDetail() { return detail; }
+
+    @Override
+    public String toString() {
+        return type + " for staff " + staffId + ": " + detail;
+    }
+}
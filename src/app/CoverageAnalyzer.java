@@ -0,0 +1,203 @@
+package app;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * How many staff of each role are on duty at every minute of the week, from one sweep
+ * over all shift start and end points. Each shift adds +1 at its start minute and -1 after
+ * its end minute (ends are inclusive, as in DutyBitmap); the points are bucketed by minute,
+ * which sorts them, and a running sum gives the head count. Building is linear in the
+ * number of shifts plus the minutes in a week, so Schedule rebuilds it after every change.
+ *
+ * Immutable; a new one describes the roster after a change.
+ */
+public class CoverageAnalyzer {
+    private static final int WEEK = DutyBitmap.MINUTES_PER_WEEK;
+
+    /** A stretch of the week, from (inclusive) to (inclusive) in minutes of the week. */
+    public record Window(int from, int to, int fewest) {
+        public DayOfWeek getStartDay() { return DayOfWeek.of(from / DutyBitmap.MINUTES_PER_DAY + 1); }
+        public LocalTime getStartTime() { return time(from); }
+        public DayOfWeek getEndDay() { return DayOfWeek.of(to / DutyBitmap.MINUTES_PER_DAY + 1); }
+        public LocalTime getEndTime() { return time(to); }
+        public int minutes() { return to - from + 1; }
+
+        @Override
+        public String toString() {
+            return getStartDay() + " " + getStartTime() + " - " + getEndDay() + " " + getEndTime()
+                    + " (" + fewest + " on duty)";
+        }
+    }
+
+    private final Map<Role, int[]> counts = new EnumMap<>(Role.class);  // role -> head count per minute
+    private final int[] total = new int[WEEK];
+    // every shift by start minute, for on-duty lookups
+    private final int[] starts;
+    private final int[] ends;
+    private final String[] staffIds;
+    private final int longest;
+
+    /** roleOf may return null for staff it does not know; they count towards the total only. */
+    CoverageAnalyzer(Map<String, List<Shift>> shiftsByStaff, Function<String, Role> roleOf) {
+        Map<Role, int[]> deltas = new EnumMap<>(Role.class);
+        int[] totalDelta = new int[WEEK + 1];
+        int n = 0;
+        for (List<Shift> shifts : shiftsByStaff.values()) n += shifts.size();
+        long[] byStart = new long[n];  // start minute << 32 | index into flat
+        int[] flatEnds = new int[n];
+        String[] flatIds = new String[n];
+        int count = 0;
+        int maxLength = 0;
+        for (Map.Entry<String, List<Shift>> e : shiftsByStaff.entrySet()) {
+            Role role = roleOf.apply(e.getKey());
+            int[] delta = role == null ? null : deltas.computeIfAbsent(role, r -> new int[WEEK + 1]);
+            for (Shift shift : e.getValue()) {
+                if (shift.getEnd().isBefore(shift.getStart())) continue;  // never on duty, as in DutyBitmap
+                int from = DutyBitmap.minuteOfWeek(shift.getDay(), shift.getStart());
+                int to = DutyBitmap.minuteOfWeek(shift.getDay(), shift.getEnd());
+                totalDelta[from]++;
+                totalDelta[to + 1]--;
+                if (delta != null) {
+                    delta[from]++;
+                    delta[to + 1]--;
+                }
+                byStart[count] = (long) from << 32 | count;
+                flatEnds[count] = to;
+                flatIds[count] = e.getKey();
+                count++;
+                maxLength = Math.max(maxLength, to - from);
+            }
+        }
+        sweep(totalDelta, total);
+        deltas.forEach((role, delta) -> {
+            int[] heads = new int[WEEK];
+            sweep(delta, heads);
+            counts.put(role, heads);
+        });
+
+        Arrays.sort(byStart, 0, count);
+        this.starts = new int[count];
+        this.ends = new int[count];
+        this.staffIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            int index = (int) byStart[i];
+            starts[i] = (int) (byStart[i] >>> 32);
+            ends[i] = flatEnds[index];
+            staffIds[i] = flatIds[index];
+        }
+        this.longest = maxLength;
+    }
+
+    private static void sweep(int[] delta, int[] heads) {
+        int running = 0;
+        for (int m = 0; m < WEEK; m++) {
+            running += delta[m];
+            heads[m] = running;
+        }
+    }
+
+    /** Staff of role on duty at the minute of the week; role null counts everyone. */
+    public int headCount(Role role, int minuteOfWeek) {
+        int[] heads = role == null ? total : counts.get(role);
+        return heads == null ? 0 : heads[minuteOfWeek];
+    }
+
+    public int headCount(Role role, DayOfWeek day, LocalTime time) {
+        return headCount(role, DutyBitmap.minuteOfWeek(day, time));
+    }
+
+    /**
+     * The fewest staff of role on duty in each slot of slotMinutes through the week
+     * (168 values for hourly slots).
+     */
+    public int[] headCounts(Role role, int slotMinutes) {
+        if (slotMinutes <= 0 || WEEK % slotMinutes != 0) {
+            throw new IllegalArgumentException("Slots must divide the week evenly: " + slotMinutes);
+        }
+        int[] slots = new int[WEEK / slotMinutes];
+        for (int s = 0; s < slots.length; s++) {
+            int fewest = Integer.MAX_VALUE;
+            for (int m = s * slotMinutes; m < (s + 1) * slotMinutes; m++) {
+                fewest = Math.min(fewest, headCount(role, m));
+            }
+            slots[s] = fewest;
+        }
+        return slots;
+    }
+
+    /** Stretches of the week with nobody of role on duty. */
+    public List<Window> gaps(Role role) {
+        return understaffed(role, 1);
+    }
+
+    /** Stretches of the week with fewer than minimum staff of role on duty. */
+    public List<Window> understaffed(Role role, int minimum) {
+        List<Window> windows = new ArrayList<>();
+        int from = -1;
+        int fewest = Integer.MAX_VALUE;
+        for (int m = 0; m <= WEEK; m++) {
+            int heads = m < WEEK ? headCount(role, m) : minimum;
+            if (heads < minimum) {
+                if (from < 0) from = m;
+                fewest = Math.min(fewest, heads);
+            } else if (from >= 0) {
+                windows.add(new Window(from, m - 1, fewest));
+                from = -1;
+                fewest = Integer.MAX_VALUE;
+            }
+        }
+        return windows;
+    }
+
+    /** Whether anyone of role is on duty at any time on day. */
+    public boolean isCovered(Role role, DayOfWeek day) {
+        int from = (day.getValue() - 1) * DutyBitmap.MINUTES_PER_DAY;
+        for (int m = from; m < from + DutyBitmap.MINUTES_PER_DAY; m++) {
+            if (headCount(role, m) > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ids of staff on duty at the instant, in shift start order: a binary search for the
+     * shifts that start late enough to still be running, then a scan of those.
+     */
+    public List<String> onDuty(DayOfWeek day, LocalTime time) {
+        int minute = DutyBitmap.minuteOfWeek(day, time);
+        int lo = lowerBound(minute - longest);
+        int hi = lowerBound(minute + 1);
+        Set<String> ids = new LinkedHashSet<>();  // overlapping shifts would list someone twice
+        for (int i = lo; i < hi; i++) {
+            if (ends[i] >= minute) ids.add(staffIds[i]);
+        }
+        return new ArrayList<>(ids);
+    }
+
+    public int getShiftCount() {
+        return starts.length;
+    }
+
+    private int lowerBound(int minute) {
+        int lo = 0;
+        int hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < minute) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static LocalTime time(int minuteOfWeek) {
+        int minute = minuteOfWeek % DutyBitmap.MINUTES_PER_DAY;
+        return LocalTime.of(minute / 60, minute % 60);
+    }
+}
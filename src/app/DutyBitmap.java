@@ -0,0 +1,54 @@
+package app;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One bit per minute of the week (Monday 00:00 = minute 0) marking when a staff member is
+ * rostered. Shifts are recorded to the minute and include their end minute, matching the
+ * inclusive end used by Schedule.isOnDuty.
+ */
+public class DutyBitmap {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    private final AtomicLongArray words = new AtomicLongArray((MINUTES_PER_WEEK + 63) / 64);
+
+    public static int minuteOfWeek(DayOfWeek day, LocalTime time) {
+        return (day.getValue() - 1) * MINUTES_PER_DAY + time.getHour() * 60 + time.getMinute();
+    }
+
+    /** Mark the shift's minutes. Shifts ending before they start are never on duty, as before. */
+    public void add(Shift shift) {
+        if (shift.getEnd().isBefore(shift.getStart())) return;
+        int from = minuteOfWeek(shift.getDay(), shift.getStart());
+        int to = minuteOfWeek(shift.getDay(), shift.getEnd());
+        for (int m = from; m <= to; m++) {
+            long bit = 1L << m;
+            words.getAndUpdate(m >>> 6, w -> w | bit);
+        }
+    }
+
+    public boolean get(int minuteOfWeek) {
+        return (words.get(minuteOfWeek >>> 6) & (1L << minuteOfWeek)) != 0;
+    }
+
+    /**
+     * How many consecutive rostered minutes start at minuteOfWeek, running on past Sunday
+     * midnight into Monday; 0 when off duty then, MINUTES_PER_WEEK when always on duty.
+     */
+    public int runFrom(int minuteOfWeek) {
+        int run = 0;
+        int m = minuteOfWeek;
+        while (run < MINUTES_PER_WEEK) {
+            long off = ~words.get(m >>> 6) >>> (m & 63);  // off-duty minutes from m to the end of the word
+            int wordEnd = Math.min((m | 63) + 1, MINUTES_PER_WEEK);
+            int span = off == 0 ? wordEnd - m : Math.min(Long.numberOfTrailingZeros(off), wordEnd - m);
+            run += span;
+            if (m + span < wordEnd) break;
+            m = wordEnd == MINUTES_PER_WEEK ? 0 : wordEnd;
+        }
+        return Math.min(run, MINUTES_PER_WEEK);
+    }
+}
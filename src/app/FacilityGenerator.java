@@ -0,0 +1,259 @@
+package app;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Builds synthetic care homes at any scale for load tests and benchmarks, where
+ * {@link SampleData} only provides a single demonstration ward.
+ *
+ * Output depends only on the seed and the settings: each ward, staff member and block of
+ * log entries draws from its own random stream derived from the seed and its index, so
+ * the parts can be generated in parallel and still come out identical on every run.
+ *
+ * Ids are predictable so callers can address the generated home directly: beds are
+ * {@code B<n>} numbered across the whole home ({@link #bedId}), the resident in bed n is
+ * {@code RES<n>}, and staff are {@code M<n>}, {@code N<n>} and {@code D<n>} from 1, with
+ * the lower-cased id as username and "pass" as password.
+ */
+public class FacilityGenerator {
+    private static final String[] FIRST_NAMES = {"Alex", "Sam", "Priya", "Omar", "Mei", "Jonas", "Ana", "Kofi",
+            "Lena", "Ravi", "Noor", "Tom", "Ines", "Yusuf", "Hana", "Ben"};
+    private static final String[] LAST_NAMES = {"Patel", "Smith", "Khan", "Nguyen", "Garcia", "Okafor", "Muller",
+            "Rossi", "Tanaka", "Silva", "Cohen", "Jones"};
+    private static final String[] CONDITIONS = {"Hypertension", "Diabetes", "Dementia", "COPD", "Arthritis",
+            "Heart failure", "Parkinson's", "Stroke recovery", "Osteoporosis", "None"};
+    private static final String[] MEDICINES = {"Paracetamol", "Metformin", "Amlodipine", "Donepezil", "Salbutamol",
+            "Levodopa", "Furosemide", "Atorvastatin", "Warfarin", "Omeprazole", "Sertraline", "Insulin"};
+    private static final String[] DOSES = {"5mg", "10mg", "20mg", "50mg", "100mg", "500mg", "2 puffs", "10 units"};
+    private static final LocalTime[] ROUNDS = {LocalTime.of(8, 0), LocalTime.of(12, 0), LocalTime.of(18, 0), LocalTime.of(22, 0)};
+    private static final int LOG_BLOCK = 64 * 1024;
+
+    private final long seed;
+    private int wards = 10;
+    private int roomsPerWard = 10;
+    private int bedsPerRoom = 4;
+    private double occupancy = 0.9;
+    private int managers = 2;
+    private int nurses = 40;
+    private int doctors = 7;
+    private double prescribed = 0.8;
+    private int maxItems = 4;
+    private int logEntries = 0;
+    private LocalDateTime logStart = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    public FacilityGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public FacilityGenerator wards(int wards, int roomsPerWard, int bedsPerRoom) {
+        this.wards = wards;
+        this.roomsPerWard = roomsPerWard;
+        this.bedsPerRoom = bedsPerRoom;
+        return this;
+    }
+
+    /** Fraction of beds with a resident in them. */
+    public FacilityGenerator occupancy(double occupancy) {
+        this.occupancy = occupancy;
+        return this;
+    }
+
+    public FacilityGenerator staff(int managers, int nurses, int doctors) {
+        this.managers = managers;
+        this.nurses = nurses;
+        this.doctors = doctors;
+        return this;
+    }
+
+    /** Fraction of residents with a prescription, each holding 1 to maxItems medicines. */
+    public FacilityGenerator prescriptions(double prescribed, int maxItems) {
+        this.prescribed = prescribed;
+        this.maxItems = maxItems;
+        return this;
+    }
+
+    /** Historic log entries, one every 30 seconds from start. */
+    public FacilityGenerator logs(int logEntries, LocalDateTime start) {
+        this.logEntries = logEntries;
+        this.logStart = start;
+        return this;
+    }
+
+    public int bedCount() {
+        return wards * roomsPerWard * bedsPerRoom;
+    }
+
+    public static String bedId(int index) {
+        return "B" + index;
+    }
+
+    /** Build a new home. Its log store is temporary until the caller opens a real one. */
+    public CareHome generate() {
+        CareHome home = new CareHome();
+
+        Staff[] staff = IntStream.range(0, managers + nurses + doctors).parallel()
+                .mapToObj(this::staffMember)
+                .toArray(Staff[]::new);
+        home.getStaff().addAll(Arrays.asList(staff));
+
+        Ward[] built = IntStream.range(0, wards).parallel()
+                .mapToObj(this::ward)
+                .toArray(Ward[]::new);
+        List<Resident> residents = new ArrayList<>();
+        for (Ward ward : built) {
+            home.addWard(ward);
+            for (Room room : ward.getRooms()) {
+                for (Bed bed : room.getBeds()) {
+                    if (bed.getResident() != null) residents.add(bed.getResident());
+                }
+            }
+        }
+        home.getResidents().addAll(residents);
+
+        // Built in parallel but inserted in resident order, which keeps map iteration order stable
+        Prescription[] prescriptions = residents.parallelStream()
+                .map(this::prescription)
+                .toArray(Prescription[]::new);
+        for (Prescription p : prescriptions) {
+            if (p != null) home.getPrescriptions().put(p.getResidentId(), p);
+        }
+
+        Schedule schedule = home.getSchedule();
+        for (int i = managers; i < staff.length; i++) {
+            for (Shift shift : roster(i, staff[i].getRole())) {
+                schedule.addShift(staff[i].getStaffId(), shift);
+            }
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            schedule.setDoctorPresent(day, doctors > 0);
+        }
+
+        appendLogs(home, staff);
+        return home;
+    }
+
+    // ---------- Parts ----------
+
+    private Staff staffMember(int index) {
+        SplittableRandom random = random(1, index);
+        Role role;
+        String id;
+        if (index < managers) {
+            role = Role.MANAGER;
+            id = "M" + (index + 1);
+        } else if (index < managers + nurses) {
+            role = Role.NURSE;
+            id = "N" + (index - managers + 1);
+        } else {
+            role = Role.DOCTOR;
+            id = "D" + (index - managers - nurses + 1);
+        }
+        return Staff.create(role, id, name(random), gender(random), id.toLowerCase(), "pass");
+    }
+
+    private Ward ward(int index) {
+        SplittableRandom random = random(2, index);
+        Ward ward = new Ward("W" + (index + 1), "Ward " + (index + 1));
+        int bed = index * roomsPerWard * bedsPerRoom;
+        for (int r = 0; r < roomsPerWard; r++) {
+            Room room = new Room("W" + (index + 1) + "-R" + (r + 1));
+            for (int b = 0; b < bedsPerRoom; b++, bed++) {
+                Bed newBed = new Bed(bedId(bed));
+                if (random.nextDouble() < occupancy) {
+                    try {
+                        newBed.assignResident(new Resident("RES" + bed, name(random), gender(random),
+                                CONDITIONS[random.nextInt(CONDITIONS.length)]));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e); // a new bed is always vacant
+                    }
+                }
+                room.addBed(newBed);
+            }
+            ward.addRoom(room);
+        }
+        return ward;
+    }
+
+    private Prescription prescription(Resident resident) {
+        SplittableRandom random = random(3, resident.getResidentId().hashCode());
+        if (random.nextDouble() >= prescribed) return null;
+        Prescription p = new Prescription(resident.getResidentId());
+        int items = 1 + random.nextInt(maxItems);
+        for (int i = 0; i < items; i++) {
+            p.addItem(new Medicine(MEDICINES[random.nextInt(MEDICINES.length)]),
+                    DOSES[random.nextInt(DOSES.length)], ROUNDS[random.nextInt(ROUNDS.length)]);
+        }
+        return p;
+    }
+
+    /** Five 8-hour shifts a week: nurses on an early or late pattern, doctors on days. */
+    private List<Shift> roster(int index, Role role) {
+        SplittableRandom random = random(4, index);
+        LocalTime start = role == Role.DOCTOR ? LocalTime.of(9, 0)
+                : random.nextBoolean() ? LocalTime.of(6, 0) : LocalTime.of(14, 0);
+        int firstDay = random.nextInt(7);
+        List<Shift> shifts = new ArrayList<>(5);
+        for (int d = 0; d < 5; d++) {
+            shifts.add(new Shift(DayOfWeek.of((firstDay + d) % 7 + 1), start, start.plusHours(8)));
+        }
+        return shifts;
+    }
+
+    /** Entries are built in parallel a block at a time and appended in order. */
+    private void appendLogs(CareHome home, Staff[] staff) {
+        int beds = bedCount();
+        if (logEntries == 0 || beds < 2 || staff.length == 0) return;
+        List<LogEntry> logs = home.getLogs();
+        long start = logStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        for (int from = 0; from < logEntries; from += LOG_BLOCK) {
+            LogEntry[] block = IntStream.range(from, Math.min(logEntries, from + LOG_BLOCK)).parallel()
+                    .mapToObj(i -> {
+                        SplittableRandom random = random(5, i);
+                        String staffId = staff[random.nextInt(staff.length)].getStaffId();
+                        int bed = random.nextInt(beds - 1);
+                        long timestamp = start + i * 30_000L;
+                        return switch (random.nextInt(3)) {
+                            case 0 -> new LogEntry(ActionCode.MOVE_RESIDENT, staffId, "RES" + bed, bedId(bed),
+                                    bedId(bed + 1), null, timestamp);
+                            case 1 -> new LogEntry(ActionCode.VIEW_RESIDENT, staffId, "RES" + bed, bedId(bed),
+                                    null, null, timestamp);
+                            default -> new LogEntry(ActionCode.ADMINISTER_PRESCRIPTION, staffId, "RES" + bed, null,
+                                    MEDICINES[random.nextInt(MEDICINES.length)], DOSES[random.nextInt(DOSES.length)], timestamp);
+                        };
+                    })
+                    .toArray(LogEntry[]::new);
+            for (LogEntry entry : block) {
+                logs.add(entry);
+            }
+        }
+    }
+
+    // ---------- Helpers ----------
+
+    /** Independent stream for one part; kind keeps e.g. ward 3 and staff 3 apart. */
+    private SplittableRandom random(int kind, long index) {
+        return new SplittableRandom(mix(seed ^ mix(kind * 0x9E3779B97F4A7C15L + index)));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String name(SplittableRandom random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    private static Gender gender(SplittableRandom random) {
+        return random.nextBoolean() ? Gender.M : Gender.F;
+    }
+}
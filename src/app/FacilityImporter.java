@@ -0,0 +1,517 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Loads an existing facility from CSV or JSONL files: beds (with their wards and rooms),
+ * staff, residents, shifts and prescriptions, in that order, then {@link #finish} hands
+ * everything to the home at once.
+ *
+ * Files are streamed in chunks of lines. Chunks are parsed in parallel but applied in file
+ * order, and only a few chunks are in flight at a time, so memory use does not grow with
+ * the size of the file beyond the data being imported. Wards, staff, residents and
+ * prescriptions are held back until finish, so the home's bed registry and staff
+ * directory are filled in one pass instead of being updated per row.
+ *
+ * A file is JSONL if its name ends in .jsonl or .json, otherwise CSV with a header row.
+ * Columns (JSONL keys) per kind; those in brackets may be left out:
+ *
+ *   beds          ward, [ward_name], room, bed
+ *   staff         role, id, name, gender, username, password
+ *   residents     id, name, gender, [condition], [bed]
+ *   shifts        staff, day, start, end
+ *   prescriptions resident, medicine, dose, time
+ *
+ * Bad rows are counted and reported (the first {@value #MAX_ERRORS} with their line
+ * numbers) and do not stop the import. Nothing is journaled: import into a home before
+ * opening its journal, then save a snapshot.
+ */
+public class FacilityImporter {
+    public static final int CHUNK_LINES = 8192;
+    public static final int MAX_ERRORS = 100;
+
+    public enum Kind {
+        BEDS(new String[]{"ward", "room", "bed"}, new String[]{"ward_name"}),
+        STAFF(new String[]{"role", "id", "name", "gender", "username", "password"}, new String[0]),
+        RESIDENTS(new String[]{"id", "name", "gender"}, new String[]{"condition", "bed"}),
+        SHIFTS(new String[]{"staff", "day", "start", "end"}, new String[0]),
+        PRESCRIPTIONS(new String[]{"resident", "medicine", "dose", "time"}, new String[0]);
+
+        final String[] columns;  // required columns first, then optional ones
+        final int required;
+
+        Kind(String[] required, String[] optional) {
+            this.columns = new String[required.length + optional.length];
+            System.arraycopy(required, 0, columns, 0, required.length);
+            System.arraycopy(optional, 0, columns, required.length, optional.length);
+            this.required = required.length;
+        }
+    }
+
+    /** Outcome of importing one file. */
+    public static final class Report {
+        private final Kind kind;
+        private final long rows;
+        private final long failed;
+        private final List<String> errors;
+        private final long nanos;
+
+        Report(Kind kind, long rows, long failed, List<String> errors, long nanos) {
+            this.kind = kind;
+            this.rows = rows;
+            this.failed = failed;
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        public Kind getKind() { return kind; }
+        public long getRows() { return rows; }
+        public long getFailed() { return failed; }
+        /** The first few failures, as "line N: message". */
+        public List<String> getErrors() { return errors; }
+
+        public double getRowsPerSecond() {
+            return nanos == 0 ? 0 : rows / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %,d rows, %,d failed, %.2f s, %,.0f rows/s", kind, rows, failed, nanos / 1e9,
+                    getRowsPerSecond());
+        }
+    }
+
+    /** A row that could not be parsed. */
+    private record Failure(String message) {
+    }
+
+    /** A chunk's parsed rows: one object or Failure per line, null for blank lines. */
+    private record Chunk(long firstLine, Object[] parsed) {
+    }
+
+    private final CareHome home;
+    private final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    private final Map<String, Ward> wards = new LinkedHashMap<>();
+    private final Map<String, Room> rooms = new HashMap<>();
+    private final Map<String, Bed> beds = new HashMap<>();
+    private final Map<String, Staff> staff = new LinkedHashMap<>();
+    private final Set<String> usernames = new HashSet<>();
+    private final Map<String, Resident> residents = new LinkedHashMap<>();
+    private final Set<String> homeResidents = new HashSet<>();  // ids of the residents the home already had
+    private final Map<String, Prescription> prescriptions = new LinkedHashMap<>();
+    private final Map<String, Medicine> medicines = new ConcurrentHashMap<>();  // shared by the parsing threads
+
+    public FacilityImporter(CareHome home) {
+        if (home.isJournaling()) {
+            throw new IllegalStateException("Import before opening the journal; imported rows are not journaled");
+        }
+        this.home = home;
+        for (Resident r : home.getResidents()) {
+            homeResidents.add(r.getResidentId());
+        }
+    }
+
+    public Report importFile(Kind kind, Path file) throws IOException {
+        boolean json = file.getFileName().toString().matches("(?i).*\\.jsonl?");
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importLines(kind, in, json);
+        }
+    }
+
+    /** Import rows read from in; json selects JSONL over CSV. */
+    public Report importLines(Kind kind, BufferedReader in, boolean json) throws IOException {
+        long start = System.nanoTime();
+        int[] layout = null;  // column index in the file for each of kind.columns
+        long lineNumber = 0;
+        if (!json) {
+            String header = in.readLine();
+            lineNumber++;
+            if (header == null) {
+                return new Report(kind, 0, 0, List.of(), System.nanoTime() - start);
+            }
+            layout = layout(kind, csv(header.startsWith("﻿") ? header.substring(1) : header));
+        }
+
+        Counts counts = new Counts();
+        ArrayDeque<CompletableFuture<Chunk>> inFlight = new ArrayDeque<>();
+        int[] columns = layout;
+        while (true) {
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            String line;
+            while (chunk.size() < CHUNK_LINES && (line = in.readLine()) != null) {
+                chunk.add(line);
+            }
+            if (chunk.isEmpty()) break;
+            long first = lineNumber + 1;
+            lineNumber += chunk.size();
+            inFlight.add(CompletableFuture.supplyAsync(() -> parse(kind, chunk, first, columns)));
+            if (inFlight.size() > parallelism * 2) {
+                apply(kind, inFlight.removeFirst().join(), counts);
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            apply(kind, inFlight.removeFirst().join(), counts);
+        }
+        return new Report(kind, counts.rows, counts.failed, counts.errors, System.nanoTime() - start);
+    }
+
+    /**
+     * Hand everything imported so far to the home: each ward's beds join the bed registry
+     * in one step, and staff, residents and prescriptions are added in bulk.
+     */
+    public void finish() {
+        wards.values().forEach(home::addWard);
+        home.getStaff().addAll(staff.values());
+        home.getResidents().addAll(residents.values());
+        home.getPrescriptions().putAll(prescriptions);
+        home.resetMedicationRounds();
+        wards.clear();
+        rooms.clear();
+        beds.clear();
+        staff.clear();
+        residents.clear();
+        prescriptions.clear();
+    }
+
+    // ---------- Parsing (parallel) ----------
+
+    private Chunk parse(Kind kind, List<String> chunk, long firstLine, int[] layout) {
+        Object[] parsed = new Object[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            String line = chunk.get(i);
+            if (line.isBlank()) continue;
+            try {
+                String[] values = layout == null ? fromJson(kind, line) : fromCsv(kind, line, layout);
+                parsed[i] = build(kind, values);
+            } catch (RuntimeException e) {
+                parsed[i] = new Failure(e.getMessage());
+            }
+        }
+        return new Chunk(firstLine, parsed);
+    }
+
+    /** The objects that do not depend on what is already imported. */
+    private Object build(Kind kind, String[] v) {
+        return switch (kind) {
+            case BEDS -> v;
+            case STAFF -> Staff.create(Role.valueOf(v[0].toUpperCase()), v[1], v[2], gender(v[3]), v[4], v[5]);
+            case RESIDENTS -> new Object[]{new Resident(v[0], v[1], gender(v[2]), blankToNull(v[3])), blankToNull(v[4])};
+            case SHIFTS -> new Object[]{v[0], new Shift(DayOfWeek.valueOf(v[1].toUpperCase()),
+                    LocalTime.parse(v[2]), LocalTime.parse(v[3]))};
+            case PRESCRIPTIONS -> new Object[]{v[0], new PrescriptionLine(medicine(v[1]), v[2], LocalTime.parse(v[3]))};
+        };
+    }
+
+    /** One Medicine per distinct name, so a million lines do not hold a million copies of a few dozen drugs. */
+    private Medicine medicine(String name) {
+        return medicines.computeIfAbsent(name, Medicine::new);
+    }
+
+    private static Gender gender(String value) {
+        return Gender.valueOf(value.trim().toUpperCase());
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    private static int[] layout(Kind kind, List<String> header) {
+        int[] layout = new int[kind.columns.length];
+        for (int c = 0; c < kind.columns.length; c++) {
+            layout[c] = header.indexOf(kind.columns[c]);
+            if (layout[c] < 0 && c < kind.required) {
+                throw new IllegalArgumentException("Missing column " + kind.columns[c] + " for " + kind);
+            }
+        }
+        return layout;
+    }
+
+    private static String[] fromCsv(Kind kind, String line, int[] layout) {
+        List<String> fields = csv(line);
+        String[] values = new String[layout.length];
+        for (int c = 0; c < layout.length; c++) {
+            if (layout[c] >= 0 && layout[c] < fields.size()) {
+                values[c] = fields.get(layout[c]);
+            } else if (c < kind.required) {
+                throw new IllegalArgumentException("Missing " + kind.columns[c]);
+            }
+        }
+        return values;
+    }
+
+    private static String[] fromJson(Kind kind, String line) {
+        Map<String, String> object = json(line);
+        String[] values = new String[kind.columns.length];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = object.get(kind.columns[c]);
+            if (values[c] == null && c < kind.required) {
+                throw new IllegalArgumentException("Missing " + kind.columns[c]);
+            }
+        }
+        return values;
+    }
+
+    /** Fields of one CSV line; quoted fields may hold commas and doubled quotes. */
+    static List<String> csv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quote");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /** A flat JSON object: string, number, boolean or null values, all returned as text (null as null). */
+    static Map<String, String> json(String line) {
+        Map<String, String> object = new HashMap<>();
+        int[] pos = {skip(line, 0)};
+        expect(line, pos, '{');
+        if (peek(line, pos) == '}') {
+            pos[0]++;
+            return object;
+        }
+        while (true) {
+            String key = jsonString(line, pos);
+            expect(line, pos, ':');
+            String value;
+            if (peek(line, pos) == '"') {
+                value = jsonString(line, pos);
+            } else {
+                int from = pos[0];
+                while (pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) < 0) pos[0]++;
+                value = line.substring(from, pos[0]);
+                if (value.isEmpty()) throw new IllegalArgumentException("Missing value for " + key);
+                if (value.equals("null")) value = null;
+            }
+            object.put(key, value);
+            char next = peek(line, pos);
+            pos[0]++;
+            if (next == '}') return object;
+            if (next != ',') throw new IllegalArgumentException("Expected , or } at " + (pos[0] - 1));
+        }
+    }
+
+    private static String jsonString(String s, int[] pos) {
+        expect(s, pos, '"');
+        int close = s.indexOf('"', pos[0]);
+        if (close >= 0 && s.lastIndexOf('\\', close) < pos[0]) {  // no escapes: the common case
+            String plain = s.substring(pos[0], close);
+            pos[0] = close + 1;
+            return plain;
+        }
+        StringBuilder out = new StringBuilder();
+        int i = pos[0];
+        while (true) {
+            if (i >= s.length()) throw new IllegalArgumentException("Unterminated string");
+            char c = s.charAt(i++);
+            if (c == '"') break;
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char e = s.charAt(i++);
+            switch (e) {
+                case 'n' -> out.append('\n');
+                case 't' -> out.append('\t');
+                case 'r' -> out.append('\r');
+                case 'b' -> out.append('\b');
+                case 'f' -> out.append('\f');
+                case 'u' -> {
+                    out.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                }
+                default -> out.append(e);  // \" \\ \/
+            }
+        }
+        pos[0] = i;
+        return out.toString();
+    }
+
+    private static void expect(String s, int[] pos, char c) {
+        if (peek(s, pos) != c) throw new IllegalArgumentException("Expected " + c + " at " + pos[0]);
+        pos[0]++;
+    }
+
+    /** Next non-space character (leaving pos on it), or 0 at the end. */
+    private static char peek(String s, int[] pos) {
+        pos[0] = skip(s, pos[0]);
+        return pos[0] < s.length() ? s.charAt(pos[0]) : 0;
+    }
+
+    private static int skip(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    // ---------- Applying (in file order) ----------
+
+    private static final class Counts {
+        long rows;
+        long failed;
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private void apply(Kind kind, Chunk chunk, Counts counts) {
+        Object[] parsed = chunk.parsed();
+        for (int i = 0; i < parsed.length; i++) {
+            Object item = parsed[i];
+            if (item == null) continue;  // blank line
+            counts.rows++;
+            String error = item instanceof Failure f ? f.message() : applyOne(kind, item);
+            if (error != null) {
+                counts.failed++;
+                if (counts.errors.size() < MAX_ERRORS) {
+                    counts.errors.add("line " + (chunk.firstLine() + i) + ": " + error);
+                }
+            }
+        }
+    }
+
+    /** Add one parsed row; returns why it was rejected, or null. */
+    private String applyOne(Kind kind, Object item) {
+        switch (kind) {
+            case BEDS -> {
+                String[] v = (String[]) item;
+                if (beds.containsKey(v[2]) || home.getBedRegistry().find(v[2]) != null) {
+                    return "Duplicate bed id: " + v[2];
+                }
+                Ward ward = wards.computeIfAbsent(v[0], id -> new Ward(id, v[3] == null || v[3].isBlank() ? id : v[3]));
+                Room room = rooms.get(v[1]);
+                if (room == null) {
+                    room = new Room(v[1]);
+                    rooms.put(v[1], room);
+                    ward.addRoom(room);
+                } else if (room.getWard() != ward) {
+                    return "Room " + v[1] + " is already in another ward";
+                }
+                Bed bed = new Bed(v[2]);
+                room.addBed(bed);
+                beds.put(v[2], bed);
+            }
+            case STAFF -> {
+                Staff s = (Staff) item;
+                if (staff.containsKey(s.getStaffId()) || home.findStaff(s.getStaffId()) != null) {
+                    return "Duplicate staff id: " + s.getStaffId();
+                }
+                if (!usernames.add(s.getUsername()) || home.findStaffByUsername(s.getUsername()) != null) {
+                    return "Duplicate username: " + s.getUsername();
+                }
+                staff.put(s.getStaffId(), s);
+            }
+            case RESIDENTS -> {
+                Object[] v = (Object[]) item;
+                Resident r = (Resident) v[0];
+                if (residents.putIfAbsent(r.getResidentId(), r) != null) {
+                    return "Duplicate resident id: " + r.getResidentId();
+                }
+                if (v[1] != null) {
+                    String bedId = (String) v[1];
+                    Bed bed = beds.containsKey(bedId) ? beds.get(bedId) : home.getBedRegistry().find(bedId);
+                    if (bed == null || !bed.isVacant()) {
+                        residents.remove(r.getResidentId());
+                        return bed == null ? "Bed not found: " + bedId : "Bed " + bedId + " is already occupied";
+                    }
+                    try {
+                        bed.assignResident(r);
+                    } catch (Exception e) {
+                        residents.remove(r.getResidentId());
+                        return e.getMessage();
+                    }
+                }
+            }
+            case SHIFTS -> {
+                Object[] v = (Object[]) item;
+                String staffId = (String) v[0];
+                if (!staff.containsKey(staffId) && home.findStaff(staffId) == null) {
+                    return "Staff not found: " + staffId;
+                }
+                home.getSchedule().addShift(staffId, (Shift) v[1]);
+            }
+            case PRESCRIPTIONS -> {
+                Object[] v = (Object[]) item;
+                String residentId = (String) v[0];
+                Prescription p = prescriptions.get(residentId);
+                if (p == null) {
+                    if (!residents.containsKey(residentId) && !homeResidents.contains(residentId)) {
+                        return "Resident not found: " + residentId;
+                    }
+                    p = home.getPrescriptions().get(residentId);
+                    if (p == null) p = new Prescription(residentId);
+                    prescriptions.put(residentId, p);
+                }
+                p.addLine((PrescriptionLine) v[1]);
+            }
+        }
+        return null;
+    }
+
+    // ---------- Command line ----------
+
+    /**
+     * java app.FacilityImporter OUT_SNAPSHOT [--beds F] [--staff F] [--residents F] [--shifts F] [--prescriptions F]
+     *
+     * Imports the files into an empty home and saves it as a snapshot that Main can load.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length % 2 == 0) {
+            System.out.println("Usage: java app.FacilityImporter OUT_SNAPSHOT [--beds F] [--staff F] [--residents F]"
+                    + " [--shifts F] [--prescriptions F]");
+            return;
+        }
+        Map<Kind, Path> files = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i += 2) {
+            files.put(Kind.valueOf(args[i].substring(2).toUpperCase()), Path.of(args[i + 1]));
+        }
+        CareHome home = new CareHome();
+        FacilityImporter importer = new FacilityImporter(home);
+        for (Kind kind : Kind.values()) {  // dependency order, whatever the argument order
+            Path file = files.get(kind);
+            if (file == null) continue;
+            Report report = importer.importFile(kind, file);
+            System.out.println(report);
+            report.getErrors().forEach(e -> System.out.println("  " + e));
+        }
+        importer.finish();
+        home.saveData(new java.io.File(args[0]));
+        home.close();
+    }
+}
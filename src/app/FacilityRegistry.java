@@ -0,0 +1,215 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Many independent care homes in one process, one per facility id. Each shard is a CareHome
+ * of its own, with its own wards, staff, schedule, locks, journal and log store, kept in
+ * root/&lt;id&gt;/ the way Main keeps the single home:
+ *
+ *   carehome.dat       snapshot
+ *   carehome.journal   journal since the snapshot
+ *   logs/              action log
+ *
+ * Shards share nothing, so work on different facilities never contends. Group-wide
+ * operations (compliance, saves, closing) run on every shard in parallel on the registry's
+ * worker threads; occupancy is read from each home's counters, which is cheap enough to
+ * do in turn.
+ */
+public class FacilityRegistry implements AutoCloseable {
+    static final String DATA_FILE = "carehome.dat";
+    static final String JOURNAL_FILE = "carehome.journal";
+    static final String LOG_DIR = "logs";
+
+    /** Work run on one shard; the facility id is passed along for reporting. */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run(String facilityId, CareHome home) throws Exception;
+    }
+
+    private final File root;
+    private final NavigableMap<String, CareHome> shards = new ConcurrentSkipListMap<>();
+    private final ExecutorService workers;
+
+    public FacilityRegistry(File root) {
+        this(root, Runtime.getRuntime().availableProcessors());
+    }
+
+    public FacilityRegistry(File root, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one worker thread: " + threads);
+        }
+        this.root = root;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "facility-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ---------- Shards ----------
+
+    /**
+     * The facility's home: already open, loaded from its directory (replaying its journal),
+     * or new and empty if the directory holds nothing yet.
+     */
+    public synchronized CareHome open(String facilityId) throws Exception {
+        CareHome home = shards.get(facilityId);
+        if (home != null) return home;
+        File data = dataFile(facilityId);
+        home = data.exists() ? CareHome.read(data) : new CareHome();
+        return attach(facilityId, home);
+    }
+
+    /**
+     * Take over a home built elsewhere (imported or generated) as a new facility. It must not
+     * be journaling yet; from here on it journals and logs in the facility's directory.
+     */
+    public synchronized CareHome add(String facilityId, CareHome home) throws Exception {
+        if (shards.containsKey(facilityId) || dataFile(facilityId).exists()) {
+            throw new IllegalArgumentException("Facility already exists: " + facilityId);
+        }
+        if (home.isJournaling()) {
+            throw new IllegalStateException("Home is already journaling elsewhere");
+        }
+        return attach(facilityId, home);
+    }
+
+    private CareHome attach(String facilityId, CareHome home) throws Exception {
+        File dir = directory(facilityId);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        home.openLogStore(new File(dir, LOG_DIR));
+        home.openJournal(new File(dir, JOURNAL_FILE), dataFile(facilityId));
+        shards.put(facilityId, home);
+        return home;
+    }
+
+    public CareHome get(String facilityId) {
+        CareHome home = shards.get(facilityId);
+        if (home == null) {
+            throw new NoSuchElementException("No open facility: " + facilityId);
+        }
+        return home;
+    }
+
+    /** Ids of the open facilities, in order. */
+    public List<String> getFacilityIds() {
+        return new ArrayList<>(shards.keySet());
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    /** Save and close one facility; its files stay and open brings it back. */
+    public synchronized void close(String facilityId) throws Exception {
+        CareHome home = get(facilityId);
+        home.saveData(dataFile(facilityId));
+        home.close();
+        shards.remove(facilityId);
+    }
+
+    File directory(String facilityId) {
+        if (facilityId.isEmpty() || !facilityId.matches("[A-Za-z0-9_.-]+") || facilityId.startsWith(".")) {
+            throw new IllegalArgumentException("Facility ids are letters, digits, '_', '-' and '.': " + facilityId);
+        }
+        return new File(root, facilityId);
+    }
+
+    File dataFile(String facilityId) {
+        return new File(directory(facilityId), DATA_FILE);
+    }
+
+    // ---------- Group Operations ----------
+
+    /**
+     * Run task on every open facility at once and return the results by facility id. Waits
+     * for all of them; if any failed, the first failure is thrown with the rest suppressed.
+     */
+    public <T> Map<String, T> forEach(Task<T> task) throws Exception {
+        Map<String, CompletableFuture<T>> running = new LinkedHashMap<>();
+        shards.forEach((id, home) -> running.put(id, CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run(id, home);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, workers)));
+
+        Map<String, T> results = new LinkedHashMap<>();
+        Exception failed = null;
+        for (Map.Entry<String, CompletableFuture<T>> e : running.entrySet()) {
+            try {
+                results.put(e.getKey(), e.getValue().join());
+            } catch (CompletionException ce) {
+                Exception cause = ce.getCause() instanceof Exception c ? c : ce;
+                if (failed == null) failed = cause; else failed.addSuppressed(cause);
+            }
+        }
+        if (failed != null) throw failed;
+        return results;
+    }
+
+    /** Beds and residents across the group. */
+    public Occupancy getOccupancy() {
+        Occupancy total = new Occupancy();
+        for (CareHome home : shards.values()) {
+            total.add(home.getOccupancy(), 1);
+        }
+        return total;
+    }
+
+    public Map<String, Occupancy> getOccupancyByFacility() {
+        Map<String, Occupancy> byFacility = new LinkedHashMap<>();
+        shards.forEach((id, home) -> byFacility.put(id, home.getOccupancy()));
+        return byFacility;
+    }
+
+    /** Each facility's compliance report, checked in parallel. */
+    public Map<String, ComplianceReport> getComplianceReports() throws Exception {
+        return forEach((id, home) -> home.getComplianceReport());
+    }
+
+    /** Snapshot every facility to its data file, in parallel. */
+    public void saveAll() throws Exception {
+        forEach((id, home) -> {
+            home.saveData(dataFile(id));
+            return null;
+        });
+    }
+
+    /** Save and close every facility, then stop the worker threads. */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            forEach((id, home) -> {
+                home.saveData(dataFile(id));
+                home.close();
+                return null;
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new IOException("Could not close facilities", e);
+        } finally {
+            shards.clear();
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Rooms with at least one vacant bed, bucketed by who may take it: empty rooms, and rooms
+ * whose residents are all of one gender. Full rooms and mixed rooms are not kept. Each
+ * ward has one and so does the home's bed registry; rooms move between buckets as their
+ * occupancy changes (see Room), so finding a bed never scans the ward.
+ *
+ * Within a bucket rooms are in the order they were created, so choices are repeatable.
+ */
+final class FreeRooms {
+    static final int FULL = -1;
+    static final int EMPTY = 0;
+    static final int MIXED = Gender.values().length + 1;  // 1 + ordinal is a single-gender room
+
+    private static final Comparator<Room> ORDER = Comparator.comparingLong(Room::getOrder);
+
+    private final List<NavigableSet<Room>> buckets = new ArrayList<>();
+
+    FreeRooms() {
+        for (int key = EMPTY; key < MIXED; key++) {
+            buckets.add(new ConcurrentSkipListSet<>(ORDER));
+        }
+    }
+
+    /** The bucket for a room with this occupancy. */
+    static int key(Occupancy o) {
+        if (o.getVacant() <= 0) return FULL;
+        if (o.getOccupied() == 0) return EMPTY;
+        for (Gender g : Gender.values()) {
+            if (o.getOccupied(g) == o.getOccupied()) return key(g);
+        }
+        return MIXED;
+    }
+
+    static int key(Gender gender) {
+        return gender == null ? MIXED : 1 + gender.ordinal();
+    }
+
+    void move(Room room, int from, int to) {
+        if (from == to) return;
+        if (tracked(from)) buckets.get(from).remove(room);
+        if (tracked(to)) buckets.get(to).add(room);
+    }
+
+    void addAll(List<Room> rooms) {
+        rooms.forEach(room -> move(room, FULL, room.getFreeKey()));
+    }
+
+    void removeAll(List<Room> rooms) {
+        rooms.forEach(room -> move(room, room.getFreeKey(), FULL));
+    }
+
+    /** Rooms in the bucket, oldest first; live, so it may change while iterated. */
+    NavigableSet<Room> rooms(int key) {
+        return tracked(key) ? buckets.get(key) : new ConcurrentSkipListSet<>(ORDER);
+    }
+
+    void clear() {
+        buckets.forEach(NavigableSet::clear);
+    }
+
+    private static boolean tracked(int key) {
+        return key >= EMPTY && key < MIXED;
+    }
+}
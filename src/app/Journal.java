@@ -0,0 +1,226 @@
+package app;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of CareHome mutations.
+ *
+ * Records are framed as [length][crc32][seq, op, timestamp, body] and written to numbered
+ * generation files next to the base file ("carehome.journal.1", ".2", ...). Compaction
+ * starts a new generation, snapshots the home, then deletes the older generations.
+ * Callers that need durability call {@link #sync(long)}; concurrent callers share one fsync
+ * (group commit).
+ *
+ * Two locks: the journal's monitor guards appends and the channel, and syncLock serializes
+ * fsyncs. Anything needing both takes syncLock first.
+ */
+public class Journal implements Closeable {
+
+    /** Writes the op-specific part of a record. */
+    public interface Body {
+        void write(DataOutput out) throws IOException;
+    }
+
+    /** Applies one record during replay. */
+    public interface Replayer {
+        void apply(JournalOp op, long seq, long timestamp, DataInput in) throws Exception;
+    }
+
+    private final File base;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+    private final CRC32 crc = new CRC32();
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+    private int generation;
+    private long lastSeq;
+    private long durableSeq;  // guarded by syncLock
+    private long bytes;     // total size of all generations
+
+    private Journal(File base) {
+        this.base = base;
+    }
+
+    /**
+     * Open the journal at base, replaying every record with a sequence number above
+     * afterSeq (the last record already folded into the loaded snapshot).
+     */
+    public static Journal open(File base, long afterSeq, Replayer replayer) throws Exception {
+        Journal journal = new Journal(base);
+        journal.lastSeq = afterSeq;
+        List<Integer> generations = journal.generations();
+        for (int gen : generations) {
+            journal.replay(journal.fileFor(gen), afterSeq, replayer);
+        }
+        journal.generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1);
+        journal.channel = FileChannel.open(journal.fileFor(journal.generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journal.durableSeq = journal.lastSeq;
+        for (int gen : journal.generations()) {
+            journal.bytes += journal.fileFor(gen).length();
+        }
+        return journal;
+    }
+
+    /** Append one record and return its sequence number. The record is not yet durable. */
+    public synchronized long append(JournalOp op, long timestamp, Body body) throws IOException {
+        long seq = lastSeq + 1;
+        buffer.reset();
+        bufferOut.writeLong(seq);
+        bufferOut.writeByte(op.ordinal());
+        bufferOut.writeLong(timestamp);
+        body.write(bufferOut);
+        bufferOut.flush();
+
+        crc.reset();
+        crc.update(buffer.toByteArray(), 0, buffer.size());
+        ByteBuffer frame = ByteBuffer.allocate(8 + buffer.size());
+        frame.putInt(buffer.size()).putInt((int) crc.getValue()).put(buffer.toByteArray()).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+        bytes += frame.capacity();
+        lastSeq = seq;
+        return seq;
+    }
+
+    /**
+     * Block until record seq is on disk. Whoever gets here first fsyncs everything written
+     * so far; callers queued behind it usually find their record already covered.
+     */
+    public void sync(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (durableSeq >= seq) return;
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = lastSeq;
+                current = channel;
+            }
+            if (current.isOpen()) {  // else close() forced it
+                current.force(false);
+            }
+            durableSeq = target;
+        }
+    }
+
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /** Bytes held in all generations, used to decide when to compact. */
+    public synchronized long size() {
+        return bytes;
+    }
+
+    /**
+     * Close the current generation and start a new one. Returns the generation number that
+     * new records go to; everything older is covered by a snapshot taken at lastSeq().
+     */
+    public int rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+                generation++;
+                channel = FileChannel.open(fileFor(generation).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                durableSeq = Math.max(durableSeq, lastSeq);
+                return generation;
+            }
+        }
+    }
+
+    /** Delete generations older than keepFrom once a snapshot covering them is durable. */
+    public synchronized void deleteBefore(int keepFrom) {
+        for (int gen : generations()) {
+            File file = fileFor(gen);
+            long length = file.length();
+            if (gen < keepFrom && file.delete()) {
+                bytes -= length;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (channel.isOpen()) {
+                    channel.force(false);
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    // ---------- Helpers ----------
+
+    private File fileFor(int gen) {
+        return new File(base.getPath() + "." + gen);
+    }
+
+    private List<Integer> generations() {
+        List<Integer> result = new ArrayList<>();
+        File dir = base.getAbsoluteFile().getParentFile();
+        String prefix = base.getName() + ".";
+        String[] names = dir.list();
+        if (names == null) return result;
+        for (String name : names) {
+            if (!name.startsWith(prefix)) continue;
+            try {
+                result.add(Integer.parseInt(name.substring(prefix.length())));
+            } catch (NumberFormatException ignored) {
+                // not a journal generation
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * Replay one generation file. A torn or corrupt record at the tail (a crash mid-append)
+     * ends the file: it is truncated there so new records follow the last good one.
+     */
+    private void replay(File file, long afterSeq, Replayer replayer) throws Exception {
+        long goodLength = 0;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in)));
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = data.readInt();
+                    int checksum = data.readInt();
+                    if (length < 0 || length > in.size()) break;
+                    payload = new byte[length];
+                    data.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) break;
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                long seq = record.readLong();
+                JournalOp op = JournalOp.values()[record.readByte()];
+                long timestamp = record.readLong();
+                if (seq > afterSeq) {
+                    replayer.apply(op, seq, timestamp, record);
+                }
+                lastSeq = Math.max(lastSeq, seq);
+                goodLength += 8 + payload.length;
+            }
+            if (goodLength < in.size()) {
+                in.truncate(goodLength);
+            }
+        }
+    }
+}
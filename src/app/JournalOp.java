@@ -0,0 +1,24 @@
+package app;
+
+/**
+ * Kinds of record written to the CareHome journal. Records store the ordinal,
+ * so new kinds must only ever be appended at the end.
+ */
+public enum JournalOp {
+    ADD_RESIDENT,
+    ADD_STAFF,
+    ASSIGN_BED,
+    MOVE_RESIDENT,
+    ATTACH_PRESCRIPTION,
+    UPDATE_PRESCRIPTION,
+    ADMINISTER_PRESCRIPTION,
+    ASSIGN_SHIFT,
+    SET_DOCTOR_PRESENT,
+    LOG,
+    VIEW_RESIDENT,
+    UPDATE_PRESCRIPTION_LINES,
+    ADMIT_RESIDENTS,
+    ASSIGN_BEDS,
+    MOVE_RESIDENTS,
+    ASSIGN_SHIFTS
+}
@@ -1,36 +1,119 @@
 package app;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 
 /**
- * Represents a single action log in the care home system.
+ * One entry in the action log: who did what to which resident and bed, and when.
+ *
+ * Entries hold the ids they were given (the ones already held by the Bed, Resident and
+ * Staff objects) and a millisecond timestamp, so logging an action allocates nothing but
+ * the entry itself. The English sentence is only built by {@link #getAction()} when an
+ * entry is displayed.
+ *
+ * Which fields are set depends on the code: target is the destination bed of a move or the
+ * medicine of a prescription change, and detail is the dose given or a note's free text.
+ *
+ * A bulk action is one entry with an {@link Item} per resident, bed or shift it touched,
+ * using the same fields the single action would, so every item is kept and indexed.
  */
 public class LogEntry implements Serializable {
+    private final ActionCode code;
     private final String staffId;
-    private final String action;
-    private final LocalDateTime timestamp;
+    private final String residentId;
+    private final String bedId;
+    private final String target;
+    private final String detail;
+    private final long timestamp; // epoch millis
+    private final List<Item> items;
 
-    public LogEntry(String staffId, String action, LocalDateTime timestamp) {
+    /** One resident, bed or shift of a bulk action; target is a move's destination bed or the rostered staff id. */
+    public record Item(String residentId, String bedId, String target, String detail) {
+        /** "R1" for an admission, "R1->B1" for a placement, "R1 B1->B2" for a move, "N2 shift" for a shift. */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (residentId != null) sb.append(residentId);
+            if (bedId != null) sb.append(target != null ? " " : "->").append(bedId);
+            if (target != null) sb.append(bedId != null ? "->" : "").append(target);
+            if (detail != null) sb.append(' ').append(detail);
+            return sb.toString();
+        }
+    }
+
+    public LogEntry(ActionCode code, String staffId, String residentId, String bedId,
+                    String target, String detail, long timestamp) {
+        this(code, staffId, residentId, bedId, target, detail, timestamp, List.of());
+    }
+
+    public LogEntry(ActionCode code, String staffId, String residentId, String bedId,
+                    String target, String detail, long timestamp, List<Item> items) {
+        this.code = code;
         this.staffId = staffId;
-        this.action = action;
+        this.residentId = residentId;
+        this.bedId = bedId;
+        this.target = target;
+        this.detail = detail;
         this.timestamp = timestamp;
+        this.items = List.copyOf(items);
     }
 
-    public String getStaffId() {
-        return staffId;
+    /** A bulk action by staffId touching items. */
+    public static LogEntry bulk(ActionCode code, String staffId, List<Item> items, long timestamp) {
+        return new LogEntry(code, staffId, null, null, null, null, timestamp, items);
     }
 
-    public String getAction() {
-        return action;
+    /** A free-text entry, as written by {@link CareHome#log}. */
+    public static LogEntry note(String staffId, String text, long timestamp) {
+        return new LogEntry(ActionCode.NOTE, staffId, null, null, null, text, timestamp);
     }
 
+    public ActionCode getCode() { return code; }
+    public String getStaffId() { return staffId; }
+    public String getResidentId() { return residentId; }
+    public String getBedId() { return bedId; }
+    public String getTarget() { return target; }
+    public String getDetail() { return detail; }
+    public long getEpochMillis() { return timestamp; }
+    public List<Item> getItems() { return items; }
+
+    /** The timestamp in the system time zone. */
     public LocalDateTime getTimestamp() {
-        return timestamp;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+
+    /** The entry as a sentence, built on each call. */
+    public String getAction() {
+        return switch (code) {
+            case NOTE -> detail;
+            case ASSIGN_BED -> "Assigned resident " + residentId + " to bed " + bedId;
+            case MOVE_RESIDENT -> "Moved resident " + residentId + " from " + bedId + " to " + target;
+            case VIEW_RESIDENT -> "Viewed resident details for bed " + bedId;
+            case ATTACH_PRESCRIPTION -> "Attached prescription for resident " + residentId;
+            case UPDATE_PRESCRIPTION -> "Updated prescription for resident " + residentId + " with " + target;
+            case ADMINISTER_PRESCRIPTION -> "Administered " + detail + " of " + target + " to resident " + residentId
+                    + " at " + getTimestamp().toLocalTime();
+            case ADMIT_RESIDENTS -> "Admitted " + items.size() + " residents: " + itemList();
+            case ASSIGN_BEDS -> "Assigned " + items.size() + " residents to beds: " + itemList();
+            case MOVE_RESIDENTS -> "Moved " + items.size() + " residents: " + itemList();
+            case ASSIGN_SHIFTS -> "Assigned " + items.size() + " shifts: " + itemList();
+        };
+    }
+
+    private String itemList() {
+        StringBuilder sb = new StringBuilder();
+        for (Item item : items) {
+            if (!sb.isEmpty()) sb.append(", ");
+            sb.append(item);
+        }
+        return sb.toString();
     }
 
     @Override
     public String toString() {
-        return "[" + timestamp + "] Staff " + staffId + ": " + action;
+        return "[" + getTimestamp() + "] Staff: " + staffId + " -> " + getAction();
     }
 }
@@ -0,0 +1,217 @@
+package app;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * In-memory secondary indexes over a {@link LogStore}: a sorted posting list of entry
+ * positions per staff member, resident, bed and action code, plus each entry's timestamp
+ * and code. A bulk entry is posted under every resident and bed its items name.
+ *
+ * A query walks the shortest posting list among its filters, inside the position range its
+ * time bounds allow, and checks the other filters by binary search, so it only touches
+ * entries near the answer however long the history is. Entries are not decoded until a
+ * result is read.
+ *
+ * Timestamps are nearly but not strictly increasing (concurrent writers), so the time range
+ * is located with the running maximum timestamp and the largest lag seen behind it. The
+ * running maximum is kept per block of 64 entries and finished off from the timestamps.
+ *
+ * Not thread-safe on its own: the store appends under its lock, and queries capture the
+ * current arrays under the same lock before iterating them.
+ */
+final class LogIndex {
+    private static final int BLOCK = 64;
+
+    private long[] times = new long[1024];
+    private long[] blockMaxTimes = new long[16];  // running maximum of times at each block's end, so non-decreasing
+    private byte[] codes = new byte[1024];
+    private int count;
+    private long maxLag;
+    private final Map<String, Postings> byStaff = new HashMap<>();
+    private final Map<String, Postings> byResident = new HashMap<>();
+    private final Map<String, Postings> byBed = new HashMap<>();
+    private final Map<ActionCode, Postings> byCode = new EnumMap<>(ActionCode.class);
+
+    int size() {
+        return count;
+    }
+
+    void add(LogEntry e) {
+        if (count == times.length) {
+            int grown = count * 2;
+            times = Arrays.copyOf(times, grown);
+            codes = Arrays.copyOf(codes, grown);
+        }
+        if (count / BLOCK == blockMaxTimes.length) {
+            blockMaxTimes = Arrays.copyOf(blockMaxTimes, blockMaxTimes.length * 2);
+        }
+        long t = e.getEpochMillis();
+        long max = count == 0 ? t : Math.max(blockMaxTimes[(count - 1) / BLOCK], t);
+        times[count] = t;
+        blockMaxTimes[count / BLOCK] = max;
+        codes[count] = (byte) e.getCode().ordinal();
+        maxLag = Math.max(maxLag, max - t);
+
+        post(byStaff, e.getStaffId());
+        post(byResident, e.getResidentId());
+        post(byBed, e.getBedId());
+        if (e.getCode() == ActionCode.MOVE_RESIDENT) {
+            post(byBed, e.getTarget());
+        }
+        for (LogEntry.Item item : e.getItems()) {
+            post(byResident, item.residentId());
+            post(byBed, item.bedId());
+            if (e.getCode() == ActionCode.MOVE_RESIDENTS) {
+                post(byBed, item.target());
+            }
+        }
+        byCode.computeIfAbsent(e.getCode(), k -> new Postings()).add(count);
+        count++;
+    }
+
+    private void post(Map<String, Postings> index, String key) {
+        if (key == null) return;
+        Postings p = index.computeIfAbsent(key, k -> new Postings());
+        if (p.size == 0 || p.values[p.size - 1] != count) {  // a bulk entry can name a bed twice
+            p.add(count);
+        }
+    }
+
+    /** Positions of the matching entries, in the query's order; page bounds are left to the caller. */
+    IntStream positions(LogQuery q) {
+        int lo = firstAtOrAfter(q.from);
+        int hi = q.to == Long.MAX_VALUE ? count : firstAtOrAfter(saturatedAdd(q.to, maxLag));
+
+        int[][] filters = new int[4][];
+        int[] lengths = new int[4];
+        int n = 0;
+        for (Postings p : new Postings[]{
+                lookup(byStaff, q.staffId), lookup(byResident, q.residentId), lookup(byBed, q.bedId),
+                q.codes != null && q.codes.size() == 1 ? byCode.getOrDefault(q.codes.iterator().next(), Postings.EMPTY) : null}) {
+            if (p == null) continue;
+            filters[n] = p.values;
+            lengths[n++] = p.size;
+        }
+        int shortest = 0;
+        for (int i = 1; i < n; i++) {
+            if (lengths[i] < lengths[shortest]) shortest = i;
+        }
+
+        Candidates candidates;
+        if (n == 0) {
+            candidates = new Candidates(null, lo, hi, q.newestFirst);
+        } else {
+            int[] driver = filters[shortest];
+            candidates = new Candidates(driver, lowerBound(driver, lengths[shortest], lo),
+                    lowerBound(driver, lengths[shortest], hi), q.newestFirst);
+        }
+
+        long[] timesNow = times;
+        byte[] codesNow = codes;
+        int[][] others = new int[n][];
+        int[] otherLengths = new int[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == shortest) continue;
+            others[m] = filters[i];
+            otherLengths[m++] = lengths[i];
+        }
+        int otherCount = m;
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(candidates,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .filter(pos -> {
+                    long t = timesNow[pos];
+                    if (t < q.from || t >= q.to) return false;
+                    if (q.codes != null && !q.codes.contains(ActionCode.values()[codesNow[pos]])) return false;
+                    for (int i = 0; i < otherCount; i++) {
+                        if (Arrays.binarySearch(others[i], 0, otherLengths[i], pos) < 0) return false;
+                    }
+                    return true;
+                });
+    }
+
+    private static Postings lookup(Map<String, Postings> index, String key) {
+        return key == null ? null : index.getOrDefault(key, Postings.EMPTY);
+    }
+
+    /** First position whose running maximum timestamp is at least t. */
+    private int firstAtOrAfter(long t) {
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        int lo = 0;
+        int hi = blocks;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockMaxTimes[mid] < t) lo = mid + 1; else hi = mid;
+        }
+        if (lo == blocks) return count;
+        int pos = lo * BLOCK;
+        long max = lo == 0 ? Long.MIN_VALUE : blockMaxTimes[lo - 1];
+        while ((max = Math.max(max, times[pos])) < t) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int lowerBound(int[] values, int size, int key) {
+        int i = Arrays.binarySearch(values, 0, size, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < a ? Long.MAX_VALUE : sum;
+    }
+
+    /** Positions from a posting list slice (or a plain range when there is none), either direction. */
+    private static final class Candidates implements PrimitiveIterator.OfInt {
+        private final int[] values;
+        private final int from;
+        private final int to;
+        private final boolean reverse;
+        private int next;
+
+        Candidates(int[] values, int from, int to, boolean reverse) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.reverse = reverse;
+            this.next = reverse ? to - 1 : from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return reverse ? next >= from : next < to;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) throw new NoSuchElementException();
+            int i = reverse ? next-- : next++;
+            return values == null ? i : values[i];
+        }
+    }
+
+    /** Growable sorted list of entry positions. */
+    private static final class Postings {
+        static final Postings EMPTY = new Postings();
+
+        int[] values = new int[4];
+        int size;
+
+        void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+    }
+}
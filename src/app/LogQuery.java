@@ -0,0 +1,84 @@
+package app;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+
+/**
+ * Filter for {@link CareHome#queryLogs}: any combination of staff member, resident, bed,
+ * action codes and a time range, plus paging. Unset filters match everything.
+ *
+ * A bed filter matches entries about that bed and moves into it. The time range includes
+ * from and excludes to.
+ */
+public class LogQuery {
+    String staffId;
+    String residentId;
+    String bedId;
+    EnumSet<ActionCode> codes;
+    long from = Long.MIN_VALUE;
+    long to = Long.MAX_VALUE;
+    boolean newestFirst;
+    int offset;
+    int limit = Integer.MAX_VALUE;
+
+    public LogQuery staff(String staffId) {
+        this.staffId = staffId;
+        return this;
+    }
+
+    public LogQuery resident(String residentId) {
+        this.residentId = residentId;
+        return this;
+    }
+
+    public LogQuery bed(String bedId) {
+        this.bedId = bedId;
+        return this;
+    }
+
+    public LogQuery actions(ActionCode first, ActionCode... rest) {
+        this.codes = EnumSet.of(first, rest);
+        return this;
+    }
+
+    /** Entries from from (inclusive) to to (exclusive), in the system time zone; null leaves that end open. */
+    public LogQuery between(LocalDateTime from, LocalDateTime to) {
+        this.from = from == null ? Long.MIN_VALUE : from.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        this.to = to == null ? Long.MAX_VALUE : to.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return this;
+    }
+
+    public LogQuery betweenMillis(long from, long to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public LogQuery newestFirst() {
+        this.newestFirst = true;
+        return this;
+    }
+
+    /** Only the given page of results, counting pages from 0. */
+    public LogQuery page(int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Bad page " + page + " of size " + pageSize);
+        }
+        this.offset = Math.multiplyExact(page, pageSize);
+        this.limit = pageSize;
+        return this;
+    }
+
+    public boolean matches(LogEntry e) {
+        return (staffId == null || staffId.equals(e.getStaffId()))
+                && (residentId == null || residentId.equals(e.getResidentId())
+                        || e.getItems().stream().anyMatch(i -> residentId.equals(i.residentId())))
+                && (bedId == null || bedId.equals(e.getBedId())
+                        || e.getCode() == ActionCode.MOVE_RESIDENT && bedId.equals(e.getTarget())
+                        || e.getItems().stream().anyMatch(i -> bedId.equals(i.bedId())
+                                || e.getCode() == ActionCode.MOVE_RESIDENTS && bedId.equals(i.target())))
+                && (codes == null || codes.contains(e.getCode()))
+                && e.getEpochMillis() >= from && e.getEpochMillis() < to;
+    }
+}
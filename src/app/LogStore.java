@@ -0,0 +1,528 @@
+package app;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Action log kept on disk in fixed-size segment files written through memory maps.
+ *
+ * Each segment holds length-prefixed records back to back; a zero length marks the end of
+ * the written part (new segments are zero-filled). A record's length is written last, after
+ * its body and the zero that ends the segment behind it, so a crash mid-append leaves the
+ * record unreadable rather than half-read. Only the segment being written is kept mapped for
+ * writing, plus a small tail of recently appended entries in memory and the offset of every
+ * 32nd record; other records are found by stepping over length prefixes from the nearest
+ * one, so heap use grows by well under a byte per entry. Reads decode records on demand and
+ * iteration walks the segments lazily.
+ *
+ * {@link #query} answers filtered searches from a {@link LogIndex}, built from the segments
+ * on the first query and kept up to date on every append after that.
+ *
+ * Records hold the entry's action code, ids and millisecond timestamp, then the items of a
+ * bulk entry (a count and four strings each) when it has any. An entry too large for a
+ * segment gets a segment of its own, sized to fit. Ids read back are
+ * interned per store, so a long scan shares one String per staff member, resident and bed.
+ *
+ * A store created without a directory writes to a temporary directory that is removed
+ * on exit.
+ */
+public class LogStore extends AbstractList<LogEntry> implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final int TAIL_SIZE = 256;
+    private static final String PREFIX = "evt-";
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int OFFSET_STRIDE = 32;  // every 32nd entry's offset is kept
+
+    private final int segmentSize;
+    private final boolean temporary;
+    private File dir;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ArrayDeque<LogEntry> tail = new ArrayDeque<>();
+    private MappedByteBuffer active;
+    private int size;
+    private int[] offsets = new int[64];   // position within its segment of every OFFSET_STRIDE-th entry
+    private LogIndex index;                // null until the first query
+    private long lastJournalSeq;
+    private int nextSegmentNumber = 1;
+    private boolean closed;
+    private Segment cachedSegment;     // last sealed segment mapped for reading
+    private ByteBuffer cachedMap;
+    private final Map<String, String> ids = new ConcurrentHashMap<>();
+
+    /** Store in a temporary directory, created on first append. */
+    public LogStore() {
+        this.segmentSize = DEFAULT_SEGMENT_SIZE;
+        this.temporary = true;
+    }
+
+    public LogStore(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** Open (or create) the store in dir, picking up any segments already there. */
+    public LogStore(File dir, int segmentSize) throws IOException {
+        this.segmentSize = segmentSize;
+        this.temporary = false;
+        this.dir = dir.getAbsoluteFile();
+        if (!this.dir.isDirectory() && !this.dir.mkdirs()) {
+            throw new IOException("Cannot create log directory " + this.dir);
+        }
+        String[] names = this.dir.list((d, name) -> name.startsWith(PREFIX) && name.endsWith(".seg"));
+        Arrays.sort(names);
+        for (String name : names) {
+            Segment seg = new Segment(new File(this.dir, name), size);
+            ByteBuffer map = seg.map(FileChannel.MapMode.READ_ONLY);
+            while (map.remaining() >= 4) {
+                int length = map.getInt(map.position());
+                if (length <= 0 || length > map.remaining() - 4) break;
+                lastJournalSeq = Math.max(lastJournalSeq, map.getLong(map.position() + 4));
+                recordOffset(size + seg.count, map.position());
+                map.position(map.position() + 4 + length);
+                seg.count++;
+            }
+            seg.end = map.position();
+            segments.add(seg);
+            size += seg.count;
+            nextSegmentNumber = Integer.parseInt(name.substring(4, name.length() - 4)) + 1;
+        }
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            active = last.map(FileChannel.MapMode.READ_WRITE);
+            active.position(last.end);
+            for (int i = Math.max(0, size - TAIL_SIZE); i < size; i++) {
+                tail.addLast(readAt(i));
+            }
+        }
+    }
+
+    /** Directory holding the segments, or null for a temporary store not yet written to. */
+    public File getDirectory() {
+        return dir;
+    }
+
+    public boolean isTemporary() {
+        return temporary;
+    }
+
+    /** Journal sequence number of the newest entry, so replay can skip entries already here. */
+    public synchronized long lastJournalSeq() {
+        return lastJournalSeq;
+    }
+
+    @Override
+    public boolean add(LogEntry entry) {
+        append(entry, 0);
+        return true;
+    }
+
+    public synchronized void append(LogEntry entry, long journalSeq) {
+        if (closed) {
+            throw new IllegalStateException("Log store closed");
+        }
+        int length = 8 + 8 + 1 + encodedLength(entry.getStaffId()) + encodedLength(entry.getResidentId())
+                + encodedLength(entry.getBedId()) + encodedLength(entry.getTarget()) + encodedLength(entry.getDetail());
+        List<LogEntry.Item> items = entry.getItems();
+        if (!items.isEmpty()) {
+            length += 4;
+            for (LogEntry.Item item : items) {
+                length += encodedLength(item.residentId()) + encodedLength(item.bedId())
+                        + encodedLength(item.target()) + encodedLength(item.detail());
+            }
+        }
+        try {
+            if (active == null || active.remaining() < length + 8) {
+                roll(length + 8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start log segment", e);
+        }
+        int start = active.position();
+        recordOffset(size, start);
+        active.position(start + 4);
+        active.putLong(journalSeq);
+        active.putLong(entry.getEpochMillis());
+        active.put((byte) entry.getCode().ordinal());
+        putString(active, entry.getStaffId());
+        putString(active, entry.getResidentId());
+        putString(active, entry.getBedId());
+        putString(active, entry.getTarget());
+        putString(active, entry.getDetail());
+        if (!items.isEmpty()) {
+            active.putInt(items.size());
+            for (LogEntry.Item item : items) {
+                putString(active, item.residentId());
+                putString(active, item.bedId());
+                putString(active, item.target());
+                putString(active, item.detail());
+            }
+        }
+        if (active.remaining() >= 4) {
+            active.putInt(active.position(), 0);  // stale bytes from a torn append must not read as a length
+        }
+        active.putInt(start, length);
+
+        Segment current = segments.get(segments.size() - 1);
+        current.count++;
+        current.end = active.position();
+        size++;
+        lastJournalSeq = Math.max(lastJournalSeq, journalSeq);
+        if (tail.size() == TAIL_SIZE) {
+            tail.removeFirst();
+        }
+        tail.addLast(entry);
+        if (index != null) {
+            index.add(entry);
+        }
+        modCount++;
+    }
+
+    /** Append a batch in one go, under one acquisition of the store's lock. */
+    public synchronized void appendAll(LogEntry[] entries, long[] journalSeqs, int count) {
+        for (int i = 0; i < count; i++) {
+            append(entries[i], journalSeqs[i]);
+        }
+    }
+
+    /**
+     * Journal sequence numbers of the newest window entries. Entries can be stored slightly
+     * out of journal order, so replay uses these to find gaps below {@link #lastJournalSeq}.
+     */
+    public synchronized RecentSeqs recentJournalSeqs(int window) {
+        Set<Long> seqs = new HashSet<>();
+        long first = size <= window ? 0 : Long.MAX_VALUE;
+        int i = Math.max(0, size - window);
+        while (i < size) {
+            Segment seg = segments.get(segmentFor(i));
+            ByteBuffer buf = readView(seg);
+            int offset = offsetOf(seg, buf, i);
+            for (long end = seg.first + seg.count; i < end; i++) {
+                long seq = buf.getLong(offset + 4);
+                if (seq != 0) {
+                    seqs.add(seq);
+                    first = Math.min(first, seq);
+                }
+                offset += 4 + buf.getInt(offset);
+            }
+        }
+        return new RecentSeqs(first, seqs);
+    }
+
+    /** Journal sequence numbers present in the store from first upwards; any below first are assumed present. */
+    public static final class RecentSeqs {
+        static final RecentSeqs NONE = new RecentSeqs(Long.MAX_VALUE, Set.of());
+
+        final long first;
+        final Set<Long> seqs;
+
+        RecentSeqs(long first, Set<Long> seqs) {
+            this.first = first;
+            this.seqs = seqs;
+        }
+    }
+
+    private void recordOffset(int entry, int offset) {
+        if (entry % OFFSET_STRIDE != 0) return;
+        int slot = entry / OFFSET_STRIDE;
+        if (slot == offsets.length) {
+            offsets = Arrays.copyOf(offsets, slot * 2);
+        }
+        offsets[slot] = offset;
+    }
+
+    /** Position of entry index in seg (read through buf), stepping from the nearest kept offset. */
+    private int offsetOf(Segment seg, ByteBuffer buf, int index) {
+        int entry = index - index % OFFSET_STRIDE;
+        int offset;
+        if (entry >= seg.first) {
+            offset = offsets[entry / OFFSET_STRIDE];
+        } else {
+            entry = (int) seg.first;
+            offset = 0;
+        }
+        for (; entry < index; entry++) {
+            offset += 4 + buf.getInt(offset);
+        }
+        return offset;
+    }
+
+    @Override
+    public synchronized LogEntry get(int index) {
+        Objects.checkIndex(index, size);
+        int fromTail = size - tail.size();
+        if (index >= fromTail) {
+            Iterator<LogEntry> it = tail.descendingIterator();
+            for (int i = size - 1; i > index; i--) it.next();
+            return it.next();
+        }
+        return readAt(index);
+    }
+
+    private LogEntry readAt(int index) {
+        Segment seg = segments.get(segmentFor(index));
+        ByteBuffer buf = readView(seg);
+        buf.position(offsetOf(seg, buf, index));
+        return decode(buf);
+    }
+
+    /**
+     * Entries matching q, in log order (or newest first), restricted to its page. Evaluated
+     * lazily: entries are decoded only as the stream is consumed, and entries appended after
+     * this call are not included.
+     */
+    public Stream<LogEntry> query(LogQuery q) {
+        IntStream positions;
+        synchronized (this) {
+            if (index == null) {
+                LogIndex built = new LogIndex();
+                for (LogEntry e : this) {
+                    built.add(e);
+                }
+                index = built;
+            }
+            positions = index.positions(q);
+        }
+        return positions.skip(q.offset).limit(q.limit).mapToObj(this::get);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Walks the segments in order, decoding one record at a time. */
+    @Override
+    public synchronized Iterator<LogEntry> iterator() {
+        List<Segment> view = new ArrayList<>(segments);
+        int limit = size;
+        return new Iterator<>() {
+            private int next;
+            private int segIndex = -1;
+            private ByteBuffer buf;
+            private long segEnd;
+
+            @Override
+            public boolean hasNext() {
+                return next < limit;
+            }
+
+            @Override
+            public LogEntry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                while (buf == null || next >= segEnd) {
+                    Segment seg = view.get(++segIndex);
+                    synchronized (LogStore.this) {
+                        buf = readView(seg);
+                    }
+                    segEnd = seg.first + seg.count;
+                }
+                next++;
+                return decode(buf);
+            }
+        };
+    }
+
+    /** Drop every entry. Segments are blanked before deletion in case a mapping keeps the file alive. */
+    @Override
+    public synchronized void clear() {
+        for (Segment seg : segments) {
+            try {
+                seg.map(FileChannel.MapMode.READ_WRITE).putInt(0, 0);
+            } catch (IOException ignored) {
+                // the file is deleted below anyway
+            }
+            seg.file.delete();
+        }
+        segments.clear();
+        tail.clear();
+        active = null;
+        cachedSegment = null;
+        cachedMap = null;
+        size = 0;
+        index = null;
+        lastJournalSeq = 0;
+        modCount++;
+    }
+
+    /** Force written entries to disk. */
+    public synchronized void flush() {
+        if (active != null) {
+            active.force();
+        }
+    }
+
+    /** Force and unmap the segments. The store can still be read, but appends now throw. */
+    @Override
+    public synchronized void close() {
+        flush();
+        closed = true;
+        active = null;
+        cachedSegment = null;
+        cachedMap = null;
+    }
+
+    /** Close the store and remove its files; used when a temporary store is replaced. */
+    public synchronized void delete() {
+        clear();
+        close();
+        if (dir != null && temporary) {
+            dir.delete();
+        }
+    }
+
+    // ---------- Helpers ----------
+
+    /** Start a new segment with room for at least minimum bytes. */
+    private void roll(int minimum) throws IOException {
+        if (active != null) {
+            active.force();
+        }
+        if (dir == null) {
+            dir = Files.createTempDirectory("carehome-log").toFile();
+            dir.deleteOnExit();
+        }
+        File file = new File(dir, String.format(PREFIX + "%08d.seg", nextSegmentNumber++));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(Math.max(segmentSize, minimum));
+        }
+        if (temporary) {
+            file.deleteOnExit();
+        }
+        Segment seg = new Segment(file, size);
+        segments.add(seg);
+        active = seg.map(FileChannel.MapMode.READ_WRITE);
+    }
+
+    private int segmentFor(int index) {
+        int lo = 0;
+        int hi = segments.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segments.get(mid).first <= index) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** A fresh read position at the start of seg; sealed segments share one cached mapping. */
+    private ByteBuffer readView(Segment seg) {
+        if (active != null && seg == segments.get(segments.size() - 1)) {
+            return active.duplicate().position(0);
+        }
+        if (seg != cachedSegment) {
+            try {
+                cachedMap = seg.map(FileChannel.MapMode.READ_ONLY);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read log segment " + seg.file, e);
+            }
+            cachedSegment = seg;
+        }
+        return cachedMap.duplicate().position(0);
+    }
+
+    private LogEntry decode(ByteBuffer buf) {
+        int end = buf.position() + 4 + buf.getInt();
+        buf.getLong();  // journal seq
+        long timestamp = buf.getLong();
+        ActionCode code = ActionCode.values()[buf.get()];
+        String staffId = id(string(buf));
+        String residentId = id(string(buf));
+        String bedId = id(string(buf));
+        String target = id(string(buf));
+        String detail = string(buf);
+        if (buf.position() == end) {
+            return new LogEntry(code, staffId, residentId, bedId, target, detail, timestamp);
+        }
+        int count = buf.getInt();
+        List<LogEntry.Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new LogEntry.Item(id(string(buf)), id(string(buf)), id(string(buf)), string(buf)));
+        }
+        return new LogEntry(code, staffId, residentId, bedId, target, detail, timestamp, items);
+    }
+
+    private String id(String s) {
+        if (s == null) return null;
+        String known = ids.putIfAbsent(s, s);
+        return known == null ? s : known;
+    }
+
+    private static String string(ByteBuffer buf) {
+        int length = buf.getShort() & 0xFFFF;
+        if (length == NULL_STRING) return null;
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Bytes putString will write for s: a 2-byte length then UTF-8. */
+    private static int encodedLength(String s) {
+        if (s == null) return 2;
+        int length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                length = s.getBytes(StandardCharsets.UTF_8).length;
+                break;
+            }
+        }
+        if (length >= NULL_STRING) {
+            throw new IllegalArgumentException("Log text too long");
+        }
+        return 2 + length;
+    }
+
+    /** Ids and most text are ASCII, which is copied char by char without an intermediate array. */
+    private static void putString(ByteBuffer buf, String s) {
+        if (s == null) {
+            buf.putShort((short) NULL_STRING);
+            return;
+        }
+        int lengthAt = buf.position();
+        buf.putShort((short) 0);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                buf.position(lengthAt + 2);
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                buf.put(bytes);
+                buf.putShort(lengthAt, (short) bytes.length);
+                return;
+            }
+            buf.put((byte) c);
+        }
+        buf.putShort(lengthAt, (short) s.length());
+    }
+
+    private static final class Segment {
+        final File file;
+        final long first;   // index of the first entry in this segment
+        int count;
+        int end;            // write position
+
+        Segment(File file, long first) {
+            this.file = file;
+            this.first = first;
+        }
+
+        MappedByteBuffer map(FileChannel.MapMode mode) throws IOException {
+            StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                    ? new StandardOpenOption[]{StandardOpenOption.READ}
+                    : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+            try (FileChannel channel = FileChannel.open(file.toPath(), options)) {
+                return channel.map(mode, 0, channel.size());
+            }
+        }
+    }
+}
@@ -1,28 +1,39 @@
 package app;
 
 import java.io.File;
+import java.io.IOException;
 import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 import java.util.UUID;
 
 public class Main {
     private static final File DATA_FILE = new File("C:\\Users\\bhala\\Desktop\\NamaN Assignment 2 Phase 1\\data\\carehome.dat");
+    private static final File JOURNAL_FILE = new File(DATA_FILE.getParentFile(), "carehome.journal");
+    private static final File LOG_DIR = new File(DATA_FILE.getParentFile(), "logs");
 
     public static void main(String[] args) {
-        // Create data directory if it doesn't exist
-        DATA_FILE.getParentFile().mkdirs();
-
-        CareHome ch = CareHome.getInstance();
-        if (ch.getWards().isEmpty()) {
+        if (args.length > 0 && args[0].equals("--batch")) {
             try {
-                SampleData.bootstrapBeds(ch);
-                SampleData.bootstrapPeople(ch);
-                SampleData.bootstrapSchedule(ch);
-            } catch (Exception e) {
-                System.out.println("ERROR during bootstrap: " + e.getMessage());
+                BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                System.out.println("ERROR reading script: " + e.getMessage());
             }
+            return;
         }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            try {
+                ApiServer.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                System.out.println("ERROR starting server: " + e.getMessage());
+            }
+            return;
+        }
+        CareHome ch = openHome();
 
         Scanner sc = new Scanner(System.in);
         while (true) {
@@ -39,6 +50,10 @@ public class Main {
             System.out.println("10. Set doctor availability");
             System.out.println("11. View action logs");
             System.out.println("12. List all people");
+            System.out.println("13. Search action logs");
+            System.out.println("14. Medication round");
+            System.out.println("15. Occupancy dashboard");
+            System.out.println("16. Generate weekly roster");
             System.out.println("0. Exit");
             System.out.print("Choice: ");
             String choice = sc.nextLine().trim();
@@ -51,17 +66,21 @@ public class Main {
                     case "4" -> moveResident(ch, sc);
                     case "5" -> checkCompliance(ch);
                     case "6" -> saveData(ch);
-                    case "7" -> ch = loadData();
+                    case "7" -> ch = loadData(ch);
                     case "8" -> viewSchedule(ch);
                     case "9" -> assignNurseShift(ch, sc);
                     case "10" -> setDoctorAvailability(ch, sc);
                     case "11" -> viewLogs(ch);
                     case "12" -> listAllPeople(ch);
+                    case "13" -> searchLogs(ch, sc);
+                    case "14" -> medicationRound(ch, sc);
+                    case "15" -> occupancyDashboard(ch);
+                    case "16" -> generateRoster(ch, sc);
                     case "0" -> {
                         System.out.println("Goodbye!");
                         return;
                     }
-                    default -> System.out.println("Invalid choice. Please enter 0-12.");
+                    default -> System.out.println("Invalid choice. Please enter 0-16.");
                 }
             } catch (Exception ex) {
                 System.out.println("ERROR: " + ex.getMessage());
@@ -69,6 +88,40 @@ public class Main {
         }
     }
 
+
+    /** The home from the last snapshot and journal, or the sample home on first run. */
+    static CareHome openHome() {
+        // Create data directory if it doesn't exist
+        DATA_FILE.getParentFile().mkdirs();
+        CareHome ch = CareHome.getInstance();
+        if (!ch.isJournaling() && DATA_FILE.exists()) {
+            try {
+                ch = CareHome.loadData(DATA_FILE);
+            } catch (Exception e) {
+                System.out.println("ERROR loading snapshot: " + e.getMessage());
+            }
+        }
+        if (ch.getWards().isEmpty()) {
+            try {
+                SampleData.bootstrapBeds(ch);
+                SampleData.bootstrapPeople(ch);
+                SampleData.bootstrapSchedule(ch);
+            } catch (Exception e) {
+                System.out.println("ERROR during bootstrap: " + e.getMessage());
+            }
+        }
+        if (!ch.isJournaling()) {
+            // Replays anything journalled since the snapshot, then journals from here on
+            try {
+                ch.openLogStore(LOG_DIR);
+                ch.openJournal(JOURNAL_FILE, DATA_FILE);
+            } catch (Exception e) {
+                System.out.println("ERROR during journal recovery: " + e.getMessage());
+            }
+        }
+        return ch;
+    }
+
     // ---------- Helper Methods (ALL STATIC) ----------
 
     private static void listBeds(CareHome ch) {
@@ -100,10 +153,16 @@ public class Main {
         String staffId = sc.nextLine().trim();
         System.out.print("Resident ID: ");
         String residentId = sc.nextLine().trim();
-        System.out.print("Bed ID: ");
+        System.out.print("Bed ID (blank to choose one): ");
         String bedId = sc.nextLine().trim();
         Resident r = ch.getResidents().stream().filter(x -> x.getResidentId().equals(residentId)).findFirst().orElse(null);
         if (r == null) throw new Exception("Resident not found");
+        if (bedId.isEmpty()) {
+            String wardId = prompt(sc, "Preferred ward (blank for any): ");
+            Bed bed = ch.allocateBed(staffId, new BedAllocator.Request(r).ward(wardId.isEmpty() ? null : wardId));
+            System.out.println("Assigned to " + bed.getBedId() + ".");
+            return;
+        }
         ch.assignResidentToBed(staffId, r, bedId);
         System.out.println("Assigned.");
     }
@@ -123,21 +182,30 @@ public class Main {
         try {
             ch.checkCompliance();
             System.out.println("✓ Compliance check passed. All regulations are satisfied.");
-        } catch (Exception e) {
-            System.out.println("✗ COMPLIANCE VIOLATION: " + e.getMessage());
+        } catch (ComplianceException e) {
+            System.out.println("✗ COMPLIANCE VIOLATION: " + e.getReport());
+        }
+    }
+
+    /** Snapshot to the data file (by compacting the journal when it is on). */
+    static void save(CareHome ch) throws IOException {
+        if (ch.isJournaling()) {
+            ch.compact().join();
+        } else {
+            ch.saveData(DATA_FILE);
         }
     }
 
     private static void saveData(CareHome ch) {
         try {
-            ch.saveData(DATA_FILE);
+            save(ch);
             System.out.println("✓ Data successfully saved to: " + DATA_FILE.getAbsolutePath());
         } catch (Exception e) {
             System.out.println("ERROR: Failed to save data: " + e.getMessage());
         }
     }
 
-    private static CareHome loadData() {
+    private static CareHome loadData(CareHome ch) {
         try {
             if (!DATA_FILE.exists()) {
                 System.out.println("No saved data found. Starting with fresh instance.");
@@ -145,6 +213,9 @@ public class Main {
             }
 
             CareHome loaded = CareHome.loadData(DATA_FILE);
+            ch.close();
+            loaded.openLogStore(LOG_DIR);
+            loaded.openJournal(JOURNAL_FILE, DATA_FILE);
             System.out.println("✓ Data successfully loaded from: " + DATA_FILE.getAbsolutePath());
             return loaded;
         } catch (Exception e) {
@@ -167,6 +238,15 @@ public class Main {
             });
         }
 
+        // Display times with no nurse on duty
+        System.out.println("\nNurse Coverage Gaps:");
+        List<CoverageAnalyzer.Window> gaps = schedule.getCoverage().gaps(Role.NURSE);
+        if (gaps.isEmpty()) {
+            System.out.println("  None - a nurse is on duty all week.");
+        } else {
+            gaps.forEach(gap -> System.out.println("  " + gap));
+        }
+
         // Display doctor availability
         System.out.println("\nDoctor Availability:");
         for (DayOfWeek day : DayOfWeek.values()) {
@@ -179,17 +259,16 @@ public class Main {
 
         // List available nurses
         System.out.println("Available Nurses:");
-        ch.getStaff().stream()
-                .filter(s -> s instanceof Nurse)
+        ch.getStaffByRole(Role.NURSE)
                 .forEach(nurse -> System.out.println(nurse.getStaffId() + ": " + nurse.getName()));
 
         System.out.print("Enter Nurse ID: ");
         String nurseId = sc.nextLine().trim();
 
-        Nurse nurse = (Nurse) ch.getStaff().stream()
-                .filter(s -> s.getStaffId().equals(nurseId) && s instanceof Nurse)
-                .findFirst()
-                .orElseThrow(() -> new Exception("Nurse not found: " + nurseId));
+        Staff found = ch.findStaff(nurseId);
+        if (!(found instanceof Nurse nurse)) {
+            throw new Exception("Nurse not found: " + nurseId);
+        }
 
         // Get day of week
         System.out.println("Days: MONDAY, TUESDAY, WEDNESDAY, THURSDAY, FRIDAY, SATURDAY, SUNDAY");
@@ -219,8 +298,7 @@ public class Main {
 
         // List available doctors
         System.out.println("Available Doctors:");
-        ch.getStaff().stream()
-                .filter(s -> s instanceof Doctor)
+        ch.getStaffByRole(Role.DOCTOR)
                 .forEach(doctor -> System.out.println(doctor.getStaffId() + ": " + doctor.getName()));
 
         System.out.println("Days: MONDAY, TUESDAY, WEDNESDAY, THURSDAY, FRIDAY, SATURDAY, SUNDAY");
@@ -246,6 +324,90 @@ public class Main {
         }
 
         ch.getLogs().forEach(log -> System.out.println(log));
+        long dropped = ch.getDroppedLogEntries();
+        if (dropped > 0) {
+            System.out.println("⚠ " + dropped + " log entries were dropped while the log writer was full.");
+        }
+    }
+
+    private static void searchLogs(CareHome ch, Scanner sc) {
+        System.out.println("\n=== Search Action Logs ===");
+        System.out.println("Leave a filter blank to match anything.");
+        LogQuery query = new LogQuery().newestFirst();
+        String staffId = prompt(sc, "Staff ID: ");
+        if (!staffId.isEmpty()) query.staff(staffId);
+        String residentId = prompt(sc, "Resident ID: ");
+        if (!residentId.isEmpty()) query.resident(residentId);
+        String bedId = prompt(sc, "Bed ID: ");
+        if (!bedId.isEmpty()) query.bed(bedId);
+        String action = prompt(sc, "Action " + Arrays.toString(ActionCode.values()) + ": ").toUpperCase();
+        if (!action.isEmpty()) query.actions(ActionCode.valueOf(action));
+        String from = prompt(sc, "From (yyyy-MM-ddTHH:mm): ");
+        String to = prompt(sc, "To (yyyy-MM-ddTHH:mm): ");
+        query.between(from.isEmpty() ? null : LocalDateTime.parse(from), to.isEmpty() ? null : LocalDateTime.parse(to));
+
+        int pageSize = 20;
+        for (int page = 0; ; page++) {
+            List<LogEntry> results = ch.queryLogs(query.page(page, pageSize)).toList();
+            if (results.isEmpty()) {
+                System.out.println(page == 0 ? "No matching log entries." : "No more entries.");
+                return;
+            }
+            results.forEach(System.out::println);
+            if (results.size() < pageSize || !prompt(sc, "More? (Y/N): ").toUpperCase().startsWith("Y")) {
+                return;
+            }
+        }
+    }
+
+    private static void medicationRound(CareHome ch, Scanner sc) {
+        System.out.println("\n=== Medication Round ===");
+        String wardId = prompt(sc, "Ward ID: ");
+        String from = prompt(sc, "From (HH:mm, blank for now): ");
+        String minutes = prompt(sc, "Next how many minutes (blank for 60): ");
+        LocalTime start = from.isEmpty() ? LocalTime.now().withSecond(0).withNano(0) : LocalTime.parse(from);
+        Duration window = Duration.ofMinutes(minutes.isEmpty() ? 60 : Integer.parseInt(minutes));
+
+        List<MedicationRounds.DueDose> due = ch.getMedicationRounds().dueWithin(wardId, start, window);
+        if (due.isEmpty()) {
+            System.out.println("Nothing due on " + wardId + " from " + start + " for " + window.toMinutes() + " minutes.");
+            ch.getMedicationRounds().nextDue(wardId, start)
+                    .ifPresent(next -> System.out.println("Next due: " + next));
+            return;
+        }
+        due.forEach(System.out::println);
+    }
+
+    private static void occupancyDashboard(CareHome ch) {
+        System.out.println("\n=== Occupancy ===");
+        System.out.println("Home: " + ch.getOccupancy());
+        for (Ward w : ch.getWards()) {
+            System.out.println("  " + w.getWardId() + " (" + w.getWardName() + "): " + w.getOccupancy());
+        }
+    }
+
+    private static void generateRoster(CareHome ch, Scanner sc) throws Exception {
+        System.out.println("\n=== Generate Weekly Roster ===");
+        String managerId = prompt(sc, "Manager ID: ");
+        String perShift = prompt(sc, "Nurses per shift (blank for 2): ");
+        int nurses = perShift.isEmpty() ? 2 : Integer.parseInt(perShift);
+
+        RosterGenerator.Roster roster = new RosterGenerator(ch.getStaff(), ch.getSchedule())
+                .slot(Role.NURSE, LocalTime.of(8, 0), LocalTime.of(16, 0), nurses)
+                .slot(Role.NURSE, LocalTime.of(16, 0), LocalTime.of(23, 59), nurses)
+                .slot(Role.DOCTOR, LocalTime.of(9, 0), LocalTime.of(10, 0), 1)
+                .generate();
+        roster.getShifts().forEach((staffId, shifts) -> System.out.println(staffId + ": " + shifts));
+        roster.getShortfalls().forEach(s -> System.out.println("SHORT: " + s));
+        if (prompt(sc, "Roster " + roster.getShiftCount() + " shifts? (y/n): ").equalsIgnoreCase("y")) {
+            ch.assignShifts(managerId, roster.getShifts());
+            System.out.println("Rostered.");
+        }
+    }
+
+    private static String prompt(Scanner sc, String label) {
+        System.out.print(label);
+        return sc.nextLine().trim();
     }
 
     private static void listAllPeople(CareHome ch) {
@@ -262,20 +424,17 @@ public class Main {
 
         // Managers
         System.out.println("\nManagers:");
-        ch.getStaff().stream()
-                .filter(s -> s instanceof Manager)
+        ch.getStaffByRole(Role.MANAGER)
                 .forEach(m -> System.out.println("  " + m.getStaffId() + " - " + m.getName()));
 
         // Nurses
         System.out.println("\nNurses:");
-        ch.getStaff().stream()
-                .filter(s -> s instanceof Nurse)
+        ch.getStaffByRole(Role.NURSE)
                 .forEach(n -> System.out.println("  " + n.getStaffId() + " - " + n.getName()));
 
         // Doctors
         System.out.println("\nDoctors:");
-        ch.getStaff().stream()
-                .filter(s -> s instanceof Doctor)
+        ch.getStaffByRole(Role.DOCTOR)
                 .forEach(d -> System.out.println("  " + d.getStaffId() + " - " + d.getName()));
     }
 }
@@ -0,0 +1,205 @@
+package app;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Every prescribed dose in the home, ordered by time of day, per ward and across the home.
+ * CareHome keeps it in step as prescriptions are attached or updated and residents are
+ * assigned or moved, so "what is due on W1 in the next 30 minutes" is a range lookup
+ * instead of a scan of every prescription.
+ *
+ * Doses repeat daily, so lookups wrap past midnight. Reads are lock-free and see each
+ * resident's doses either before or after a change; changes are synchronized.
+ */
+public class MedicationRounds {
+
+    /** One medicine due for one resident at one time of day. */
+    public static final class DueDose {
+        private static final AtomicLong NEXT_ID = new AtomicLong();
+
+        private final int secondOfDay;
+        private final String residentId;
+        private final long id;  // tie-break, so equal doses can coexist in a set
+        private final String wardId;
+        private final String bedId;
+        private final String medicine;
+        private final String dose;
+
+        DueDose(LocalTime time, String residentId, String wardId, String bedId, String medicine, String dose) {
+            this(time.toSecondOfDay(), residentId, NEXT_ID.getAndIncrement(), wardId, bedId, medicine, dose);
+        }
+
+        private DueDose(int secondOfDay, String residentId, long id, String wardId, String bedId,
+                        String medicine, String dose) {
+            this.secondOfDay = secondOfDay;
+            this.residentId = residentId;
+            this.id = id;
+            this.wardId = wardId;
+            this.bedId = bedId;
+            this.medicine = medicine;
+            this.dose = dose;
+        }
+
+        /** Sorts before every real dose at the given time. */
+        static DueDose probe(int secondOfDay) {
+            return new DueDose(secondOfDay, "", Long.MIN_VALUE, null, null, null, null);
+        }
+
+        DueDose movedTo(String wardId, String bedId) {
+            return new DueDose(secondOfDay, residentId, id, wardId, bedId, medicine, dose);
+        }
+
+        public LocalTime getTime() { return LocalTime.ofSecondOfDay(secondOfDay); }
+        public String getResidentId() { return residentId; }
+        public String getWardId() { return wardId; }
+        public String getBedId() { return bedId; }
+        public String getMedicine() { return medicine; }
+        public String getDose() { return dose; }
+
+        @Override
+        public String toString() {
+            return getTime() + " " + medicine + " " + dose + " for " + residentId + " (" + bedId + ", " + wardId + ")";
+        }
+    }
+
+    private static final Comparator<DueDose> ORDER = Comparator.<DueDose>comparingInt(d -> d.secondOfDay)
+            .thenComparing(d -> d.residentId)
+            .thenComparingLong(d -> d.id);
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final NavigableSet<DueDose> all = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<String, NavigableSet<DueDose>> byWard = new ConcurrentHashMap<>();
+    private final Map<String, List<DueDose>> byResident = new HashMap<>(); // guarded by this
+    private final Map<String, Bed> beds = new HashMap<>();                 // residentId -> bed; guarded by this
+    private final BedRegistry registry;
+
+    MedicationRounds(BedRegistry registry) {
+        this.registry = registry;
+    }
+
+    // ---------- Updates (from CareHome) ----------
+
+    /** The resident is now in bed; their doses follow them. */
+    synchronized void placed(String residentId, Bed bed) {
+        beds.put(residentId, bed);
+        List<DueDose> doses = byResident.get(residentId);
+        if (doses == null) return;
+        String wardId = wardId(bed);
+        List<DueDose> moved = new ArrayList<>(doses.size());
+        for (DueDose d : doses) {
+            DueDose m = d.movedTo(wardId, bed.getBedId());
+            remove(d);
+            add(m);
+            moved.add(m);
+        }
+        byResident.put(residentId, moved);
+    }
+
+    /** Replace the resident's doses with the prescription's current items. */
+    synchronized void prescribed(Prescription p) {
+        String residentId = p.getResidentId();
+        List<DueDose> old = byResident.remove(residentId);
+        if (old != null) {
+            old.forEach(this::remove);
+        }
+        Bed bed = beds.get(residentId);
+        String wardId = bed == null ? null : wardId(bed);
+        String bedId = bed == null ? null : bed.getBedId();
+        List<DueDose> doses = new ArrayList<>();
+        for (PrescriptionLine line : p.getLines()) {
+            DueDose d = new DueDose(line.getTime(), residentId, wardId, bedId,
+                    line.getMedicine().getName(), line.getDose());
+            add(d);
+            doses.add(d);
+        }
+        byResident.put(residentId, doses);
+    }
+
+    private void add(DueDose d) {
+        all.add(d);
+        if (d.wardId != null) {
+            byWard.computeIfAbsent(d.wardId, k -> new ConcurrentSkipListSet<>(ORDER)).add(d);
+        }
+    }
+
+    private void remove(DueDose d) {
+        all.remove(d);
+        if (d.wardId != null) {
+            byWard.get(d.wardId).remove(d);
+        }
+    }
+
+    private String wardId(Bed bed) {
+        Ward ward = registry.wardOf(bed);
+        return ward == null ? null : ward.getWardId();
+    }
+
+    // ---------- Queries ----------
+
+    /** The first dose on the ward at or after from, wrapping past midnight; empty if none is prescribed. */
+    public Optional<DueDose> nextDue(String wardId, LocalTime from) {
+        NavigableSet<DueDose> doses = byWard.get(wardId);
+        if (doses == null) return Optional.empty();
+        DueDose next = doses.ceiling(DueDose.probe(from.toSecondOfDay()));
+        if (next == null) {
+            next = doses.ceiling(DueDose.probe(0));
+        }
+        return Optional.ofNullable(next);
+    }
+
+    /** Doses on the ward from from (inclusive) until window later (exclusive), in time order. */
+    public List<DueDose> dueWithin(String wardId, LocalTime from, Duration window) {
+        return within(byWard.get(wardId), from.toSecondOfDay(), window).toList();
+    }
+
+    /**
+     * Doses due anywhere in the home while the staff member is on shift on day, from from
+     * until window later; for a nurse's round there is nothing to tie them to one ward.
+     */
+    public List<DueDose> dueForStaff(Schedule schedule, Staff staff, DayOfWeek day, LocalTime from, Duration window) {
+        int start = from.toSecondOfDay();
+        return within(all, start, window)
+                .filter(d -> schedule.isOnDuty(staff, d.secondOfDay >= start ? day : day.plus(1), d.getTime()))
+                .toList();
+    }
+
+    /**
+     * The ward's round as a feed: every dose from from onwards, wrapping once through
+     * midnight back to just before from. Lazy, so a round can stop after the first few.
+     */
+    public Stream<DueDose> upcoming(String wardId, LocalTime from) {
+        NavigableSet<DueDose> doses = byWard.get(wardId);
+        if (doses == null) return Stream.empty();
+        DueDose probe = DueDose.probe(from.toSecondOfDay());
+        return Stream.concat(doses.tailSet(probe, true).stream(), doses.headSet(probe, false).stream());
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    private static Stream<DueDose> within(NavigableSet<DueDose> doses, int from, Duration window) {
+        if (doses == null || window.isZero() || window.isNegative()) return Stream.empty();
+        long seconds = Math.min(window.getSeconds(), SECONDS_PER_DAY);
+        int to = (int) ((from + seconds) % SECONDS_PER_DAY);
+        if (from + seconds < SECONDS_PER_DAY) {
+            return doses.subSet(DueDose.probe(from), true, DueDose.probe(to), false).stream();
+        }
+        // wraps past midnight (a full day starting at from included)
+        return Stream.concat(doses.tailSet(DueDose.probe(from), true).stream(),
+                doses.headSet(DueDose.probe(to), false).stream());
+    }
+}
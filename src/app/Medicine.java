@@ -1,13 +1,34 @@
 package app;
 
 import java.io.Serializable;
+import java.util.Locale;
 
+/**
+ * A drug by name. Two Medicines are the same drug when their names match ignoring case
+ * and surrounding or repeated whitespace, so "Paracetamol" and " paracetamol" share one
+ * prescription line.
+ */
 public class Medicine implements Serializable {
     private final String name;
+    private final String key;   // canonical identity
+
+    public Medicine(String name) {
+        this.name = name;
+        this.key = name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
 
-    public Medicine(String name) { this.name = name; }
     public String getName() { return name; }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Medicine m && key.equals(m.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
     @Override
     public String toString() { return name; }
 }
@@ -0,0 +1,66 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Bed and resident counts for a room, a ward or a whole home, by resident gender.
+ * Beds update their room's counts as residents come and go, and rooms and wards pass
+ * each change up to the ward and the home, so reading them never walks the beds.
+ *
+ * Each count is exact on its own; read together while residents are moving they may
+ * be a moment apart (a resident counted in neither ward, say).
+ */
+public class Occupancy {
+    private final AtomicInteger beds = new AtomicInteger();
+    private final AtomicInteger occupied = new AtomicInteger();
+    private final AtomicIntegerArray byGender = new AtomicIntegerArray(Gender.values().length);
+
+    public int getBeds() { return beds.get(); }
+    public int getOccupied() { return occupied.get(); }
+    public int getOccupied(Gender gender) { return byGender.get(gender.ordinal()); }
+    public int getVacant() { return beds.get() - occupied.get(); }
+
+    /** A resident of the given gender (null if not recorded) moved in (delta 1) or out (-1). */
+    void occupy(Gender gender, int delta) {
+        occupied.addAndGet(delta);
+        if (gender != null) {
+            byGender.addAndGet(gender.ordinal(), delta);
+        }
+    }
+
+    /** A bed joined (sign 1) or left (-1), with whoever is in it. */
+    void bed(Bed bed, int sign) {
+        beds.addAndGet(sign);
+        Resident r = bed.getResident();
+        if (r != null) {
+            occupy(r.getGender(), sign);
+        }
+    }
+
+    /** Everything counted in other joined (sign 1) or left (-1). */
+    void add(Occupancy other, int sign) {
+        beds.addAndGet(sign * other.getBeds());
+        occupied.addAndGet(sign * other.getOccupied());
+        for (int g = 0; g < byGender.length(); g++) {
+            byGender.addAndGet(g, sign * other.byGender.get(g));
+        }
+    }
+
+    void clear() {
+        beds.set(0);
+        occupied.set(0);
+        for (int g = 0; g < byGender.length(); g++) {
+            byGender.set(g, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder genders = new StringBuilder();
+        for (Gender g : Gender.values()) {
+            genders.append(genders.length() == 0 ? "" : ", ").append(g).append(' ').append(getOccupied(g));
+        }
+        return getOccupied() + "/" + getBeds() + " beds occupied (" + genders + "), " + getVacant() + " vacant";
+    }
+}
@@ -2,25 +2,51 @@ package app;
 
 import java.io.Serializable;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+/** A resident's medicines. Changes and the copies handed out are synchronized on the prescription. */
 public class Prescription implements Serializable {
     private final String residentId;
-    private final Map<Medicine, String> items = new LinkedHashMap<>();
+    private final Map<Medicine, PrescriptionLine> lines = new LinkedHashMap<>();
 
     public Prescription(String residentId) {
         this.residentId = residentId;
     }
 
+    public String getResidentId() { return residentId; }
+
+    /** Add the medicine, or replace its dose and time if it is already prescribed. */
     public void addItem(Medicine med, String dose, LocalTime time) {
-        items.put(med, dose + " @ " + time);
+        addLine(new PrescriptionLine(med, dose, time));
+    }
+
+    public synchronized void addLine(PrescriptionLine line) {
+        lines.put(line.getMedicine(), line);
+    }
+
+    /** Restore an item exactly as it was recorded (used by journal replay). */
+    void putItem(Medicine med, String entry) {
+        addLine(PrescriptionLine.parse(med, entry));
+    }
+
+    /** The lines in the order their medicines were first prescribed. */
+    public synchronized List<PrescriptionLine> getLines() {
+        return new ArrayList<>(lines.values());
     }
 
-    public Map<Medicine, String> getItems() { return items; }
+    /** Each medicine's line in its "dose @ HH:mm" text form; a read-only copy. */
+    public synchronized Map<Medicine, String> getItems() {
+        Map<Medicine, String> items = new LinkedHashMap<>();
+        lines.forEach((med, line) -> items.put(med, line.toItemString()));
+        return Collections.unmodifiableMap(items);
+    }
 
     @Override
     public String toString() {
-        return "Prescription for " + residentId + ": " + items;
+        return "Prescription for " + residentId + ": " + getItems();
     }
 }
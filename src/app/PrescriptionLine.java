@@ -0,0 +1,69 @@
+package app;
+
+import java.math.BigDecimal;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One medicine on a prescription: how much, in what unit, and at what time of day. The
+ * dose is parsed once, when the line is made, from text such as "10mg", "2 puffs" or
+ * "0.5 ml"; doses that do not start with a number ("as directed") keep their text as the
+ * unit and have no quantity.
+ */
+public class PrescriptionLine {
+    private static final Pattern QUANTITY = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(.*)");
+
+    private final Medicine medicine;
+    private final String dose;          // as written
+    private final BigDecimal quantity;  // null when the dose is free text
+    private final String unit;
+    private final LocalTime time;
+
+    public PrescriptionLine(Medicine medicine, String dose, LocalTime time) {
+        if (medicine == null || dose == null || time == null) {
+            throw new IllegalArgumentException("Prescription line needs a medicine, dose and time");
+        }
+        this.medicine = medicine;
+        this.dose = dose.trim();
+        this.time = time;
+        Matcher m = QUANTITY.matcher(this.dose);
+        if (m.matches()) {
+            this.quantity = new BigDecimal(m.group(1));
+            this.unit = m.group(2);
+        } else {
+            this.quantity = null;
+            this.unit = this.dose;
+        }
+    }
+
+    /** Read a line back from its "dose @ HH:mm" text form (journals and snapshots). */
+    static PrescriptionLine parse(Medicine medicine, String item) {
+        int at = item.lastIndexOf(" @ ");
+        if (at < 0) {
+            throw new IllegalArgumentException("Not a prescription item: " + item);
+        }
+        try {
+            return new PrescriptionLine(medicine, item.substring(0, at), LocalTime.parse(item.substring(at + 3)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a prescription item: " + item, e);
+        }
+    }
+
+    public Medicine getMedicine() { return medicine; }
+    public String getDose() { return dose; }
+    public BigDecimal getQuantity() { return quantity; }
+    public String getUnit() { return unit; }
+    public LocalTime getTime() { return time; }
+
+    /** The "dose @ HH:mm" form prescriptions have always been shown and stored in. */
+    public String toItemString() {
+        return dose + " @ " + time;
+    }
+
+    @Override
+    public String toString() {
+        return medicine + " " + toItemString();
+    }
+}
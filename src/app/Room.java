@@ -1,15 +1,24 @@
 package app;
 
-import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class Room {
+    private static final AtomicLong NEXT_ORDER = new AtomicLong();
 
-public class Room implements Serializable {
     private final String roomId;
-    private final List<Bed> beds = new ArrayList<>();
+    private final List<Bed> beds;
+    private final Occupancy occupancy = new Occupancy();
+    private final Set<Bed> vacant = new LinkedHashSet<>();  // guarded by this
+    private volatile int freeKey = FreeRooms.FULL;          // bucket in the ward's FreeRooms
+    private final long order = NEXT_ORDER.getAndIncrement();
+    private volatile Ward ward;
 
     public Room(String roomId) {
         this.roomId = roomId;
+        this.beds = new TrackedList<>(this::bedAdded, this::bedRemoved);
     }
 
     public String getRoomId() {
@@ -20,12 +29,114 @@ public class Room implements Serializable {
         return beds;
     }
 
+    /** Ward this room belongs to, or null if it has not been added to one yet. */
+    public Ward getWard() {
+        return ward;
+    }
+
+    void setWard(Ward ward) {
+        this.ward = ward;
+    }
+
     public void addBed(Bed bed) {
         beds.add(bed);
     }
 
-    public Bed getVacantBed() {
-        return beds.stream().filter(Bed::isVacant).findFirst().orElse(null);
+    public Occupancy getOccupancy() {
+        return occupancy;
+    }
+
+    public synchronized Bed getVacantBed() {
+        return vacant.isEmpty() ? null : vacant.iterator().next();
+    }
+
+    /** The first vacant bed not in taken, or null. */
+    synchronized Bed getVacantBed(Set<Bed> taken) {
+        for (Bed bed : vacant) {
+            if (!taken.contains(bed)) return bed;
+        }
+        return null;
+    }
+
+    synchronized int countVacant(Set<Bed> taken) {
+        int count = 0;
+        for (Bed bed : vacant) {
+            if (!taken.contains(bed)) count++;
+        }
+        return count;
+    }
+
+    int getFreeKey() {
+        return freeKey;
+    }
+
+    /** Creation order, for stable ordering among rooms. */
+    long getOrder() {
+        return order;
+    }
+
+    private void bedAdded(Bed bed) {
+        Room current = bed.getRoom();
+        if (current != null) {
+            throw new IllegalArgumentException("Bed " + bed.getBedId() + " already belongs to room " + current.getRoomId());
+        }
+        if (ward != null && ward.getRegistry() != null) {
+            ward.getRegistry().register(bed);
+        }
+        synchronized (bed) {  // so an assignment in between is counted exactly once
+            bed.setRoom(this);
+            counted(bed, 1);
+        }
+    }
+
+    private void bedRemoved(Bed bed) {
+        if (ward != null && ward.getRegistry() != null) {
+            ward.getRegistry().unregister(bed);
+        }
+        synchronized (bed) {
+            bed.setRoom(null);
+            counted(bed, -1);
+        }
+    }
+
+    private synchronized void counted(Bed bed, int sign) {
+        occupancy.bed(bed, sign);
+        if (sign > 0 && bed.isVacant()) {
+            vacant.add(bed);
+        } else {
+            vacant.remove(bed);
+        }
+        Ward w = ward;
+        if (w != null) {
+            w.bedCounted(bed, sign);
+        }
+        refreshFreeKey(w);
+    }
+
+    /** Called by a bed in this room when a resident moves in (delta 1) or out (-1). */
+    synchronized void occupancyChanged(Bed bed, Gender gender, int delta) {
+        occupancy.occupy(gender, delta);
+        if (delta > 0) {
+            vacant.remove(bed);
+        } else {
+            vacant.add(bed);
+        }
+        Ward w = ward;
+        if (w != null) {
+            w.occupancyChanged(gender, delta);
+        }
+        refreshFreeKey(w);
+    }
+
+    private void refreshFreeKey(Ward w) {
+        int key = FreeRooms.key(occupancy);
+        if (key != freeKey) {
+            int old = freeKey;
+            freeKey = key;
+            if (w != null) {
+                w.freeRoomMoved(this, old, key);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,351 @@
+package app;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a week of shifts for a set of nurses and doctors. Every day has the same slots
+ * (by default nurses 08:00-16:00 and 16:00-23:59, two each, and a doctor 09:00-10:00),
+ * and each slot gets at least its minimum number of staff of its role. The roster keeps
+ * to the rules Schedule checks: no shift over 8 hours, no overlaps (at most one shift a
+ * day per person) and at most 48 hours a week, counting shifts they already have.
+ * Among rosters that do that, it looks for one where hours are spread evenly.
+ *
+ * Each role's staff are split into chunks and each chunk covers its share of every slot,
+ * on a fork/join pool: fill each slot with whoever has the fewest hours, then move
+ * shifts from the busiest to the least busy member until hours are as even as they get
+ * or the time budget runs out. Whatever a chunk could not cover is then offered to all
+ * staff of the role. Slots still short after that are reported, not silently dropped.
+ *
+ * Nothing is rostered until the result is passed to {@link CareHome#assignShifts}.
+ */
+public class RosterGenerator {
+    /** Staff per chunk; a chunk is solved on one thread. */
+    static final int CHUNK_STAFF = 128;
+
+    /** A daily slot to fill: min staff of role from start to end. */
+    public record Slot(Role role, LocalTime start, LocalTime end, int minimum) {
+        public Slot {
+            if (role == Role.MANAGER) throw new IllegalArgumentException("Managers are not rostered");
+            if (!end.isAfter(start) || Duration.between(start, end).toMinutes() > Schedule.MAX_SHIFT_HOURS * 60) {
+                throw new IllegalArgumentException("Slot must end after it starts and last at most "
+                        + Schedule.MAX_SHIFT_HOURS + " hours: " + start + "-" + end);
+            }
+            if (minimum < 0) throw new IllegalArgumentException("Negative minimum for " + start + "-" + end);
+        }
+
+        int minutes() {
+            return (int) Duration.between(start, end).toMinutes();
+        }
+
+        @Override
+        public String toString() {
+            return role + " " + start + "-" + end;
+        }
+    }
+
+    /** A generated week: shifts per staff member, and any slot left short of its minimum. */
+    public static final class Roster {
+        private final Map<String, List<Shift>> shifts;
+        private final List<String> shortfalls;
+        private final Map<String, Integer> minutes;
+        private final long nanos;
+
+        Roster(Map<String, List<Shift>> shifts, List<String> shortfalls, Map<String, Integer> minutes, long nanos) {
+            this.shifts = shifts;
+            this.shortfalls = shortfalls;
+            this.minutes = minutes;
+            this.nanos = nanos;
+        }
+
+        /** New shifts by staffId, ready for CareHome.assignShifts. */
+        public Map<String, List<Shift>> getShifts() { return shifts; }
+
+        /** Slots left below their minimum, as "MONDAY NURSE 08:00-16:00: 1 short". */
+        public List<String> getShortfalls() { return shortfalls; }
+
+        /** Rostered minutes per staff member for the week, including shifts they already had. */
+        public Map<String, Integer> getMinutes() { return minutes; }
+
+        public int getShiftCount() {
+            return shifts.values().stream().mapToInt(List::size).sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d shifts for %,d staff, %d slots short, %.0f ms", getShiftCount(), minutes.size(),
+                    shortfalls.size(), nanos / 1e6);
+        }
+    }
+
+    private final List<Staff> staff = new ArrayList<>();
+    private final Schedule existing;
+    private final List<Slot> slots = new ArrayList<>();
+    private Duration budget = Duration.ofSeconds(2);
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /** Roster the nurses and doctors among staff, on top of what existing already holds. */
+    public RosterGenerator(Collection<Staff> staff, Schedule existing) {
+        for (Staff s : staff) {
+            if (s.getRole() != Role.MANAGER) this.staff.add(s);
+        }
+        this.staff.sort(Comparator.comparing(Staff::getStaffId));
+        this.existing = existing;
+    }
+
+    /** Add a daily slot. The first call replaces the default slots. */
+    public RosterGenerator slot(Role role, LocalTime start, LocalTime end, int minimum) {
+        slots.add(new Slot(role, start, end, minimum));
+        return this;
+    }
+
+    /** How long to spend evening out hours; covering the slots always completes. */
+    public RosterGenerator budget(Duration budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    public RosterGenerator pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public static List<Slot> defaultSlots() {
+        return List.of(new Slot(Role.NURSE, LocalTime.of(8, 0), LocalTime.of(16, 0), 2),
+                new Slot(Role.NURSE, LocalTime.of(16, 0), LocalTime.of(23, 59), 2),
+                new Slot(Role.DOCTOR, LocalTime.of(9, 0), LocalTime.of(10, 0), 1));
+    }
+
+    public Roster generate() {
+        long start = System.nanoTime();
+        long deadline = start + budget.toNanos();
+        List<Slot> daily = slots.isEmpty() ? defaultSlots() : slots;
+        DayOfWeek[] days = DayOfWeek.values();
+
+        // Demand per (day, slot), less what existing shifts already cover
+        int[][] need = new int[days.length][daily.size()];
+        List<Member> members = new ArrayList<>(staff.size());
+        for (Staff s : staff) {
+            members.add(new Member(s, existing.getShiftsForStaff(s)));
+        }
+        for (int d = 0; d < days.length; d++) {
+            for (int k = 0; k < daily.size(); k++) {
+                need[d][k] = daily.get(k).minimum();
+            }
+        }
+        for (Member m : members) {
+            for (Shift shift : m.existing) {
+                for (int k = 0; k < daily.size(); k++) {
+                    Slot slot = daily.get(k);
+                    if (slot.role() == m.staff.getRole() && !shift.getStart().isAfter(slot.start())
+                            && !shift.getEnd().isBefore(slot.end())) {
+                        need[shift.getDay().ordinal()][k]--;
+                    }
+                }
+            }
+        }
+
+        // Chunks per role, each with its share of every slot, solved in parallel
+        List<Chunk> chunks = new ArrayList<>();
+        for (Role role : new Role[]{Role.NURSE, Role.DOCTOR}) {
+            List<Member> ofRole = members.stream().filter(m -> m.staff.getRole() == role).toList();
+            int count = Math.max(1, (ofRole.size() + CHUNK_STAFF - 1) / CHUNK_STAFF);
+            List<Chunk> roleChunks = new ArrayList<>();
+            for (int c = 0; c < count; c++) {
+                int from = ofRole.size() * c / count;
+                int to = ofRole.size() * (c + 1) / count;
+                roleChunks.add(new Chunk(ofRole.subList(from, to), daily, days.length));
+            }
+            share(role, daily, need, roleChunks, ofRole.size());
+            chunks.addAll(roleChunks);
+        }
+        pool.invoke(new Solve(chunks, 0, chunks.size(), deadline));
+
+        // Cover what the chunks could not, from anyone of the role
+        List<String> shortfalls = new ArrayList<>();
+        for (int d = 0; d < days.length; d++) {
+            for (int k = 0; k < daily.size(); k++) {
+                Slot slot = daily.get(k);
+                int missing = 0;
+                for (Chunk c : chunks) missing += c.unmet[d][k];
+                if (missing <= 0) continue;
+                List<Member> ofRole = members.stream().filter(m -> m.staff.getRole() == slot.role()).toList();
+                missing -= fill(ofRole, days[d], slot, missing);
+                if (missing > 0) {
+                    shortfalls.add(days[d] + " " + slot + ": " + missing + " short");
+                }
+            }
+        }
+
+        Map<String, List<Shift>> shifts = new LinkedHashMap<>();
+        Map<String, Integer> minutes = new LinkedHashMap<>();
+        for (Member m : members) {
+            if (!m.added.isEmpty()) shifts.put(m.staff.getStaffId(), m.added);
+            minutes.put(m.staff.getStaffId(), m.minutes);
+        }
+        return new Roster(shifts, shortfalls, minutes, System.nanoTime() - start);
+    }
+
+    /** Split each slot's demand over the role's chunks by size, rotating the remainders. */
+    private static void share(Role role, List<Slot> daily, int[][] need, List<Chunk> chunks, int total) {
+        int rotation = 0;
+        for (int d = 0; d < need.length; d++) {
+            for (int k = 0; k < daily.size(); k++) {
+                if (daily.get(k).role() != role || need[d][k] <= 0) continue;
+                int demand = need[d][k];
+                int given = 0;
+                for (Chunk c : chunks) {
+                    c.need[d][k] = total == 0 ? 0 : demand * c.members.size() / total;
+                    given += c.need[d][k];
+                }
+                for (int i = 0; given < demand; i++, given++) {
+                    chunks.get((rotation + i) % chunks.size()).need[d][k]++;
+                }
+                rotation += demand;
+            }
+        }
+    }
+
+    /** Give up to count members the slot on day, fewest hours first; returns how many got it. */
+    private static int fill(List<Member> candidates, DayOfWeek day, Slot slot, int count) {
+        List<Member> free = new ArrayList<>();
+        for (Member m : candidates) {
+            if (m.canTake(day, slot.minutes())) free.add(m);
+        }
+        free.sort(Comparator.comparingInt((Member m) -> m.minutes).thenComparing(m -> m.staff.getStaffId()));
+        int given = Math.min(count, free.size());
+        for (int i = 0; i < given; i++) {
+            free.get(i).take(new Shift(day, slot.start(), slot.end()));
+        }
+        return given;
+    }
+
+    // ---------- Working state ----------
+
+    /** One staff member's week while it is being built. Only its chunk's thread touches it. */
+    private static final class Member {
+        final Staff staff;
+        final List<Shift> existing;
+        final List<Shift> added = new ArrayList<>();
+        final boolean[] busy = new boolean[7];
+        int minutes;
+
+        Member(Staff staff, List<Shift> existing) {
+            this.staff = staff;
+            this.existing = existing;
+            for (Shift s : existing) {
+                busy[s.getDay().ordinal()] = true;
+                minutes += Math.max(0, (int) Duration.between(s.getStart(), s.getEnd()).toMinutes());
+            }
+        }
+
+        boolean canTake(DayOfWeek day, int length) {
+            return !busy[day.ordinal()] && minutes + length <= Schedule.MAX_WEEKLY_HOURS * 60;
+        }
+
+        void take(Shift shift) {
+            added.add(shift);
+            busy[shift.getDay().ordinal()] = true;
+            minutes += (int) Duration.between(shift.getStart(), shift.getEnd()).toMinutes();
+        }
+
+        void give(Shift shift, Member to) {
+            added.remove(shift);
+            busy[shift.getDay().ordinal()] = false;
+            minutes -= (int) Duration.between(shift.getStart(), shift.getEnd()).toMinutes();
+            to.take(shift);
+        }
+    }
+
+    /** Some staff of one role and their share of each slot. */
+    private static final class Chunk {
+        final List<Member> members;
+        final List<Slot> daily;
+        final int[][] need;
+        final int[][] unmet;
+
+        Chunk(List<Member> members, List<Slot> daily, int days) {
+            this.members = members;
+            this.daily = daily;
+            this.need = new int[days][daily.size()];
+            this.unmet = new int[days][daily.size()];
+        }
+
+        void solve(long deadline) {
+            DayOfWeek[] days = DayOfWeek.values();
+            // Longest slots first, so the ones hardest to place get the most choice
+            List<Integer> order = new ArrayList<>();
+            for (int k = 0; k < daily.size(); k++) order.add(k);
+            order.sort(Comparator.comparingInt((Integer k) -> -daily.get(k).minutes()));
+            for (int k : order) {
+                for (int d = 0; d < days.length; d++) {
+                    if (need[d][k] > 0) {
+                        unmet[d][k] = need[d][k] - fill(members, days[d], daily.get(k), need[d][k]);
+                    }
+                }
+            }
+            balance(deadline);
+        }
+
+        /** Move shifts from the busiest member to the least busy one while that narrows the spread. */
+        private void balance(long deadline) {
+            if (members.size() < 2) return;
+            List<Member> sorted = new ArrayList<>(members);
+            while (System.nanoTime() < deadline) {
+                sorted.sort(Comparator.comparingInt(m -> m.minutes));
+                if (!moveOne(sorted)) return;
+            }
+        }
+
+        private boolean moveOne(List<Member> sorted) {
+            for (int hi = sorted.size() - 1; hi > 0; hi--) {
+                Member busiest = sorted.get(hi);
+                for (int lo = 0; lo < hi; lo++) {
+                    Member idlest = sorted.get(lo);
+                    if (idlest.minutes >= busiest.minutes) break;
+                    for (Shift shift : busiest.added) {
+                        int length = (int) Duration.between(shift.getStart(), shift.getEnd()).toMinutes();
+                        if (idlest.minutes + length < busiest.minutes && idlest.canTake(shift.getDay(), length)) {
+                            busiest.give(shift, idlest);
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Solve extends RecursiveAction {
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final long deadline;
+
+        Solve(List<Chunk> chunks, int from, int to, long deadline) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) chunks.get(from).solve(deadline);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Solve(chunks, from, mid, deadline), new Solve(chunks, mid, to, deadline));
+        }
+    }
+}
@@ -79,16 +79,14 @@ public class SampleData {
         Schedule sched = careHome.getSchedule();
 
         // Assign shifts for Nurse
-        Nurse nurse = (Nurse) careHome.getStaff().stream()
-                .filter(s -> s.getRole() == Role.NURSE)
+        Nurse nurse = (Nurse) careHome.getStaffByRole(Role.NURSE).stream()
                 .findFirst()
                 .orElseThrow(() -> new Exception("No nurse found"));
         sched.assignNurseShift(nurse, new Shift(DayOfWeek.MONDAY, LocalTime.of(8, 0), LocalTime.of(16, 0)));
         sched.assignNurseShift(nurse, new Shift(DayOfWeek.TUESDAY, LocalTime.of(8, 0), LocalTime.of(16, 0)));
 
         // Assign shifts for Doctor
-        Doctor doctor = (Doctor) careHome.getStaff().stream()
-                .filter(s -> s.getRole() == Role.DOCTOR)
+        Doctor doctor = (Doctor) careHome.getStaffByRole(Role.DOCTOR).stream()
                 .findFirst()
                 .orElseThrow(() -> new Exception("No doctor found"));
         sched.assignDoctorShift(doctor, new Shift(DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(17, 0)));
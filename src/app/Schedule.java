@@ -1,17 +1,45 @@
 package app;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.DayOfWeek;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Staff shifts and doctor availability. Reads are lock-free; changes are synchronized on the
+ * schedule, which is also what CareHome holds while it snapshots the schedule.
+ *
+ * Compliance is kept up to date as shifts are added: each new shift is checked for length
+ * and against that person's other shifts, and their weekly total is bumped, so a report
+ * only has to collect the violations already found.
+ *
+ * Head counts per role come from a CoverageAnalyzer, rebuilt on the first query after a
+ * shift or staff change.
+ */
+public class Schedule {
+    static final int MAX_SHIFT_HOURS = 8;
+    static final int MAX_WEEKLY_HOURS = 48;
 
-public class Schedule implements Serializable {
     private final Map<String, List<Shift>> shifts; // staffId -> list of shifts
     private final Map<DayOfWeek, Boolean> doctorAvailability; // day -> is doctor present
+    private final Map<String, DutyBitmap> duty = new ConcurrentHashMap<>(); // staffId -> rostered minutes
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>(); // staffId -> bumped on every roster change
+    private final Map<String, Integer> weeklyMinutes = new ConcurrentHashMap<>(); // staffId -> rostered minutes
+    private final Map<String, List<ComplianceViolation>> violations = new LinkedHashMap<>(); // guarded by this
+    private final Set<String> overWeeklyLimit = new LinkedHashSet<>(); // guarded by this
+    private volatile Journal journal; // set by CareHome while journaling is on
+    private volatile Function<String, Role> roleOf; // set by CareHome; staffId -> role or null
+    private volatile CoverageAnalyzer coverage; // null until asked for after a change
 
     public Schedule() {
-        this.shifts = new HashMap<>();
-        this.doctorAvailability = new HashMap<>();
+        this.shifts = new ConcurrentHashMap<>();
+        this.doctorAvailability = new ConcurrentHashMap<>();
         // Default all days to false (no doctor)
         for (DayOfWeek day : DayOfWeek.values()) {
             doctorAvailability.put(day, false);
@@ -19,7 +47,70 @@ public class Schedule implements Serializable {
     }
 
     public void assignShift(Staff staff, Shift shift) {
-        shifts.computeIfAbsent(staff.getStaffId(), k -> new ArrayList<>()).add(shift);
+        Runnable durable;
+        synchronized (this) {
+            durable = record(JournalOp.ASSIGN_SHIFT, out -> {
+                out.writeUTF(staff.getStaffId());
+                out.writeByte(shift.getDay().ordinal());
+                out.writeInt(shift.getStart().toSecondOfDay());
+                out.writeInt(shift.getEnd().toSecondOfDay());
+            });
+            addShift(staff.getStaffId(), shift);
+        }
+        durable.run();
+    }
+
+    synchronized void addShift(String staffId, Shift shift) {
+        List<Shift> existing = shifts.computeIfAbsent(staffId, k -> new CopyOnWriteArrayList<>());
+        checkNewShift(staffId, shift, existing);
+        existing.add(shift);
+        duty.computeIfAbsent(staffId, k -> new DutyBitmap()).add(shift);
+        versionOf(staffId).incrementAndGet();
+        coverage = null;
+    }
+
+    /** Counter that changes whenever the staff member's roster does; sessions compare against it. */
+    AtomicLong versionOf(String staffId) {
+        return versions.computeIfAbsent(staffId, k -> new AtomicLong());
+    }
+
+    /** Minutes the staff member stays on duty from minuteOfWeek (0 if off duty then). */
+    int dutyRunFrom(String staffId, int minuteOfWeek) {
+        DutyBitmap bitmap = duty.get(staffId);
+        return bitmap == null ? 0 : bitmap.runFrom(minuteOfWeek);
+    }
+
+    /** Update the compliance state for a shift about to join existing. */
+    private void checkNewShift(String staffId, Shift shift, List<Shift> existing) {
+        if (shift.getHours() > MAX_SHIFT_HOURS) {
+            violation(ComplianceViolation.Type.SHIFT_TOO_LONG, staffId,
+                    shift + " is longer than " + MAX_SHIFT_HOURS + " hours");
+        }
+        for (Shift other : existing) {
+            if (overlaps(shift, other)) {
+                violation(ComplianceViolation.Type.OVERLAPPING_SHIFTS, staffId, shift + " overlaps " + other);
+            }
+        }
+        int total = weeklyMinutes.merge(staffId, minutes(shift), Integer::sum);
+        if (total > MAX_WEEKLY_HOURS * 60) {
+            overWeeklyLimit.add(staffId);
+        }
+    }
+
+    private void violation(ComplianceViolation.Type type, String staffId, String detail) {
+        violations.computeIfAbsent(staffId, k -> new ArrayList<>()).add(new ComplianceViolation(type, staffId, detail));
+    }
+
+    private static boolean overlaps(Shift a, Shift b) {
+        return a.getDay() == b.getDay()
+                && a.getStart().isBefore(b.getEnd()) && b.getStart().isBefore(a.getEnd());
+    }
+
+    /** Shifts ending before they start are not rostered (see DutyBitmap), so they count for nothing. */
+    private static int minutes(Shift shift) {
+        int start = shift.getStart().toSecondOfDay() / 60;
+        int end = shift.getEnd().toSecondOfDay() / 60;
+        return Math.max(0, end - start);
     }
 
     public void assignNurseShift(Nurse nurse, Shift shift) {
@@ -30,37 +121,92 @@ public class Schedule implements Serializable {
         assignShift(doctor, shift);
     }
 
+    /** Live staffId -> shifts map, for the snapshot codec. */
+    Map<String, List<Shift>> getShiftsByStaff() {
+        return shifts;
+    }
+
     public List<Shift> getShiftsForStaff(Staff staff) {
         return shifts.getOrDefault(staff.getStaffId(), new ArrayList<>());
     }
 
     /**
-     * Check if a staff member is currently on duty at the given day+time.
+     * Check if a staff member is currently on duty at the given day+time (to the minute).
      */
     public boolean isOnDuty(Staff staff, DayOfWeek day, LocalTime time) {
-        List<Shift> staffShifts = getShiftsForStaff(staff);
-        for (Shift s : staffShifts) {
-            if (s.getDay() == day &&
-                    !time.isBefore(s.getStart()) &&
-                    !time.isAfter(s.getEnd())) {
-                return true;
-            }
-        }
-        return false;
+        return isOnDuty(staff.getStaffId(), DutyBitmap.minuteOfWeek(day, time));
+    }
+
+    public boolean isOnDuty(String staffId, int minuteOfWeek) {
+        DutyBitmap bitmap = duty.get(staffId);
+        return bitmap != null && bitmap.get(minuteOfWeek);
     }
 
     /**
-     * Enforce compliance rules (e.g., maximum shift length).
-     * Throws Exception if rules are violated.
+     * Ids of everyone rostered at the given day+time: one bit test per rostered staff member.
      */
-    public void checkCompliance() throws Exception {
-        for (Map.Entry<String, List<Shift>> entry : shifts.entrySet()) {
-            for (Shift s : entry.getValue()) {
-                if (s.getHours() > 8) {
-                    throw new Exception("Compliance violation: shift longer than 8 hours for staff " + entry.getKey());
+    public List<String> getOnDuty(DayOfWeek day, LocalTime time) {
+        int minute = DutyBitmap.minuteOfWeek(day, time);
+        List<String> onDuty = new ArrayList<>();
+        for (Map.Entry<String, DutyBitmap> entry : duty.entrySet()) {
+            if (entry.getValue().get(minute)) {
+                onDuty.add(entry.getKey());
+            }
+        }
+        return onDuty;
+    }
+
+    // ---------- Coverage ----------
+
+    synchronized void setRoleLookup(Function<String, Role> roleOf) {
+        this.roleOf = roleOf;
+        coverage = null;
+    }
+
+    /** Drop the cached coverage; CareHome calls this when staff join or leave. */
+    void coverageChanged() {
+        coverage = null;
+    }
+
+    /** Head counts for the current roster; staff the role lookup does not know count towards totals only. */
+    public CoverageAnalyzer getCoverage() {
+        CoverageAnalyzer local = coverage;
+        if (local == null) {
+            synchronized (this) {
+                local = coverage;
+                if (local == null) {
+                    Function<String, Role> lookup = roleOf;
+                    coverage = local = new CoverageAnalyzer(shifts, lookup == null ? id -> null : lookup);
                 }
             }
         }
+        return local;
+    }
+
+    /**
+     * Enforce compliance rules: no shift over 8 hours, no overlapping shifts for one person,
+     * and at most 48 rostered hours a week. Throws with the full report if any are broken.
+     */
+    public ComplianceReport checkCompliance() throws ComplianceException {
+        ComplianceReport report = getComplianceReport();
+        if (!report.isCompliant()) {
+            throw new ComplianceException(report);
+        }
+        return report;
+    }
+
+    /** Every current violation; the cost depends on how many there are, not on the roster size. */
+    public synchronized ComplianceReport getComplianceReport() {
+        List<ComplianceViolation> all = new ArrayList<>();
+        for (List<ComplianceViolation> list : violations.values()) {
+            all.addAll(list);
+        }
+        for (String staffId : overWeeklyLimit) {
+            int minutes = weeklyMinutes.get(staffId);
+            all.add(new ComplianceViolation(ComplianceViolation.Type.WEEKLY_HOURS_EXCEEDED, staffId,
+                    String.format("%d:%02d hours rostered this week (max %d)", minutes / 60, minutes % 60, MAX_WEEKLY_HOURS)));
+        }
+        return new ComplianceReport(all);
     }
 
     /**
@@ -82,13 +228,27 @@ public class Schedule implements Serializable {
      * Set doctor availability for a specific day
      */
     public void setDoctorPresent(DayOfWeek day, boolean present) {
-        doctorAvailability.put(day, present);
+        Runnable durable;
+        synchronized (this) {
+            durable = record(JournalOp.SET_DOCTOR_PRESENT, out -> {
+                out.writeByte(day.ordinal());
+                out.writeBoolean(present);
+            });
+            doctorAvailability.put(day, present);
+        }
+        durable.run();
     }
 
     /**
-     * Check if doctor is available for a specific day
+     * Check if doctor is available for a specific day: marked present, or any doctor
+     * has a shift that day.
      */
     public boolean isDoctorPresent(DayOfWeek day) {
+        return isDoctorMarkedPresent(day) || getCoverage().isCovered(Role.DOCTOR, day);
+    }
+
+    /** The flag set with setDoctorPresent alone, which is what snapshots keep. */
+    boolean isDoctorMarkedPresent(DayOfWeek day) {
         return doctorAvailability.getOrDefault(day, false);
     }
 
@@ -102,4 +262,46 @@ public class Schedule implements Serializable {
         }
         return all;
     }
+
+    // ---------- Journal ----------
+
+    synchronized void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Append a record; the returned action waits for it to be durable and is run after the
+     * schedule's lock is released, so the fsync does not hold up readers.
+     */
+    private Runnable record(JournalOp op, Journal.Body body) {
+        Journal current = journal;
+        if (current == null) return () -> { };
+        try {
+            long seq = current.append(op, System.currentTimeMillis(), body);
+            return () -> {
+                try {
+                    current.sync(seq);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not journal " + op, e);
+                }
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal " + op, e);
+        }
+    }
+
+    /** Re-apply a schedule record read back from the journal. */
+    synchronized void replay(JournalOp op, DataInput in) throws IOException {
+        switch (op) {
+            case ASSIGN_SHIFT -> {
+                String staffId = in.readUTF();
+                DayOfWeek day = DayOfWeek.values()[in.readByte()];
+                LocalTime start = LocalTime.ofSecondOfDay(in.readInt());
+                LocalTime end = LocalTime.ofSecondOfDay(in.readInt());
+                addShift(staffId, new Shift(day, start, end));
+            }
+            case SET_DOCTOR_PRESENT -> doctorAvailability.put(DayOfWeek.values()[in.readByte()], in.readBoolean());
+            default -> throw new IllegalArgumentException("Not a schedule record: " + op);
+        }
+    }
 }
@@ -0,0 +1,342 @@
+package app;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Binary snapshot format for a whole CareHome, used by saveData/loadData and compaction.
+ *
+ * Layout: magic, version, then sections for residents, staff, wards/rooms/beds, schedule
+ * and prescriptions; the action log lives in LogStore. Integers are varints. Strings go
+ * through a table built as the file is written: the first occurrence is written in full and
+ * later ones as a table index, so repeated staff ids, bed ids and medicine names cost a byte
+ * or two each. I/O goes through one reusable ByteBuffer over a channel, so large homes
+ * stream without building the file in memory.
+ */
+public final class SnapshotCodec {
+    static final int MAGIC = 0x43485331; // "CHS1"
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SnapshotCodec() {
+    }
+
+    // ---------- Write ----------
+
+    public static void write(CareHome home, WritableByteChannel channel) throws IOException {
+        Writer out = new Writer(channel);
+        out.buf.putInt(MAGIC);
+        out.varint(VERSION);
+        out.varlong(home.getJournalSeq());
+
+        // Residents: the registered list first, then anyone sitting in a bed without being registered
+        List<Resident> table = new ArrayList<>(home.getResidents());
+        Map<Resident, Integer> residentIndex = new IdentityHashMap<>();
+        for (Resident r : table) residentIndex.putIfAbsent(r, residentIndex.size());
+        for (Ward w : home.getWards()) {
+            for (Room room : w.getRooms()) {
+                for (Bed b : room.getBeds()) {
+                    Resident r = b.getResident();
+                    if (r != null && !residentIndex.containsKey(r)) {
+                        residentIndex.put(r, table.size());
+                        table.add(r);
+                    }
+                }
+            }
+        }
+        out.varint(home.getResidents().size());
+        out.varint(table.size());
+        for (Resident r : table) {
+            out.string(r.getResidentId());
+            out.string(r.getName());
+            out.gender(r.getGender());
+            out.string(r.getMedicalCondition());
+        }
+
+        out.varint(home.getStaff().size());
+        for (Staff s : home.getStaff()) {
+            out.varint(s.getRole().ordinal());
+            out.string(s.getStaffId());
+            out.string(s.getName());
+            out.gender(s.getGender());
+            out.string(s.getUsername());
+            out.string(s.password);
+        }
+
+        out.varint(home.getWards().size());
+        for (Ward w : home.getWards()) {
+            out.string(w.getWardId());
+            out.string(w.getWardName());
+            out.varint(w.getRooms().size());
+            for (Room room : w.getRooms()) {
+                out.string(room.getRoomId());
+                out.varint(room.getBeds().size());
+                for (Bed b : room.getBeds()) {
+                    out.string(b.getBedId());
+                    out.varint(b.getResident() == null ? 0 : residentIndex.get(b.getResident()) + 1);
+                }
+            }
+        }
+
+        Schedule schedule = home.getSchedule();
+        Map<String, List<Shift>> shifts = schedule.getShiftsByStaff();
+        out.varint(shifts.size());
+        for (Map.Entry<String, List<Shift>> e : shifts.entrySet()) {
+            out.string(e.getKey());
+            out.varint(e.getValue().size());
+            for (Shift shift : e.getValue()) {
+                out.varint(shift.getDay().ordinal());
+                out.varint(shift.getStart().toSecondOfDay());
+                out.varint(shift.getEnd().toSecondOfDay());
+            }
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            out.varint(schedule.isDoctorMarkedPresent(day) ? 1 : 0);
+        }
+
+        Map<String, Prescription> prescriptions = home.getPrescriptions();
+        out.varint(prescriptions.size());
+        for (Map.Entry<String, Prescription> e : prescriptions.entrySet()) {
+            out.string(e.getKey());
+            out.string(e.getValue().getResidentId());
+            List<PrescriptionLine> lines = e.getValue().getLines();
+            out.varint(lines.size());
+            for (PrescriptionLine line : lines) {
+                out.string(line.getMedicine().getName());
+                out.string(line.toItemString());
+            }
+        }
+
+        out.flush();
+    }
+
+    // ---------- Read ----------
+
+    public static CareHome read(ReadableByteChannel channel) throws IOException {
+        Reader in = new Reader(channel);
+        if (in.int32() != MAGIC) {
+            throw new IOException("Not a CareHome snapshot");
+        }
+        int version = in.varint();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " (this build reads " + VERSION + ")");
+        }
+
+        CareHome home = new CareHome();
+        home.setJournalSeq(in.varlong());
+
+        int registered = in.varint();
+        Resident[] residents = new Resident[in.varint()];
+        for (int i = 0; i < residents.length; i++) {
+            String id = in.string();
+            String name = in.string();
+            Gender gender = in.gender();
+            residents[i] = new Resident(id, name, gender, in.string());
+            if (i < registered) {
+                home.getResidents().add(residents[i]);
+            }
+        }
+
+        int staffCount = in.varint();
+        for (int i = 0; i < staffCount; i++) {
+            Role role = Role.values()[in.varint()];
+            String id = in.string();
+            String name = in.string();
+            Gender gender = in.gender();
+            String username = in.string();
+            String password = in.string();
+            home.getStaff().add(Staff.create(role, id, name, gender, username, password));
+        }
+
+        int wardCount = in.varint();
+        for (int i = 0; i < wardCount; i++) {
+            Ward ward = new Ward(in.string(), in.string());
+            int roomCount = in.varint();
+            for (int j = 0; j < roomCount; j++) {
+                Room room = new Room(in.string());
+                int bedCount = in.varint();
+                for (int k = 0; k < bedCount; k++) {
+                    Bed bed = new Bed(in.string());
+                    int resident = in.varint();
+                    if (resident > 0) {
+                        try {
+                            bed.assignResident(residents[resident - 1]);
+                        } catch (Exception e) {
+                            throw new IOException("Corrupt snapshot: " + e.getMessage(), e);
+                        }
+                    }
+                    room.addBed(bed);
+                }
+                ward.addRoom(room);
+            }
+            home.addWard(ward);
+        }
+
+        Schedule schedule = home.getSchedule();
+        int shiftOwners = in.varint();
+        for (int i = 0; i < shiftOwners; i++) {
+            String staffId = in.string();
+            int count = in.varint();
+            for (int j = 0; j < count; j++) {
+                DayOfWeek day = DayOfWeek.values()[in.varint()];
+                LocalTime start = LocalTime.ofSecondOfDay(in.varint());
+                LocalTime end = LocalTime.ofSecondOfDay(in.varint());
+                schedule.addShift(staffId, new Shift(day, start, end));
+            }
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            schedule.setDoctorPresent(day, in.varint() == 1);
+        }
+
+        int prescriptionCount = in.varint();
+        for (int i = 0; i < prescriptionCount; i++) {
+            String key = in.string();
+            Prescription p = new Prescription(in.string());
+            int items = in.varint();
+            for (int j = 0; j < items; j++) {
+                p.putItem(new Medicine(in.string()), in.string());
+            }
+            home.getPrescriptions().put(key, p);
+        }
+
+        return home;
+    }
+
+    // ---------- Helpers ----------
+
+    /** Buffered varint/string writer over a channel. */
+    private static final class Writer {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void varint(int v) throws IOException {
+            varlong(v & 0xFFFFFFFFL);
+        }
+
+        void varlong(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        /** 0 for null, else 1 + ordinal. */
+        void gender(Gender g) throws IOException {
+            varint(g == null ? 0 : g.ordinal() + 1);
+        }
+
+        /** 0 = null, 1 = new string follows, n >= 2 = table entry n - 2. */
+        void string(String s) throws IOException {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            Integer id = strings.get(s);
+            if (id != null) {
+                varint(id + 2);
+                return;
+            }
+            strings.put(s, strings.size());
+            varint(1);
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            for (int off = 0; off < bytes.length; ) {
+                ensure(1);
+                int n = Math.min(buf.remaining(), bytes.length - off);
+                buf.put(bytes, off, n);
+                off += n;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+    }
+
+    /** Buffered reader mirroring {@link Writer}. */
+    private static final class Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buf.limit(0);
+        }
+
+        int int32() throws IOException {
+            require(4);
+            return buf.getInt();
+        }
+
+        int varint() throws IOException {
+            return (int) varlong();
+        }
+
+        long varlong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                require(1);
+                byte b = buf.get();
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return result;
+            }
+            throw new IOException("Corrupt snapshot: varint too long");
+        }
+
+        Gender gender() throws IOException {
+            int tag = varint();
+            return tag == 0 ? null : Gender.values()[tag - 1];
+        }
+
+        String string() throws IOException {
+            int tag = varint();
+            if (tag == 0) return null;
+            if (tag >= 2) return strings.get(tag - 2);
+            byte[] bytes = new byte[varint()];
+            for (int off = 0; off < bytes.length; ) {
+                require(1);
+                int n = Math.min(buf.remaining(), bytes.length - off);
+                buf.get(bytes, off, n);
+                off += n;
+            }
+            String s = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(s);
+            return s;
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buf.remaining() >= bytes) return;
+            buf.compact();
+            while (buf.position() < bytes) {
+                if (channel.read(buf) < 0) {
+                    throw new EOFException("Truncated snapshot");
+                }
+            }
+            buf.flip();
+        }
+    }
+}
@@ -20,6 +20,15 @@ public abstract class Staff implements Serializable {
         this.role = Objects.requireNonNull(role);
     }
 
+    /** Build the concrete staff type for a role (used when reading saved data). */
+    static Staff create(Role role, String staffId, String name, Gender gender, String username, String password) {
+        return switch (role) {
+            case MANAGER -> new Manager(staffId, name, gender, username, password);
+            case DOCTOR -> new Doctor(staffId, name, gender, username, password);
+            case NURSE -> new Nurse(staffId, name, gender, username, password);
+        };
+    }
+
     public String getStaffId() { return staffId; }
     public String getName() { return name; }
     public String getUsername() { return username; }
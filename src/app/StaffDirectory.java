@@ -0,0 +1,62 @@
+package app;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Staff lookup tables kept in step with CareHome's staff list: by staffId, by username,
+ * and one prebuilt partition per Role. Reads are lock-free; adds and removes are serialized.
+ */
+public class StaffDirectory {
+    private final Map<String, Staff> byId = new ConcurrentHashMap<>();
+    private final Map<String, Staff> byUsername = new ConcurrentHashMap<>();
+    private final Map<Role, List<Staff>> byRole = new EnumMap<>(Role.class);
+
+    public StaffDirectory() {
+        for (Role role : Role.values()) {
+            byRole.put(role, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    /** Throw if s could not be added because its id or username is already taken. */
+    public synchronized void checkNew(Staff s) {
+        if (byId.containsKey(s.getStaffId())) {
+            throw new IllegalArgumentException("Duplicate staff id: " + s.getStaffId());
+        }
+        if (byUsername.containsKey(s.getUsername())) {
+            throw new IllegalArgumentException("Duplicate username: " + s.getUsername());
+        }
+    }
+
+    public synchronized void add(Staff s) {
+        checkNew(s);
+        byId.put(s.getStaffId(), s);
+        byUsername.put(s.getUsername(), s);
+        byRole.get(s.getRole()).add(s);
+    }
+
+    public synchronized void remove(Staff s) {
+        if (byId.remove(s.getStaffId(), s)) {
+            byUsername.remove(s.getUsername(), s);
+            byRole.get(s.getRole()).remove(s);
+        }
+    }
+
+    public Staff findById(String staffId) {
+        return byId.get(staffId);
+    }
+
+    public Staff findByUsername(String username) {
+        return byUsername.get(username);
+    }
+
+    /** Read-only view of all staff with the given role, in the order they were added. */
+    public List<Staff> withRole(Role role) {
+        return Collections.unmodifiableList(byRole.get(role));
+    }
+
+    public int size() {
+        return byId.size();
+    }
+}
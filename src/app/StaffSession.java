@@ -0,0 +1,57 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A staff member signed in to one CareHome, with their role and current duty window
+ * resolved once. The window runs to the end of the shift they are on; until then, and as
+ * long as their roster has not changed, a duty check is one clock read and two
+ * comparisons. Anything else (shift over, roster changed) makes CareHome resolve the
+ * window again.
+ *
+ * Sessions are safe to share between threads. Get one from {@link CareHome#openSession}.
+ */
+public final class StaffSession {
+    private final CareHome home;
+    private final Staff staff;
+    private final AtomicLong rosterVersion;  // the Schedule's counter for this staff member
+    private volatile Window window = new Window(Long.MIN_VALUE, -1);
+
+    /** On duty from the time it was resolved until validUntil, for roster version version. */
+    private record Window(long validUntil, long version) {
+    }
+
+    StaffSession(CareHome home, Staff staff, AtomicLong rosterVersion) {
+        this.home = home;
+        this.staff = staff;
+        this.rosterVersion = rosterVersion;
+    }
+
+    public Staff getStaff() { return staff; }
+    public String getStaffId() { return staff.getStaffId(); }
+    public Role getRole() { return staff.getRole(); }
+
+    /** End of the duty window last resolved, in epoch millis; in the past when off duty. */
+    public long getValidUntil() {
+        return window.validUntil;
+    }
+
+    CareHome getHome() {
+        return home;
+    }
+
+    /** Whether the cached window still says "on duty" at nowMillis. */
+    boolean covers(long nowMillis) {
+        Window w = window;
+        return nowMillis < w.validUntil && w.version == rosterVersion.get();
+    }
+
+    /** Roster version to pass back to {@link #resolved}; read it before reading the roster. */
+    long rosterVersion() {
+        return rosterVersion.get();
+    }
+
+    void resolved(long validUntil, long version) {
+        window = new Window(validUntil, version);
+    }
+}
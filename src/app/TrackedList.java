@@ -0,0 +1,67 @@
+package app;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * ArrayList-backed list that tells its owner about every element added or removed,
+ * so indexes stay correct even when callers mutate the list returned by a getter.
+ * Individual operations are synchronized; iterating while another thread adds may throw
+ * ConcurrentModificationException, as with any fail-fast list.
+ */
+public class TrackedList<E> extends AbstractList<E> implements RandomAccess {
+
+    /** Callback invoked for each element entering or leaving the list. */
+    public interface Hook<E> {
+        void accept(E element);
+    }
+
+    private final List<E> items = new ArrayList<>();
+    private final Hook<E> onAdd;
+    private final Hook<E> onRemove;
+
+    public TrackedList(Hook<E> onAdd, Hook<E> onRemove) {
+        this.onAdd = onAdd;
+        this.onRemove = onRemove;
+    }
+
+    @Override
+    public synchronized E get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public synchronized int size() {
+        return items.size();
+    }
+
+    @Override
+    public synchronized void add(int index, E element) {
+        onAdd.accept(element);
+        items.add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public synchronized E set(int index, E element) {
+        E old = items.get(index);
+        onRemove.accept(old);
+        try {
+            onAdd.accept(element);
+        } catch (RuntimeException e) {
+            onAdd.accept(old);
+            throw e;
+        }
+        return items.set(index, element);
+    }
+
+    @Override
+    public synchronized E remove(int index) {
+        E old = items.remove(index);
+        modCount++;
+        onRemove.accept(old);
+        return old;
+    }
+}
@@ -1,24 +1,63 @@
 package app;
 
-import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class Ward {
+    private static final AtomicLong NEXT_LOCK_ORDER = new AtomicLong();
 
-public class Ward implements Serializable {
     private final String wardId;
     private final String wardName;  // Add this field
-    private final List<Room> rooms = new ArrayList<>();
+    private final List<Room> rooms;
+    private volatile BedRegistry registry;   // set while the ward belongs to a CareHome
+    private final Occupancy occupancy = new Occupancy();
+    private final FreeRooms freeRooms = new FreeRooms();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long lockOrder = NEXT_LOCK_ORDER.getAndIncrement();
 
     // Updated constructor
     public Ward(String wardId, String wardName) {
         this.wardId = wardId;
         this.wardName = wardName;
+        this.rooms = new TrackedList<>(this::roomAdded, this::roomRemoved);
     }
 
     public String getWardId() { return wardId; }
     public String getWardName() { return wardName; }  // Add this method
     public List<Room> getRooms() { return rooms; }
 
+    public Occupancy getOccupancy() { return occupancy; }
+
+    BedRegistry getRegistry() { return registry; }
+
+    FreeRooms getFreeRooms() { return freeRooms; }
+
+    /** Guards bed occupancy in this ward; CareHome takes it around every bed operation. */
+    ReentrantLock getLock() { return lock; }
+
+    /** Global acquisition order for ward locks, so multi-ward operations cannot deadlock. */
+    long getLockOrder() { return lockOrder; }
+
+    /**
+     * Attach this ward (and every bed already in it) to a home's bed registry,
+     * or detach it when registry is null.
+     */
+    void setRegistry(BedRegistry registry) {
+        if (registry == this.registry) return;
+        if (registry != null) {
+            registry.registerAll(rooms);
+            registry.getOccupancy().add(occupancy, 1);
+            registry.getFreeRooms().addAll(rooms);
+        }
+        if (this.registry != null) {
+            this.registry.unregisterAll(rooms);
+            this.registry.getOccupancy().add(occupancy, -1);
+            this.registry.getFreeRooms().removeAll(rooms);
+        }
+        this.registry = registry;
+    }
+
     // Add other Ward-specific methods here
     public void addRoom(Room room) {
         rooms.add(room);
@@ -31,8 +70,69 @@ public class Ward implements Serializable {
                 .orElse(null);
     }
 
+    private void roomAdded(Room room) {
+        Ward current = room.getWard();
+        if (current != null) {
+            throw new IllegalArgumentException("Room " + room.getRoomId() + " already belongs to ward " + current.getWardId());
+        }
+        if (registry != null) {
+            registry.registerAll(List.of(room));
+        }
+        synchronized (room) {  // a resident moving in meanwhile is counted once, here or via the room
+            room.setWard(this);
+            roomCounted(room, 1);
+            freeRoomMoved(room, FreeRooms.FULL, room.getFreeKey());
+        }
+    }
+
+    private void roomRemoved(Room room) {
+        if (registry != null) {
+            registry.unregisterAll(List.of(room));
+        }
+        synchronized (room) {
+            room.setWard(null);
+            roomCounted(room, -1);
+            freeRoomMoved(room, room.getFreeKey(), FreeRooms.FULL);
+        }
+    }
+
+    private void roomCounted(Room room, int sign) {
+        occupancy.add(room.getOccupancy(), sign);
+        BedRegistry r = registry;
+        if (r != null) {
+            r.getOccupancy().add(room.getOccupancy(), sign);
+        }
+    }
+
+    /** A bed joined or left one of this ward's rooms. */
+    void bedCounted(Bed bed, int sign) {
+        occupancy.bed(bed, sign);
+        BedRegistry r = registry;
+        if (r != null) {
+            r.getOccupancy().bed(bed, sign);
+        }
+    }
+
+    /** One of this ward's rooms changed FreeRooms bucket. */
+    void freeRoomMoved(Room room, int from, int to) {
+        freeRooms.move(room, from, to);
+        BedRegistry r = registry;
+        if (r != null) {
+            r.getFreeRooms().move(room, from, to);
+        }
+    }
+
+    /** A resident moved into or out of a bed in this ward. */
+    void occupancyChanged(Gender gender, int delta) {
+        occupancy.occupy(gender, delta);
+        BedRegistry r = registry;
+        if (r != null) {
+            r.getOccupancy().occupy(gender, delta);
+        }
+    }
+
     @Override
     public String toString() {
         return "Ward{" + wardId + " (" + wardName + "), rooms=" + rooms + "}";
     }
-}
\ No newline at end of file
+}
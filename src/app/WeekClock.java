@@ -0,0 +1,56 @@
+package app;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Current minute of the week in the clock's zone, computed from epoch millis. The zone
+ * offset is cached until the next offset transition, so the hot path does no calendar work.
+ */
+public class WeekClock {
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final int EPOCH_DAY_OFFSET = 3; // 1970-01-01 was a Thursday
+
+    private final Clock clock;
+    private volatile Offset offset;
+
+    public WeekClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public long millis() {
+        return clock.millis();
+    }
+
+    public int minuteOfWeekNow() {
+        return minuteOfWeek(clock.millis());
+    }
+
+    public int minuteOfWeek(long epochMillis) {
+        Offset current = offset;
+        if (current == null || epochMillis >= current.validUntil || epochMillis < current.validFrom) {
+            current = offsetAt(epochMillis);
+            offset = current;
+        }
+        long localMinutes = Math.floorDiv(epochMillis + current.millis, MILLIS_PER_MINUTE);
+        long days = Math.floorDiv(localMinutes, DutyBitmap.MINUTES_PER_DAY);
+        int minuteOfDay = Math.floorMod(localMinutes, DutyBitmap.MINUTES_PER_DAY);
+        int dayOfWeek = Math.floorMod(days + EPOCH_DAY_OFFSET, 7);
+        return dayOfWeek * DutyBitmap.MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    private Offset offsetAt(long epochMillis) {
+        ZoneRules rules = clock.getZone().getRules();
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        ZoneOffsetTransition previous = rules.previousTransition(instant);
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        return new Offset(rules.getOffset(instant).getTotalSeconds() * 1000L,
+                previous == null ? Long.MIN_VALUE : previous.toEpochSecond() * 1000,
+                next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000);
+    }
+
+    private record Offset(long millis, long validFrom, long validUntil) {
+    }
+}
@@ -6,11 +6,42 @@ import org.junit.rules.TemporaryFolder;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.time.Clock;
 import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import static org.junit.Assert.*;
 
@@ -23,10 +54,11 @@ public class MainTest {
     public TemporaryFolder tempFolder = new TemporaryFolder();
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         System.setOut(new PrintStream(outContent));
         // Reset CareHome instance before each test
         CareHome instance = CareHome.getInstance();
+        instance.closeJournal();
         instance.getWards().clear();
         instance.getStaff().clear();
         instance.getResidents().clear();
@@ -283,4 +315,1277 @@ public class MainTest {
         Exception ex = assertThrows(Exception.class, ch::checkCompliance);
         assertTrue(ex.getMessage().contains("Compliance violation"));
     }
+
+    @Test
+    public void testComplianceReportListsEveryViolation() throws Exception {
+        Schedule schedule = new Schedule();
+        Nurse nurse = new Nurse("N1", "Nurse", Gender.F, "user", "pass");
+        Nurse other = new Nurse("N2", "Other", Gender.F, "other", "pass");
+        schedule.assignShift(other, new Shift(DayOfWeek.MONDAY, LocalTime.of(8, 0), LocalTime.of(16, 0)));
+        schedule.assignShift(other, new Shift(DayOfWeek.MONDAY, LocalTime.of(16, 0), LocalTime.of(20, 0)));
+        assertTrue(schedule.checkCompliance().isCompliant());
+
+        schedule.assignShift(nurse, new Shift(DayOfWeek.MONDAY, LocalTime.of(8, 0), LocalTime.of(20, 0)));
+        schedule.assignShift(nurse, new Shift(DayOfWeek.MONDAY, LocalTime.of(19, 0), LocalTime.of(21, 0)));
+        for (DayOfWeek day : new DayOfWeek[]{DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY,
+                DayOfWeek.FRIDAY, DayOfWeek.SATURDAY}) {
+            schedule.assignShift(nurse, new Shift(day, LocalTime.of(8, 0), LocalTime.of(16, 0)));
+        }
+
+        ComplianceException ex = assertThrows(ComplianceException.class, schedule::checkCompliance);
+        List<ComplianceViolation> violations = ex.getReport().getViolations();
+        assertEquals(3, violations.size());
+        assertEquals(ComplianceViolation.Type.SHIFT_TOO_LONG, violations.get(0).getType());
+        assertEquals(ComplianceViolation.Type.OVERLAPPING_SHIFTS, violations.get(1).getType());
+        assertEquals(ComplianceViolation.Type.WEEKLY_HOURS_EXCEEDED, violations.get(2).getType());
+        assertTrue(violations.stream().allMatch(v -> v.getStaffId().equals("N1")));
+        assertTrue(violations.get(2).getDetail().startsWith("54:00"));
+    }
+
+    @Test
+    public void testBedRegistryTracksRoomsAndBeds() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+
+        Bed b1 = ch.getBedRegistry().find("B1");
+        assertNotNull(b1);
+        assertEquals("R1", ch.getBedRegistry().roomOf(b1).getRoomId());
+        assertEquals("W1", ch.getBedRegistry().wardOf(b1).getWardId());
+
+        Room room3 = new Room("R3");
+        ch.getWards().get(0).addRoom(room3);
+        room3.addBed(new Bed("B5"));
+        assertSame(room3, ch.getBedRegistry().find("B5").getRoom());
+
+        assertThrows(IllegalArgumentException.class, () -> room3.addBed(new Bed("B1")));
+        assertThrows(IllegalArgumentException.class, () -> room3.addBed(b1));
+        assertThrows(IllegalArgumentException.class, () -> new Ward("W9", "Other").addRoom(room3));
+        assertSame(b1.getRoom(), ch.getBedRegistry().roomOf(b1));
+
+        Ward ward = ch.getWards().get(0);
+        ward.setRegistry(ch.getBedRegistry());  // already attached: nothing changes
+        assertSame(b1, ch.getBedRegistry().find("B1"));
+        assertEquals(5, ch.getBedRegistry().size());
+
+        ch.getWards().clear();
+        assertNull(ch.getBedRegistry().find("B1"));
+        assertEquals(0, ch.getBedRegistry().size());
+    }
+
+    @Test
+    public void testBedRegistrySurvivesSaveAndLoad() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        ch.assignResidentToBed("M1", ch.getResidents().get(0), "B2");
+
+        File file = tempFolder.newFile("registry.dat");
+        ch.saveData(file);
+        CareHome loaded = CareHome.loadData(file);
+
+        Bed b2 = loaded.getBedRegistry().find("B2");
+        assertNotNull(b2);
+        assertFalse(b2.isVacant());
+        assertSame(loaded.getWards().get(0), b2.getRoom().getWard());
+
+        loaded.getWards().get(0).getRooms().get(1).addBed(new Bed("B9"));
+        assertNotNull(loaded.getBedRegistry().find("B9"));
+        loaded.moveResident("M1", "B2", "B9");
+        assertTrue(b2.isVacant());
+    }
+
+    @Test
+    public void testStaffDirectoryLookupsAndRolePartitions() {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapPeople(ch);
+
+        assertEquals("Bella", ch.findStaff("N2").getName());
+        assertEquals("D3", ch.findStaffByUsername("khan").getStaffId());
+        assertNull(ch.findStaff("X9"));
+        assertEquals(2, ch.getStaffByRole(Role.MANAGER).size());
+        assertEquals(4, ch.getStaffByRole(Role.NURSE).size());
+        assertEquals(7, ch.getStaffByRole(Role.DOCTOR).size());
+
+        ch.addStaff(new Nurse("N5", "Ola", Gender.F, "ola", "pass"));
+        assertEquals(5, ch.getStaffByRole(Role.NURSE).size());
+        assertThrows(IllegalArgumentException.class,
+                () -> ch.addStaff(new Doctor("N5", "Dup", Gender.M, "dup", "pass")));
+
+        ch.getStaff().clear();
+        assertTrue(ch.getStaffByRole(Role.NURSE).isEmpty());
+        assertNull(ch.findStaff("N2"));
+    }
+
+    @Test
+    public void testJournalReplaysOnTopOfSnapshot() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        File snapshot = tempFolder.newFile("journal-snapshot.dat");
+        File journal = new File(tempFolder.getRoot(), "carehome.journal");
+        ch.saveData(snapshot);
+
+        ch.openJournal(journal, snapshot);
+        ch.addResident(new Resident("R3", "Ada", Gender.F, null));
+        ch.assignResidentToBed("N1", ch.getResidents().get(2), "B1");
+        ch.moveResident("N1", "B1", "B3");
+        ch.getSchedule().assignShift(ch.findStaff("N2"), new Shift(DayOfWeek.FRIDAY, LocalTime.of(8, 0), LocalTime.of(16, 0)));
+        ch.closeJournal();
+
+        CareHome recovered = CareHome.loadData(snapshot);
+        assertEquals(2, recovered.getResidents().size());
+        recovered.openJournal(journal, snapshot);
+
+        assertEquals(3, recovered.getResidents().size());
+        assertTrue(recovered.getBedRegistry().find("B1").isVacant());
+        assertSame(recovered.getResidents().get(2), recovered.getBedRegistry().find("B3").getResident());
+        assertEquals(1, recovered.getSchedule().getShiftsForStaff(recovered.findStaff("N2")).size());
+        assertEquals(2, recovered.getLogs().size());
+        recovered.closeJournal();
+    }
+
+    @Test
+    public void testJournalCompactionFoldsIntoSnapshot() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        File snapshot = new File(tempFolder.getRoot(), "compact-snapshot.dat");
+        File journal = new File(tempFolder.getRoot(), "compact.journal");
+
+        ch.openJournal(journal, snapshot);
+        ch.assignResidentToBed("M1", ch.getResidents().get(0), "B2");
+        ch.compact().join();
+        ch.moveResident("M1", "B2", "B4");
+        ch.closeJournal();
+
+        assertTrue(snapshot.exists());
+        assertFalse(new File(journal.getPath() + ".1").exists());
+
+        CareHome recovered = CareHome.loadData(snapshot);
+        assertFalse(recovered.getBedRegistry().find("B2").isVacant());
+        recovered.openJournal(journal, snapshot);
+        assertTrue(recovered.getBedRegistry().find("B2").isVacant());
+        assertEquals("R1", recovered.getBedRegistry().find("B4").getResident().getResidentId());
+        recovered.closeJournal();
+    }
+
+    @Test
+    public void testBinarySnapshotRoundTrip() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        SampleData.bootstrapSchedule(ch);
+        ch.getSchedule().setDoctorPresent(DayOfWeek.MONDAY, true);
+        ch.assignResidentToBed("N1", ch.getResidents().get(1), "B3");
+        ch.assignResidentToBed("N1", new Resident("R9", "Walk In", Gender.M, null), "B4");
+        Prescription p = new Prescription("R2");
+        p.addItem(new Medicine("Metformin"), "500mg", LocalTime.of(8, 0));
+        ch.getPrescriptions().put("R2", p);
+
+        File file = tempFolder.newFile("binary.dat");
+        ch.saveData(file);
+
+        CareHome loaded = CareHome.loadData(file);
+        assertEquals(ch.getStaff().size(), loaded.getStaff().size());
+        assertEquals(2, loaded.getResidents().size());
+        assertSame(loaded.getResidents().get(1), loaded.getBedRegistry().find("B3").getResident());
+        assertEquals("R9", loaded.getBedRegistry().find("B4").getResident().getResidentId());
+        assertEquals(ch.getSchedule().getAllShifts().size(), loaded.getSchedule().getAllShifts().size());
+        assertTrue(loaded.getSchedule().isDoctorPresent(DayOfWeek.MONDAY));
+        assertTrue(loaded.getPrescriptions().get("R2").toString().contains("Metformin=500mg @ 08:00"));
+        assertTrue("logs live in the LogStore, not the snapshot", loaded.getLogs().isEmpty());
+
+        // Any other version byte is refused rather than misread
+        for (int version : new int[] {0, SnapshotCodec.VERSION + 1}) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(4);
+                raf.write(version);
+            }
+            assertThrows(IOException.class, () -> CareHome.read(file));
+        }
+    }
+
+    @Test
+    public void testLogStoreRollsSegmentsAndReopens() throws Exception {
+        File dir = tempFolder.newFolder("logstore");
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        try (LogStore store = new LogStore(dir, 4096)) {
+            for (int i = 0; i < 1000; i++) {
+                store.append(LogEntry.note("N" + (i % 4), "Action " + i, millis(start.plusMinutes(i))), i + 1);
+            }
+            assertEquals(1000, store.size());
+            assertTrue(dir.list().length > 1);
+            assertEquals("Action 3", store.get(3).getAction());
+            assertEquals("Action 999", store.get(999).getAction());
+            store.close();
+            assertEquals("Action 999", store.get(999).getAction());
+            assertThrows(IllegalStateException.class, () -> store.append(LogEntry.note("N1", "Late", 0), 1001));
+        }
+
+        try (LogStore reopened = new LogStore(dir, 4096)) {
+            assertEquals(1000, reopened.size());
+            assertEquals(1000, reopened.lastJournalSeq());
+            assertEquals(start.plusMinutes(500), reopened.get(500).getTimestamp());
+            int i = 0;
+            for (LogEntry entry : reopened) {
+                assertEquals("Action " + i++, entry.getAction());
+            }
+            assertEquals(1000, i);
+
+            reopened.append(LogEntry.note("M1", "After reopen", millis(start)), 1001);
+            assertEquals("After reopen", reopened.get(1000).getAction());
+            reopened.clear();
+            assertTrue(reopened.isEmpty());
+        }
+
+        // A torn append (body written, length not) is not read back, and is cleanly overwritten
+        File torn = tempFolder.newFolder("torn");
+        try (LogStore store = new LogStore(torn, 4096)) {
+            store.append(LogEntry.note("N1", "First", millis(start)), 1);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(torn.listFiles()[0], "rw")) {
+            byte[] record = new byte[4 + raf.readInt()];
+            raf.seek(0);
+            raf.readFully(record);
+            raf.seek(record.length + 4);
+            raf.write(record, 4, record.length - 4);
+            raf.write(record);  // as if an older record were left behind it
+        }
+        try (LogStore store = new LogStore(torn, 4096)) {
+            assertEquals(1, store.size());
+            store.append(LogEntry.note("N1", "Again", millis(start)), 2);
+        }
+        try (LogStore store = new LogStore(torn, 4096)) {
+            assertEquals(List.of("First", "Again"), store.stream().map(LogEntry::getAction).toList());
+        }
+    }
+
+    @Test
+    public void testJournalReplaySkipsLogsAlreadyInStore() throws Exception {
+        CareHome ch = new CareHome();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        File snapshot = tempFolder.newFile("logs-snapshot.dat");
+        File journal = new File(tempFolder.getRoot(), "logs.journal");
+        File logDir = tempFolder.newFolder("logs");
+        ch.saveData(snapshot);
+
+        ch.openLogStore(logDir);
+        ch.openJournal(journal, snapshot);
+        ch.assignResidentToBed("N1", ch.getResidents().get(0), "B1");
+        ch.log("N1", "Checked on resident");
+        ch.close();
+
+        CareHome recovered = CareHome.read(snapshot);
+        recovered.openLogStore(logDir);
+        recovered.openJournal(journal, snapshot);
+        assertFalse(recovered.getBedRegistry().find("B1").isVacant());
+        assertEquals(2, recovered.getLogs().size());
+        assertEquals("Checked on resident", recovered.getLogs().get(1).getAction());
+        recovered.close();
+    }
+
+    @Test
+    public void testDutyBitmapMatchesShiftTimes() {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapPeople(ch);
+        Schedule schedule = ch.getSchedule();
+        Staff nurse = ch.findStaff("N3");
+        schedule.assignShift(nurse, new Shift(DayOfWeek.THURSDAY, LocalTime.of(22, 0), LocalTime.of(23, 30)));
+
+        assertFalse(schedule.isOnDuty(nurse, DayOfWeek.THURSDAY, LocalTime.of(21, 59)));
+        assertTrue(schedule.isOnDuty(nurse, DayOfWeek.THURSDAY, LocalTime.of(22, 0)));
+        assertTrue(schedule.isOnDuty(nurse, DayOfWeek.THURSDAY, LocalTime.of(23, 30)));
+        assertFalse(schedule.isOnDuty(nurse, DayOfWeek.THURSDAY, LocalTime.of(23, 31)));
+        assertFalse(schedule.isOnDuty(nurse, DayOfWeek.FRIDAY, LocalTime.of(22, 30)));
+
+        assertTrue(schedule.getOnDuty(DayOfWeek.THURSDAY, LocalTime.of(22, 45)).contains("N3"));
+        assertTrue(ch.getStaffOnDuty(DayOfWeek.THURSDAY, LocalTime.of(22, 45)).contains(nurse));
+    }
+
+    @Test
+    public void testWeekClockAgreesWithLocalDateTime() {
+        ZoneId london = ZoneId.of("Europe/London");
+        WeekClock clock = new WeekClock(Clock.system(london));
+        long start = LocalDateTime.of(2024, 3, 30, 0, 0).atZone(london).toInstant().toEpochMilli();
+        for (long t = start; t < start + 3 * 24 * 3_600_000L; t += 7 * 60_000L + 13_000L) {
+            LocalDateTime local = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(t), london);
+            assertEquals(DutyBitmap.minuteOfWeek(local.getDayOfWeek(), local.toLocalTime()), clock.minuteOfWeek(t));
+        }
+    }
+
+    @Test
+    public void testPrescriptionDutyCheckUsesClock() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        ch.assignResidentToBed("N1", ch.getResidents().get(0), "B1");
+        ch.getSchedule().assignShift(ch.findStaff("D2"), new Shift(DayOfWeek.TUESDAY, LocalTime.of(9, 0), LocalTime.of(17, 0)));
+        ZoneId zone = ZoneId.systemDefault();
+
+        ch.setClock(Clock.fixed(LocalDateTime.of(2024, 6, 4, 10, 15).atZone(zone).toInstant(), zone)); // a Tuesday
+        ch.attachPrescription("D2", "B1", new Prescription("R1"));
+
+        ch.setClock(Clock.fixed(LocalDateTime.of(2024, 6, 4, 18, 0).atZone(zone).toInstant(), zone));
+        assertThrows(NotOnDutyException.class, () -> ch.attachPrescription("D2", "B1", new Prescription("R1")));
+        ch.setClock(Clock.systemDefaultZone());
+    }
+
+    @Test
+    public void testConcurrentMovesNeverLoseOrDuplicateResidents() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapPeople(ch);
+        List<String> bedIds = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            Ward ward = new Ward("CW" + w, "Concurrent " + w);
+            Room room = new Room("CR" + w);
+            ward.addRoom(room);
+            for (int b = 0; b < 6; b++) {
+                room.addBed(new Bed("C" + w + "-" + b));
+                bedIds.add("C" + w + "-" + b);
+            }
+            ch.addWard(ward);
+        }
+        for (int i = 0; i < 12; i++) {
+            ch.assignResidentToBed("M1", new Resident("CR" + i, "Resident " + i, Gender.F, "none"), bedIds.get(i * 2));
+        }
+
+        AtomicInteger moves = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    String from = bedIds.get(random.nextInt(bedIds.size()));
+                    String to = bedIds.get(random.nextInt(bedIds.size()));
+                    try {
+                        ch.moveResident("M1", from, to);
+                        moves.incrementAndGet();
+                    } catch (Exception expected) {
+                        // empty source or occupied target
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<String> seen = new HashSet<>();
+        for (String bedId : bedIds) {
+            Resident r = ch.getBedRegistry().find(bedId).getResident();
+            if (r != null) {
+                assertTrue("Resident in two beds: " + r.getResidentId(), seen.add(r.getResidentId()));
+            }
+        }
+        assertEquals(12, seen.size());
+        assertTrue(moves.get() > 0);
+    }
+
+    @Test
+    public void testConcurrentPrescriptionChangesMatchReplay() throws Exception {
+        CareHome ch = new CareHome();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        ch.assignResidentToBed("N1", ch.getResidents().get(0), "B1");
+        ch.getSchedule().assignShift(ch.findStaff("D2"), new Shift(DayOfWeek.TUESDAY, LocalTime.of(9, 0), LocalTime.of(17, 0)));
+        ZoneId zone = ZoneId.systemDefault();
+        ch.setClock(Clock.fixed(LocalDateTime.of(2024, 6, 4, 10, 15).atZone(zone).toInstant(), zone)); // a Tuesday
+        File snapshot = tempFolder.newFile("rx-snapshot.dat");
+        File journal = new File(tempFolder.getRoot(), "rx.journal");
+        ch.saveData(snapshot);
+        ch.openJournal(journal, snapshot);
+        ch.attachPrescription("D2", "B1", new Prescription("R1"));
+
+        // Attaches replace the prescription while updates and readers work on whichever is current
+        List<Thread> threads = new ArrayList<>();
+        threads.add(Thread.ofPlatform().unstarted(() -> {
+            for (int i = 0; i < 1000; i++) {
+                Prescription fresh = new Prescription("R1");
+                fresh.addItem(new Medicine("Base " + i), "1 tablet", LocalTime.of(8, 0));
+                try {
+                    ch.attachPrescription("D2", "B1", fresh);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }));
+        threads.add(Thread.ofPlatform().unstarted(() -> {
+            for (int i = 0; i < 2000; i++) {
+                try {
+                    ch.updatePrescription("D2", "R1", new Medicine("Extra " + i % 7), i + "mg", LocalTime.of(20, 0));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }));
+        threads.add(Thread.ofPlatform().unstarted(() -> {
+            for (int i = 0; i < 50000; i++) {
+                ch.getPrescriptions().get("R1").getLines();
+            }
+        }));
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (Thread t : threads) {
+            t.setUncaughtExceptionHandler((thread, e) -> failures.add(e));
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(List.of(), failures);
+        String expected = ch.getPrescriptions().get("R1").toString();
+        ch.close();
+
+        CareHome recovered = CareHome.read(snapshot);
+        recovered.openJournal(journal, snapshot);
+        assertEquals(expected, recovered.getPrescriptions().get("R1").toString());
+        recovered.close();
+    }
+
+    @Test
+    public void testFacilityGeneratorIsDeterministic() throws Exception {
+        FacilityGenerator generator = new FacilityGenerator(11)
+                .wards(20, 5, 4)
+                .staff(2, 60, 8)
+                .logs(500, LocalDateTime.of(2024, 1, 1, 0, 0));
+        CareHome first = generator.generate();
+        CareHome second = generator.generate();
+
+        assertEquals(400, first.getBedRegistry().size());
+        assertEquals(70, first.getStaff().size());
+        assertEquals(Role.NURSE, first.findStaff("N60").getRole());
+        assertEquals(500, first.getLogs().size());
+        assertEquals(first.getLogs().get(499).toString(), second.getLogs().get(499).toString());
+
+        ByteArrayOutputStream a = new ByteArrayOutputStream();
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        SnapshotCodec.write(first, Channels.newChannel(a));
+        SnapshotCodec.write(second, Channels.newChannel(b));
+        assertArrayEquals(a.toByteArray(), b.toByteArray());
+        first.getSchedule().checkCompliance();
+    }
+
+    @Test
+    public void testLogEntriesAreTypedAndRenderedOnDemand() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        ch.assignResidentToBed("N1", ch.getResidents().get(0), "B1");
+        ch.moveResident("N1", "B1", "B2");
+
+        LogEntry move = ch.getLogs().get(1);
+        assertEquals(ActionCode.MOVE_RESIDENT, move.getCode());
+        assertEquals("R1", move.getResidentId());
+        assertEquals("B1", move.getBedId());
+        assertEquals("B2", move.getTarget());
+        assertEquals("Moved resident R1 from B1 to B2", move.getAction());
+
+        // Typed entries survive a reopen, their ids shared across decodes
+        File logDir = tempFolder.newFolder("typed-logs");
+        try (LogStore store = new LogStore(logDir, 4096)) {
+            store.append(move, 8);
+        }
+        try (LogStore store = new LogStore(logDir, 4096)) {
+            assertEquals(ActionCode.MOVE_RESIDENT, store.get(0).getCode());
+            assertEquals("B2", store.get(0).getTarget());
+            assertEquals("Moved resident R1 from B1 to B2", store.get(0).getAction());
+            assertSame(store.get(0).getStaffId(), store.get(0).getStaffId());
+            assertEquals(8, store.lastJournalSeq());
+        }
+    }
+
+    @Test
+    public void testLogQueryMatchesFullScan() {
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 0, 0);
+        CareHome home = new FacilityGenerator(5).wards(4, 5, 4).staff(2, 10, 3)
+                .logs(20_000, start).generate();
+        // a few late arrivals stamped before entries already in the log
+        home.getLogs().add(LogEntry.note("N3", "Late entry", millis(start.plusHours(2))));
+        home.getLogs().add(new LogEntry(ActionCode.MOVE_RESIDENT, "N3", "RES7", "B7", "B8", null, millis(start.plusHours(1))));
+
+        List<LogQuery> queries = List.of(
+                new LogQuery().staff("N3"),
+                new LogQuery().staff("N3").between(start.plusHours(1), start.plusHours(3)),
+                new LogQuery().bed("B8").actions(ActionCode.MOVE_RESIDENT),
+                new LogQuery().resident("RES7").actions(ActionCode.VIEW_RESIDENT, ActionCode.ADMINISTER_PRESCRIPTION),
+                new LogQuery().between(start.plusDays(2), start.plusDays(3)),
+                new LogQuery().staff("nobody"));
+        for (LogQuery query : queries) {
+            List<LogEntry> expected = new ArrayList<>();
+            for (LogEntry e : home.getLogs()) {
+                if (query.matches(e)) expected.add(e);
+            }
+            List<String> actual = home.queryLogs(query).map(LogEntry::toString).toList();
+            assertEquals(expected.stream().map(LogEntry::toString).toList(), actual);
+        }
+
+        LogQuery lateNotes = new LogQuery().staff("N3").between(start.plusHours(1), start.plusHours(3)).newestFirst();
+        assertEquals(ActionCode.MOVE_RESIDENT, home.queryLogs(lateNotes.page(0, 1)).findFirst().orElseThrow().getCode());
+        assertEquals(1, home.queryLogs(new LogQuery().bed("B8").between(start.plusHours(1), start.plusHours(1).plusSeconds(1)))
+                .count());
+        assertEquals(5, home.queryLogs(new LogQuery().staff("N3").page(1, 5)).count());
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void testAsyncLogWriterKeepsOrderAndAppliesBackpressure() throws Exception {
+        CareHome home = new CareHome();
+        home.configureLogWriter(16, 1000, AsyncLogWriter.Durability.BUFFERED, AsyncLogWriter.Backpressure.BLOCK);
+        for (int i = 0; i < 1000; i++) {
+            home.log("N1", "Entry " + i);
+        }
+        assertEquals(1000, home.getLogs().size());
+        assertEquals("Entry 999", home.getLogs().get(999).getAction());
+        home.close();
+
+        // The writer thread stalls in its first batch, so no more than the ring's 4 slots can be queued
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        AsyncLogWriter dropping = new AsyncLogWriter(4, 1, AsyncLogWriter.Durability.BUFFERED,
+                AsyncLogWriter.Backpressure.DROP, stallingSink(release, written));
+        for (int i = 0; i < 10; i++) {
+            dropping.publish(LogEntry.note("N1", "Drop " + i, 0), 0);
+        }
+        assertEquals(6, dropping.getDropped());
+        release.countDown();
+        dropping.close();
+        assertEquals(List.of("Drop 0", "Drop 1", "Drop 2", "Drop 3"), written);
+
+        // A caller that finds the ring full waits behind the stalled batch rather than jumping ahead of it
+        CountDownLatch stalled = new CountDownLatch(1);
+        written.clear();
+        CountDownLatch writing = new CountDownLatch(1);
+        AsyncLogWriter.Sink stalling = stallingSink(stalled, written);
+        AsyncLogWriter callerRuns = new AsyncLogWriter(4, 1, AsyncLogWriter.Durability.FLUSHED,
+                AsyncLogWriter.Backpressure.CALLER_RUNS, new AsyncLogWriter.Sink() {
+                    public void write(LogEntry[] entries, long[] seqs, int count) {
+                        writing.countDown();
+                        stalling.write(entries, seqs, count);
+                    }
+
+                    public void force() {
+                    }
+                });
+        callerRuns.publish(LogEntry.note("N1", "Run 0", 0), 0);
+        writing.await();
+        Thread caller = Thread.ofPlatform().start(() -> {
+            for (int i = 1; i < 10; i++) {
+                callerRuns.publish(LogEntry.note("N1", "Run " + i, 0), 0);
+            }
+        });
+        caller.join(200);
+        assertTrue(caller.isAlive());
+        assertTrue(written.isEmpty());
+        stalled.countDown();
+        caller.join();
+        callerRuns.close();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) expected.add("Run " + i);
+        assertEquals(expected, written);
+        assertEquals(0, callerRuns.getDropped());
+
+        // A batch the sink fails on stays queued, and the failure reaches every later caller
+        AsyncLogWriter failing = new AsyncLogWriter(4, 1, AsyncLogWriter.Durability.BUFFERED,
+                AsyncLogWriter.Backpressure.BLOCK, new AsyncLogWriter.Sink() {
+                    public void write(LogEntry[] entries, long[] seqs, int count) {
+                        throw new IllegalStateException("disk full");
+                    }
+
+                    public void force() {
+                    }
+                });
+        failing.publish(LogEntry.note("N1", "Lost", 0), 0);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            assertEquals("disk full", assertThrows(IllegalStateException.class, failing::drain).getCause().getMessage());
+        }
+        assertEquals(1, failing.getPending());
+        assertThrows(IllegalStateException.class, () -> failing.publish(LogEntry.note("N1", "Next", 0), 0));
+        assertThrows(IllegalStateException.class, failing::close);
+
+        // An entry published while the writer closes is either written or refused, never lost
+        for (int round = 0; round < 20; round++) {
+            AtomicInteger accepted = new AtomicInteger();
+            AtomicInteger stored = new AtomicInteger();
+            AsyncLogWriter closing = new AsyncLogWriter(64, 1, AsyncLogWriter.Durability.BUFFERED,
+                    AsyncLogWriter.Backpressure.BLOCK, new AsyncLogWriter.Sink() {
+                        public void write(LogEntry[] entries, long[] seqs, int count) {
+                            stored.addAndGet(count);
+                        }
+
+                        public void force() {
+                        }
+                    });
+            List<Thread> publishers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                publishers.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        while (true) {
+                            closing.publish(LogEntry.note("N1", "Racing", 0), 0);
+                            accepted.incrementAndGet();
+                        }
+                    } catch (IllegalStateException closed) {
+                        // refused once the writer closed
+                    }
+                }));
+            }
+            Thread.sleep(1);
+            closing.close();
+            for (Thread t : publishers) {
+                t.join();
+            }
+            assertEquals(accepted.get(), stored.get());
+        }
+
+        // The store is the audit trail, so a home will not drop its entries
+        CareHome audited = new CareHome();
+        assertThrows(IllegalArgumentException.class, () -> audited.configureLogWriter(16, 1,
+                AsyncLogWriter.Durability.BUFFERED, AsyncLogWriter.Backpressure.DROP));
+        audited.setLogSink(stallingSink(new CountDownLatch(0), new ArrayList<>()));
+        audited.configureLogWriter(16, 1, AsyncLogWriter.Durability.BUFFERED, AsyncLogWriter.Backpressure.DROP);
+        assertEquals(0, audited.getDroppedLogEntries());
+        audited.close();
+    }
+
+    @Test
+    public void testMedicationRoundsFollowPrescriptionsAndMoves() throws Exception {
+        CareHome home = new FacilityGenerator(9).wards(3, 4, 2).occupancy(0.5).staff(1, 2, 1).generate();
+        MedicationRounds rounds = home.getMedicationRounds();
+        for (Ward ward : home.getWards()) {
+            List<String[]> expected = new ArrayList<>();
+            for (Room room : ward.getRooms()) {
+                for (Bed bed : room.getBeds()) {
+                    Prescription p = bed.getResident() == null ? null : home.getPrescriptions().get(bed.getResident().getResidentId());
+                    if (p == null) continue;
+                    p.getItems().forEach((med, item) -> {
+                        String[] parts = item.split(" @ ");
+                        if (parts[1].compareTo("11:00") >= 0 && parts[1].compareTo("13:00") < 0) {
+                            expected.add(new String[]{parts[1], p.getResidentId(), parts[1] + " " + med + " " + parts[0]
+                                    + " for " + p.getResidentId() + " (" + bed.getBedId() + ", " + ward.getWardId() + ")"});
+                        }
+                    });
+                }
+            }
+            expected.sort(Comparator.<String[], String>comparing(e -> e[0]).thenComparing(e -> e[1]));
+            assertEquals(expected.stream().map(e -> e[2]).toList(),
+                    rounds.dueWithin(ward.getWardId(), LocalTime.of(11, 0), Duration.ofHours(2)).stream()
+                            .map(Object::toString).toList());
+        }
+
+        List<String> vacant = new ArrayList<>();
+        for (Ward ward : home.getWards()) {
+            for (Room room : ward.getRooms()) {
+                for (Bed bed : room.getBeds()) {
+                    if (bed.isVacant()) vacant.add(ward.getWardId() + ":" + bed.getBedId());
+                }
+            }
+        }
+        String w1Bed = vacant.stream().filter(b -> b.startsWith("W1:")).findFirst().orElseThrow().substring(3);
+        String w3Bed = vacant.stream().filter(b -> b.startsWith("W3:")).findFirst().orElseThrow().substring(3);
+
+        ZoneId zone = ZoneId.systemDefault();
+        home.setClock(Clock.fixed(LocalDateTime.of(2024, 6, 4, 10, 15).atZone(zone).toInstant(), zone)); // a Tuesday
+        home.getSchedule().assignShift(home.findStaff("D1"), new Shift(DayOfWeek.TUESDAY, LocalTime.of(9, 0), LocalTime.of(17, 0)));
+        home.assignResidentToBed("N1", new Resident("RX", "Round Test", Gender.F, "None"), w1Bed);
+        Prescription p = new Prescription("RX");
+        p.addItem(new Medicine("Insulin"), "10 units", LocalTime.of(23, 30));
+        p.addItem(new Medicine("Warfarin"), "5mg", LocalTime.of(0, 15));
+        home.attachPrescription("D1", w1Bed, p);
+
+        assertEquals("23:30 Insulin 10 units for RX (" + w1Bed + ", W1)",
+                rounds.nextDue("W1", LocalTime.of(22, 30)).orElseThrow().toString());
+        assertEquals(List.of("23:30", "00:15"), rounds.dueWithin("W1", LocalTime.of(23, 0), Duration.ofMinutes(90)).stream()
+                .map(d -> d.getTime().toString()).toList());
+
+        home.updatePrescription("D1", "RX", new Medicine("Paracetamol"), "500mg", LocalTime.of(10, 0));
+        List<MedicationRounds.DueDose> duringShift = rounds.dueForStaff(home.getSchedule(), home.findStaff("D1"),
+                DayOfWeek.TUESDAY, LocalTime.of(7, 0), Duration.ofHours(4));
+        assertEquals(List.of("RX Paracetamol"), duringShift.stream().map(d -> d.getResidentId() + " " + d.getMedicine()).toList());
+
+        home.moveResident("N1", w1Bed, w3Bed);
+        assertTrue(rounds.dueWithin("W1", LocalTime.MIDNIGHT, Duration.ofDays(1)).stream()
+                .noneMatch(d -> d.getResidentId().equals("RX")));
+        assertEquals("00:15 Warfarin 5mg for RX (" + w3Bed + ", W3)",
+                rounds.upcoming("W3", LocalTime.of(23, 45)).findFirst().orElseThrow().toString());
+        assertEquals(3, rounds.dueWithin("W3", LocalTime.MIDNIGHT, Duration.ofDays(1)).stream()
+                .filter(d -> d.getResidentId().equals("RX")).count());
+        home.close();
+    }
+
+    @Test
+    public void testPrescriptionLinesAreStructuredAndBatchUpdated() throws Exception {
+        assertEquals(new Medicine("Paracetamol"), new Medicine("  paracetamol "));
+        PrescriptionLine line = new PrescriptionLine(new Medicine("Salbutamol"), "2 puffs", LocalTime.of(8, 0));
+        assertEquals(0, new BigDecimal("2").compareTo(line.getQuantity()));
+        assertEquals("puffs", line.getUnit());
+        assertEquals("mg", new PrescriptionLine(new Medicine("Warfarin"), "2.5mg", LocalTime.NOON).getUnit());
+        assertNull(new PrescriptionLine(new Medicine("Cream"), "as directed", LocalTime.NOON).getQuantity());
+
+        CareHome ch = new CareHome();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        File snapshot = tempFolder.newFile("lines-snapshot.dat");
+        File journal = new File(tempFolder.getRoot(), "lines.journal");
+        ch.saveData(snapshot);
+        ch.openJournal(journal, snapshot);
+        ch.assignResidentToBed("N1", ch.getResidents().get(0), "B1");
+        ch.getSchedule().assignShift(ch.findStaff("D2"), new Shift(DayOfWeek.TUESDAY, LocalTime.of(9, 0), LocalTime.of(17, 0)));
+        ZoneId zone = ZoneId.systemDefault();
+        ch.setClock(Clock.fixed(LocalDateTime.of(2024, 6, 4, 10, 15).atZone(zone).toInstant(), zone)); // a Tuesday
+        ch.attachPrescription("D2", "B1", new Prescription("R1"));
+
+        ch.updatePrescription("D2", "R1", new Medicine("Paracetamol"), "500mg", LocalTime.of(8, 0));
+        ch.updatePrescription("D2", "R1", new Medicine("paracetamol"), "500mg", LocalTime.of(14, 0));
+        int logsBefore = ch.getLogs().size();
+        ch.updatePrescription("D2", "R1", List.of(
+                new PrescriptionLine(new Medicine("Metformin"), "500mg", LocalTime.of(8, 0)),
+                new PrescriptionLine(new Medicine("Paracetamol"), "1g", LocalTime.of(20, 0)),
+                new PrescriptionLine(new Medicine("Insulin"), "10 units", LocalTime.of(22, 0))));
+        ch.setClock(Clock.systemDefaultZone());
+        assertEquals(logsBefore + 1, ch.getLogs().size());
+        assertEquals("Updated prescription for resident R1 with Metformin, Paracetamol, Insulin",
+                ch.getLogs().get(logsBefore).getAction());
+
+        List<PrescriptionLine> lines = ch.getPrescriptions().get("R1").getLines();
+        assertEquals(List.of("Paracetamol 1g @ 20:00", "Metformin 500mg @ 08:00", "Insulin 10 units @ 22:00"),
+                lines.stream().map(PrescriptionLine::toString).toList());
+        String expected = ch.getPrescriptions().get("R1").toString();
+        ch.close();
+
+        CareHome recovered = CareHome.read(snapshot);
+        recovered.openJournal(journal, snapshot);
+        assertEquals(expected, recovered.getPrescriptions().get("R1").toString());
+        recovered.close();
+    }
+
+    @Test
+    public void testBulkOperationsAreAllOrNothingAndReplay() throws Exception {
+        CareHome ch = new CareHome();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        File snapshot = tempFolder.newFile("bulk-snapshot.dat");
+        File journal = new File(tempFolder.getRoot(), "bulk.journal");
+        ch.saveData(snapshot);
+        ch.openJournal(journal, snapshot);
+
+        Resident r3 = new Resident("R3", "Ada Khan", Gender.F, null);
+        Resident r4 = new Resident("R4", "Li Wong", Gender.M, null);
+        assertThrows(IllegalArgumentException.class, () -> ch.admitResidents("N1", List.of(r3, new Resident("R1", "Dup", Gender.M, null))));
+        assertEquals(2, ch.getResidents().size());
+        ch.admitResidents("N1", List.of(r3, r4));
+        assertEquals(4, ch.getResidents().size());
+
+        Map<String, Resident> beds = new LinkedHashMap<>();
+        beds.put("B1", ch.getResidents().get(0));
+        beds.put("B2", r3);
+        ch.assignResidentsToBeds("N1", beds);
+        Map<String, Resident> clash = new LinkedHashMap<>();
+        clash.put("B3", r4);
+        clash.put("B2", ch.getResidents().get(1));
+        assertThrows(Exception.class, () -> ch.assignResidentsToBeds("N1", clash));
+        assertTrue(ch.getBedRegistry().find("B3").isVacant());
+
+        Map<String, String> swap = new LinkedHashMap<>();
+        swap.put("B1", "B2");
+        swap.put("B2", "B1");
+        ch.moveResidents("N1", swap);
+        assertEquals("R3", ch.getBedRegistry().find("B1").getResident().getResidentId());
+        assertEquals("R1", ch.getBedRegistry().find("B2").getResident().getResidentId());
+        assertThrows(UnauthorizedActionException.class, () -> ch.moveResidents("D1", Map.of("B1", "B4")));
+
+        int shifts = ch.getSchedule().getShiftsForStaff(ch.findStaff("N1")).size();
+        ch.assignShifts("M1", Map.of("N1", List.of(new Shift(DayOfWeek.MONDAY, LocalTime.of(8, 0), LocalTime.of(16, 0)),
+                new Shift(DayOfWeek.TUESDAY, LocalTime.of(8, 0), LocalTime.of(16, 0)))));
+        assertThrows(Exception.class, () -> ch.assignShifts("M1", Map.of("nobody", List.of(new Shift(DayOfWeek.MONDAY,
+                LocalTime.of(8, 0), LocalTime.of(16, 0))))));
+        assertEquals(shifts + 2, ch.getSchedule().getShiftsForStaff(ch.findStaff("N1")).size());
+
+        List<ActionCode> codes = ch.getLogs().stream().map(LogEntry::getCode).toList();
+        assertEquals(List.of(ActionCode.ADMIT_RESIDENTS, ActionCode.ASSIGN_BEDS, ActionCode.MOVE_RESIDENTS,
+                ActionCode.ASSIGN_SHIFTS), codes);
+        assertEquals("Moved 2 residents: R1 B1->B2, R3 B2->B1", ch.getLogs().get(2).getAction());
+        assertEquals(List.of(ActionCode.ADMIT_RESIDENTS, ActionCode.ASSIGN_BEDS, ActionCode.MOVE_RESIDENTS),
+                ch.queryLogs(new LogQuery().resident("R3")).map(LogEntry::getCode).toList());
+        assertEquals(List.of(ActionCode.ASSIGN_BEDS, ActionCode.MOVE_RESIDENTS),
+                ch.queryLogs(new LogQuery().bed("B1")).map(LogEntry::getCode).toList());
+        List<Resident> many = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            many.add(new Resident("BULK" + i, "Bulk Admission", Gender.F, null));
+        }
+        ch.admitResidents("N1", many);
+        LogEntry admitted = ch.queryLogs(new LogQuery().resident("BULK499")).findFirst().orElseThrow();
+        assertEquals(500, admitted.getItems().size());
+        assertTrue(admitted.getAction().endsWith("BULK498, BULK499"));
+        codes = ch.getLogs().stream().map(LogEntry::getCode).toList();
+        ch.close();
+
+        CareHome recovered = CareHome.read(snapshot);
+        recovered.openJournal(journal, snapshot);
+        assertEquals(504, recovered.getResidents().size());
+        assertEquals("R3", recovered.getBedRegistry().find("B1").getResident().getResidentId());
+        assertEquals("R1", recovered.getBedRegistry().find("B2").getResident().getResidentId());
+        assertEquals(shifts + 2, recovered.getSchedule().getShiftsForStaff(recovered.findStaff("N1")).size());
+        assertEquals(codes, recovered.getLogs().stream().map(LogEntry::getCode).toList());
+        assertEquals(500, recovered.queryLogs(new LogQuery().resident("BULK0")).findFirst().orElseThrow().getItems().size());
+        recovered.close();
+    }
+
+    @Test
+    public void testStaffSessionCachesDutyWindowUntilRosterChanges() throws Exception {
+        DutyBitmap bitmap = new DutyBitmap();
+        bitmap.add(new Shift(DayOfWeek.SUNDAY, LocalTime.of(22, 0), LocalTime.of(23, 59)));
+        bitmap.add(new Shift(DayOfWeek.MONDAY, LocalTime.of(0, 0), LocalTime.of(2, 0)));
+        bitmap.add(new Shift(DayOfWeek.WEDNESDAY, LocalTime.of(9, 30), LocalTime.of(17, 45)));
+        for (int m = 0; m < DutyBitmap.MINUTES_PER_WEEK; m++) {
+            int run = 0;
+            while (run < DutyBitmap.MINUTES_PER_WEEK && bitmap.get((m + run) % DutyBitmap.MINUTES_PER_WEEK)) run++;
+            assertEquals("minute " + m, run, bitmap.runFrom(m));
+        }
+
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        ch.assignResidentToBed("N1", ch.getResidents().get(0), "B1");
+        ch.getSchedule().assignShift(ch.findStaff("D2"), new Shift(DayOfWeek.TUESDAY, LocalTime.of(9, 0), LocalTime.of(17, 0)));
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime tuesday = LocalDateTime.of(2024, 6, 4, 10, 15);
+        ch.setClock(Clock.fixed(tuesday.atZone(zone).toInstant(), zone));
+
+        StaffSession doctor = ch.openSession("D2");
+        ch.attachPrescription(doctor, "B1", new Prescription("R1"));
+        assertEquals(millis(tuesday.withHour(17).withMinute(1)), doctor.getValidUntil());
+        assertThrows(UnauthorizedActionException.class, () -> ch.attachPrescription(ch.openSession("N1"), "B1", new Prescription("R1")));
+
+        // A roster change is picked up on the next check, not when the window ends
+        ch.getSchedule().assignShift(ch.findStaff("D2"), new Shift(DayOfWeek.TUESDAY, LocalTime.of(17, 1), LocalTime.of(19, 0)));
+        ch.updatePrescription(doctor, "R1", new Medicine("Metformin"), "500mg", LocalTime.of(8, 0));
+        assertEquals(millis(tuesday.withHour(19).withMinute(1)), doctor.getValidUntil());
+
+        ch.setClock(Clock.fixed(tuesday.withHour(19).withMinute(30).atZone(zone).toInstant(), zone));
+        assertThrows(NotOnDutyException.class, () -> ch.updatePrescription(doctor, "R1", new Medicine("Metformin"), "1g", LocalTime.of(8, 0)));
+        ch.setClock(Clock.systemDefaultZone());
+    }
+
+    @Test
+    public void testBatchRunnerRunsScriptAndReportsFailures() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        String script = String.join("\n",
+                "# admissions",
+                "add-resident R10 \"Mary Jones\" F \"Heart failure\"",
+                "assign N1 R10 B3",
+                "",
+                "assign N1 R10 B3",
+                "move N1 B3 B4",
+                "teleport N1 B4",
+                "log N1 \"Round complete\"");
+        StringWriter output = new StringWriter();
+        int failures = new BatchRunner(ch, new PrintWriter(output)).run(new StringReader(script));
+
+        assertEquals(2, failures);
+        assertEquals("R10", ch.getBedRegistry().find("B4").getResident().getResidentId());
+        assertEquals("Round complete", ch.getLogs().get(ch.getLogs().size() - 1).getAction());
+        String[] lines = output.toString().split("\\R");
+        assertEquals(3, lines.length);
+        assertEquals("line 5: assign N1 R10 B3 -> ERROR: Bed B3 is already occupied.", lines[0]);
+        assertTrue(lines[1].startsWith("line 7: teleport N1 B4 -> ERROR: Unknown command"));
+        assertTrue(lines[2].startsWith("6 commands, 2 failed, "));
+        assertEquals(List.of("a", "b c", "", "d"), BatchRunner.tokens("a \"b c\" \"\" d"));
+    }
+
+    @Test
+    public void testFacilityImporterLoadsCsvAndJsonlAndReportsBadRows() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        File dir = tempFolder.newFolder("import");
+        File beds = new File(dir, "beds.csv");
+        Files.writeString(beds.toPath(), String.join("\n",
+                "ward,ward_name,room,bed",
+                "IW1,\"East, upper\",IR1,IB1",
+                "IW1,\"East, upper\",IR1,IB2",
+                "IW2,,IR2,IB3",
+                "IW2,,IR2,IB3",
+                "IW2,,IR3"));
+        File staff = new File(dir, "staff.jsonl");
+        Files.writeString(staff.toPath(), String.join("\n",
+                "{\"role\": \"nurse\", \"id\": \"IN1\", \"name\": \"Ann \\\"Nan\\\" Lee\", \"gender\": \"F\","
+                        + " \"username\": \"ilee\", \"password\": \"pw\"}",
+                "{\"role\": \"surgeon\", \"id\": \"IN2\", \"name\": \"X\", \"gender\": \"M\","
+                        + " \"username\": \"ix\", \"password\": \"pw\"}"));
+        File residents = new File(dir, "residents.csv");
+        Files.writeString(residents.toPath(), "id,name,gender,condition,bed\nIR10,Joe Bloggs,M,,IB1\nIR11,Jo Bloggs,F,Flu,IB1\n");
+        File shifts = new File(dir, "shifts.csv");
+        Files.writeString(shifts.toPath(), "staff,day,start,end\nIN1,monday,08:00,16:00\nIN9,monday,08:00,16:00\n");
+        File prescriptions = new File(dir, "prescriptions.jsonl");
+        Files.writeString(prescriptions.toPath(),
+                "{\"resident\": \"IR10\", \"medicine\": \"Paracetamol\", \"dose\": \"500 mg\", \"time\": \"08:00\"}\n");
+
+        FacilityImporter importer = new FacilityImporter(ch);
+        FacilityImporter.Report bedReport = importer.importFile(FacilityImporter.Kind.BEDS, beds.toPath());
+        assertEquals(5, bedReport.getRows());
+        assertEquals(2, bedReport.getFailed());
+        assertEquals(List.of("line 5: Duplicate bed id: IB3", "line 6: Missing bed"), bedReport.getErrors());
+        assertEquals("line 2: No enum constant app.Role.SURGEON",
+                importer.importFile(FacilityImporter.Kind.STAFF, staff.toPath()).getErrors().get(0));
+        assertEquals(1, importer.importFile(FacilityImporter.Kind.RESIDENTS, residents.toPath()).getFailed());
+        assertEquals(1, importer.importFile(FacilityImporter.Kind.SHIFTS, shifts.toPath()).getFailed());
+        assertEquals(0, importer.importFile(FacilityImporter.Kind.PRESCRIPTIONS, prescriptions.toPath()).getFailed());
+        assertNull(ch.getBedRegistry().find("IB1"));  // nothing reaches the home until finish
+
+        importer.finish();
+        assertEquals(2, ch.getWards().size());
+        assertEquals("East, upper", ch.getWards().get(0).getWardName());
+        assertEquals("IR10", ch.getBedRegistry().find("IB1").getResident().getResidentId());
+        assertEquals("Ann \"Nan\" Lee", ch.findStaff("IN1").getName());
+        assertEquals(1, ch.getResidents().size());
+        assertTrue(ch.getSchedule().isOnDuty(ch.findStaff("IN1"), DayOfWeek.MONDAY, LocalTime.of(9, 0)));
+        assertEquals(1, ch.getMedicationRounds().dueWithin("IW1", LocalTime.of(7, 30), Duration.ofHours(1)).size());
+
+        ch.openJournal(new File(dir, "journal.dat"), new File(dir, "snapshot.dat"));
+        try {
+            new FacilityImporter(ch);
+            fail("Importing into a journaling home should be refused");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testOccupancyCountersFollowBedsAndResidents() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);
+        SampleData.bootstrapPeople(ch);
+        Ward east = new Ward("W2", "East");
+        Room room = new Room("E1");
+        room.addBed(new Bed("B5"));
+        east.addRoom(room);
+        ch.addWard(east);
+        Resident peter = ch.getResidents().get(0);
+        Resident naman = ch.getResidents().get(1);
+
+        ch.assignResidentToBed("N1", peter, "B1");
+        ch.assignResidentToBed("N1", naman, "B2");
+        Ward general = ch.getWards().get(0);
+        assertEquals(5, ch.getOccupancy().getBeds());
+        assertEquals(2, ch.getOccupancy().getOccupied());
+        assertEquals(1, ch.getOccupancy().getOccupied(Gender.F));
+        assertEquals(0, general.getRooms().get(0).getOccupancy().getVacant());
+        assertNull(general.getRooms().get(0).getVacantBed());
+
+        ch.moveResident("N1", "B2", "B5");
+        assertEquals(1, general.getOccupancy().getOccupied());
+        assertEquals(1, east.getOccupancy().getOccupied(Gender.F));
+        ch.moveResidents("N1", Map.of("B1", "B5", "B5", "B1"));
+        assertEquals(1, east.getOccupancy().getOccupied(Gender.M));
+        assertEquals(0, east.getOccupancy().getOccupied(Gender.F));
+        assertEquals("1/1 beds occupied (M 1, F 0), 0 vacant", east.getOccupancy().toString());
+
+        // Removing an occupied bed, or a whole ward, takes its counts with it
+        general.getRooms().get(0).getBeds().remove(0);
+        assertEquals(4, ch.getOccupancy().getBeds());
+        assertEquals(1, ch.getOccupancy().getOccupied());
+        ch.getWards().remove(east);
+        assertEquals(3, ch.getOccupancy().getBeds());
+        assertEquals(0, ch.getOccupancy().getOccupied());
+        assertEquals(1, east.getOccupancy().getOccupied());
+    }
+
+    @Test
+    public void testBedAllocatorKeepsRoomsSingleGenderAndFillsBatches() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        SampleData.bootstrapBeds(ch);  // W1: R1 (B1, B2), R2 (B3, B4)
+        SampleData.bootstrapPeople(ch);
+        Ward east = new Ward("W2", "East");
+        Room room = new Room("E1");
+        room.addBed(new Bed("B5"));
+        room.addBed(new Bed("B6"));
+        east.addRoom(room);
+        ch.addWard(east);
+        Resident peter = ch.getResidents().get(0);
+        Resident naman = ch.getResidents().get(1);
+
+        assertEquals("B5", ch.allocateBed("N1", new BedAllocator.Request(peter).ward("W2")).getBedId());
+        // Her preferred room-mate's room is a men's room now, so she opens the first empty room
+        assertEquals("B1", ch.allocateBed("N1", new BedAllocator.Request(naman).nextTo("B5")).getBedId());
+
+        Resident sam = new Resident("R3", "Sam", Gender.M, null);
+        Resident ann = new Resident("R4", "Ann", Gender.F, null);
+        Resident bob = new Resident("R5", "Bob", Gender.M, null);
+        Resident tom = new Resident("R6", "Tom", Gender.M, null);
+        Resident eve = new Resident("R7", "Eve", Gender.F, null);
+        ch.admitResidents("N1", List.of(sam, ann, bob, tom, eve));
+        List<BedAllocator.Request> batch = new ArrayList<>(List.of(
+                new BedAllocator.Request(bob).group("brothers"),
+                new BedAllocator.Request(sam).nextTo("B5"),
+                new BedAllocator.Request(ann),
+                new BedAllocator.Request(tom).group("brothers"),
+                new BedAllocator.Request(eve)));
+        try {
+            ch.allocateBeds("N1", batch);
+            fail("Eve has no bed left, so nobody should be placed");
+        } catch (Exception expected) {
+            assertTrue(expected.getMessage().contains("R7"));
+        }
+        assertEquals(2, ch.getOccupancy().getOccupied());
+
+        batch.remove(4);
+        Map<String, String> placed = ch.allocateBeds("N1", batch);
+        assertEquals(Map.of("R5", "B3", "R3", "B6", "R4", "B2", "R6", "B4"), placed);
+        assertEquals(0, ch.getOccupancy().getVacant());
+        assertNull(ch.getBedAllocator().choose(new BedAllocator.Request(eve)));
+
+        // Beds freed by a move are offered again, under the room's new make-up
+        ch.moveResidents("N1", Map.of("B3", "B5", "B5", "B3"));
+        ch.getWards().get(0).getRooms().get(0).getBeds().remove(0);  // naman's bed goes, R1 is all Ann's
+        assertNull(ch.getBedAllocator().choose(new BedAllocator.Request(eve)));
+        Bed b2 = ch.getBedRegistry().find("B2");
+        b2.getRoom().addBed(new Bed("B7"));
+        assertEquals("B7", ch.getBedAllocator().choose(new BedAllocator.Request(eve)).getBedId());
+        assertNull(ch.getBedAllocator().choose(new BedAllocator.Request(tom).nextTo("B2")));
+    }
+
+    @Test
+    public void testRosterGeneratorCoversSlotsWithinTheRules() throws Exception {
+        CareHome ch = CareHome.getInstance();
+        ch.addStaff(new Manager("RM1", "Rota Manager", Gender.F, "rm1", "pass"));
+        Set<String> ids = new HashSet<>();
+        for (int i = 1; i <= 10; i++) {
+            ch.addStaff(new Nurse("RN" + i, "Nurse " + i, Gender.F, "rn" + i, "pass"));
+            ids.add("RN" + i);
+        }
+        ch.addStaff(new Doctor("RD1", "Doctor 1", Gender.M, "rd1", "pass"));
+        ch.addStaff(new Doctor("RD2", "Doctor 2", Gender.M, "rd2", "pass"));
+        ids.addAll(List.of("RD1", "RD2"));
+        ch.getSchedule().assignShift(ch.findStaff("RN1"), new Shift(DayOfWeek.MONDAY, LocalTime.of(8, 0), LocalTime.of(16, 0)));
+
+        RosterGenerator.Roster roster = new RosterGenerator(ch.getStaff(), ch.getSchedule()).generate();
+        assertEquals(List.of(), roster.getShortfalls());
+        assertEquals(7 * 2 * 2 - 1 + 7, roster.getShiftCount());  // RN1's Monday shift already covers one slot
+        List<Integer> nurseMinutes = new ArrayList<>();
+        roster.getMinutes().forEach((id, minutes) -> {
+            if (id.startsWith("RN")) nurseMinutes.add(minutes);
+        });
+        assertTrue(Collections.max(nurseMinutes) - Collections.min(nurseMinutes) <= 8 * 60);
+
+        ch.assignShifts("RM1", roster.getShifts());
+        assertTrue(ch.getComplianceReport().getViolations().stream().noneMatch(v -> ids.contains(v.getStaffId())));
+        for (DayOfWeek day : DayOfWeek.values()) {
+            for (LocalTime t : List.of(LocalTime.of(8, 30), LocalTime.of(20, 0))) {
+                long nurses = ch.getStaffOnDuty(day, t).stream().filter(s -> ids.contains(s.getStaffId())).count();
+                assertTrue(day + " " + t, nurses >= 2);
+            }
+            assertTrue(ch.getStaffOnDuty(day, LocalTime.of(9, 30)).stream().anyMatch(s -> s.getStaffId().startsWith("RD")));
+        }
+
+        // Too few nurses: the rules still hold and the gaps are reported
+        RosterGenerator.Roster thin = new RosterGenerator(List.of(new Nurse("RN99", "Solo", Gender.F, "rn99", "p")),
+                new Schedule()).slot(Role.NURSE, LocalTime.of(8, 0), LocalTime.of(16, 0), 1).generate();
+        assertEquals(6, thin.getShiftCount());  // 48 hours
+        assertEquals(List.of("SUNDAY NURSE 08:00-16:00: 1 short"), thin.getShortfalls());
+    }
+
+    @Test
+    public void testCoverageAnalyzerCountsHeadsAndFindsGaps() {
+        Schedule schedule = new Schedule();
+        Map<String, Role> roles = Map.of("CN1", Role.NURSE, "CN2", Role.NURSE, "CD1", Role.DOCTOR);
+        schedule.setRoleLookup(roles::get);
+        schedule.addShift("CN1", new Shift(DayOfWeek.MONDAY, LocalTime.of(0, 0), LocalTime.of(8, 0)));
+        schedule.addShift("CN2", new Shift(DayOfWeek.MONDAY, LocalTime.of(6, 0), LocalTime.of(14, 0)));
+        schedule.addShift("CN1", new Shift(DayOfWeek.SUNDAY, LocalTime.of(16, 0), LocalTime.of(23, 59)));
+        schedule.addShift("CX1", new Shift(DayOfWeek.MONDAY, LocalTime.of(7, 0), LocalTime.of(7, 30)));  // unknown role
+        schedule.addShift("CN2", new Shift(DayOfWeek.TUESDAY, LocalTime.of(10, 0), LocalTime.of(9, 0)));  // never on duty
+
+        CoverageAnalyzer coverage = schedule.getCoverage();
+        assertEquals(2, coverage.headCount(Role.NURSE, DayOfWeek.MONDAY, LocalTime.of(8, 0)));  // ends are inclusive
+        assertEquals(1, coverage.headCount(Role.NURSE, DayOfWeek.MONDAY, LocalTime.of(8, 1)));
+        assertEquals(3, coverage.headCount(null, DayOfWeek.MONDAY, LocalTime.of(7, 15)));
+        assertEquals(List.of("CN1", "CN2", "CX1"), coverage.onDuty(DayOfWeek.MONDAY, LocalTime.of(7, 15)));
+        assertEquals(List.of(), coverage.onDuty(DayOfWeek.TUESDAY, LocalTime.of(9, 30)));
+        for (DayOfWeek day : DayOfWeek.values()) {
+            for (int minute = 0; minute < DutyBitmap.MINUTES_PER_DAY; minute += 7) {
+                LocalTime t = LocalTime.of(minute / 60, minute % 60);
+                assertEquals(day + " " + t, new HashSet<>(schedule.getOnDuty(day, t)), new HashSet<>(coverage.onDuty(day, t)));
+            }
+        }
+
+        List<CoverageAnalyzer.Window> gaps = coverage.gaps(Role.NURSE);
+        assertEquals(1, gaps.size());
+        assertEquals("MONDAY 14:01 - SUNDAY 15:59 (0 on duty)", gaps.get(0).toString());
+        List<CoverageAnalyzer.Window> thin = coverage.understaffed(Role.NURSE, 2);
+        assertEquals(2, thin.size());
+        assertEquals("MONDAY 00:00 - MONDAY 05:59 (1 on duty)", thin.get(0).toString());
+        assertEquals(DutyBitmap.MINUTES_PER_WEEK - 1, thin.get(1).to());
+        int[] hourly = coverage.headCounts(Role.NURSE, 60);
+        assertEquals(168, hourly.length);
+        assertEquals(2, hourly[6]);
+        assertEquals(1, hourly[8]);  // the fewest in the hour, though two are on at 08:00
+        assertThrows(IllegalArgumentException.class, () -> coverage.headCounts(Role.NURSE, 11));
+
+        // Doctor presence follows doctor shifts as well as the flag, but only the flag is saved
+        assertFalse(schedule.isDoctorPresent(DayOfWeek.WEDNESDAY));
+        schedule.addShift("CD1", new Shift(DayOfWeek.WEDNESDAY, LocalTime.of(9, 0), LocalTime.of(10, 0)));
+        assertNotSame(coverage, schedule.getCoverage());
+        assertTrue(schedule.isDoctorPresent(DayOfWeek.WEDNESDAY));
+        assertFalse(schedule.isDoctorMarkedPresent(DayOfWeek.WEDNESDAY));
+        assertFalse(schedule.isDoctorPresent(DayOfWeek.THURSDAY));
+        assertEquals(0, schedule.getCoverage().headCount(Role.DOCTOR, DayOfWeek.WEDNESDAY, LocalTime.of(10, 1)));
+    }
+
+    @Test
+    public void testFacilityRegistryKeepsHomesApartAndFansOut() throws Exception {
+        File root = tempFolder.newFolder("group");
+        CareHome singleton = CareHome.getInstance();
+        try (FacilityRegistry registry = new FacilityRegistry(root, 2)) {
+            CareHome north = registry.open("north");
+            CareHome south = registry.open("south");
+            assertNotSame(north, south);
+            assertSame(north, registry.open("north"));
+            for (CareHome home : List.of(north, south)) {
+                SampleData.bootstrapBeds(home);
+                SampleData.bootstrapPeople(home);
+            }
+            north.assignResidentToBed("N1", north.getResidents().get(0), "B1");  // same ids, separate homes
+            south.assignResidentToBed("N1", south.getResidents().get(0), "B1");
+            south.assignResidentToBed("N1", south.getResidents().get(1), "B3");
+            north.getSchedule().assignShift(north.findStaff("N2"), new Shift(DayOfWeek.MONDAY, LocalTime.of(0, 0), LocalTime.of(10, 0)));
+
+            assertEquals(3, registry.getOccupancy().getOccupied());
+            assertEquals(8, registry.getOccupancy().getBeds());
+            assertEquals(2, registry.getOccupancyByFacility().get("south").getOccupied());
+            Map<String, ComplianceReport> reports = registry.getComplianceReports();
+            assertEquals(List.of("north", "south"), new ArrayList<>(reports.keySet()));
+            assertFalse(reports.get("north").isCompliant());
+            assertTrue(reports.get("south").isCompliant());
+            assertSame(singleton, CareHome.getInstance());
+            assertTrue(singleton.getStaff().isEmpty());
+
+            assertThrows(IllegalArgumentException.class, () -> registry.open("../north"));
+            assertThrows(IllegalArgumentException.class, () -> registry.add("north", new CareHome()));
+            assertThrows(NoSuchElementException.class, () -> registry.get("east"));
+            // One facility failing does not stop the others; its error comes back afterwards
+            Set<String> ran = Collections.synchronizedSet(new HashSet<>());
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> registry.forEach((id, home) -> {
+                ran.add(id);
+                if (id.equals("north")) throw new IllegalStateException("north failed");
+                return id;
+            }));
+            assertEquals("north failed", e.getMessage());
+            assertEquals(Set.of("north", "south"), ran);
+
+            registry.saveAll();
+            Resident late = new Resident("R3", "Late Arrival", Gender.F, null);
+            south.addResident(late);
+            south.assignResidentToBed("N1", late, "B4");  // journaled after the save, saved again on close
+        }
+
+        try (FacilityRegistry registry = new FacilityRegistry(root, 2)) {
+            assertEquals(1, registry.open("north").getOccupancy().getOccupied());
+            assertEquals(3, registry.open("south").getOccupancy().getOccupied());
+            assertFalse(registry.getComplianceReports().get("north").isCompliant());
+            registry.close("north");
+            assertEquals(List.of("south"), registry.getFacilityIds());
+            assertEquals(1, registry.open("north").getOccupancy().getOccupied());
+        }
+    }
+
+    @Test
+    public void testApiServerServesHomeOverHttp() throws Exception {
+        CareHome home = new CareHome();
+        SampleData.bootstrapBeds(home);
+        SampleData.bootstrapPeople(home);
+        try (ApiServer api = new ApiServer(home, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            api.start();
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://127.0.0.1:" + api.getPort();
+            BiFunction<String, String, HttpRequest.Builder> request = (path, staffId) -> {
+                HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(base + path));
+                return staffId == null ? b : b.header("X-Staff-Id", staffId);
+            };
+            Function<HttpRequest.Builder, HttpResponse<String>> send = b -> {
+                try {
+                    return client.send(b.build(), HttpResponse.BodyHandlers.ofString());
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            };
+
+            HttpResponse<String> added = send.apply(request.apply("/residents", null)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"id\": \"R9\", \"name\": \"Ann \\\"Nan\\\" Lee\", \"gender\": \"F\"}")));
+            assertEquals(200, added.statusCode());
+            assertEquals("{\"id\":\"R9\",\"name\":\"Ann \\\"Nan\\\" Lee\",\"gender\":\"F\",\"condition\":null}", added.body());
+            assertEquals(409, send.apply(request.apply("/residents", null)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"id\":\"R9\",\"name\":\"Again\",\"gender\":\"F\"}"))).statusCode());
+            // Racing admissions of one id: exactly one gets in
+            List<Integer> statuses = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> posters = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                posters.add(Thread.startVirtualThread(() -> statuses.add(send.apply(request.apply("/residents", null)
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"id\":\"R10\",\"name\":\"Twin\",\"gender\":\"M\"}"))).statusCode())));
+            }
+            for (Thread t : posters) {
+                t.join();
+            }
+            assertEquals(1, Collections.frequency(statuses, 200));
+            assertEquals(15, Collections.frequency(statuses, 409));
+            assertEquals(1, home.getResidents().stream().filter(r -> r.getResidentId().equals("R10")).count());
+
+            assertEquals(200, send.apply(request.apply("/beds/B2/resident", "N1")
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"resident\":\"R9\"}"))).statusCode());
+            assertEquals("{\"beds\":4,\"occupied\":1,\"vacant\":3,\"male\":0,\"female\":1}",
+                    send.apply(request.apply("/occupancy", null)).body());
+            assertTrue(send.apply(request.apply("/beds/B2/resident", "D1")).body().contains("\"id\":\"R9\""));
+            HttpResponse<String> allocated = send.apply(request.apply("/beds/allocate", "N1")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"resident\":\"R1\"}")));
+            assertEquals(200, allocated.statusCode());
+            assertTrue(allocated.body(), allocated.body().matches("\\{\"bed\":\"B[34]\"}"));  // the men's side of the ward
+            assertEquals(200, send.apply(request.apply("/moves", "N1")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"from\":\"B2\",\"to\":\"B1\"}"))).statusCode());
+
+            // Errors map to status codes
+            assertEquals(401, send.apply(request.apply("/beds/B1/resident", null)).statusCode());
+            assertEquals(403, send.apply(request.apply("/moves", "D1")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"from\":\"B1\",\"to\":\"B2\"}"))).statusCode());
+            assertEquals(409, send.apply(request.apply("/beds/B1/resident", "N1")
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"resident\":\"R2\"}"))).statusCode());
+            assertEquals(404, send.apply(request.apply("/residents/R404", null)).statusCode());
+            assertEquals(400, send.apply(request.apply("/moves", "N1")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"from\":\"B1\""))).statusCode());
+            assertEquals(404, send.apply(request.apply("/nowhere", null)).statusCode());
+
+            // Shifts, duty, compliance and the log
+            HttpResponse<String> shift = send.apply(request.apply("/shifts", "M1").POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"staff\":\"N2\",\"day\":\"monday\",\"start\":\"06:00\",\"end\":\"16:00\"}")));
+            assertEquals(shift.body(), 200, shift.statusCode());
+            assertEquals(403, send.apply(request.apply("/shifts", "N1").POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"staff\":\"N2\",\"day\":\"MONDAY\",\"start\":\"06:00\",\"end\":\"07:00\"}"))).statusCode());
+            assertEquals("[{\"day\":\"MONDAY\",\"start\":\"06:00\",\"end\":\"16:00\"}]", send.apply(request.apply("/shifts/N2", null)).body());
+            assertEquals("[\"N2\"]", send.apply(request.apply("/on-duty?day=MONDAY&time=12:00", null)).body());
+            String compliance = send.apply(request.apply("/compliance", null)).body();
+            assertTrue(compliance, compliance.startsWith("{\"compliant\":false,\"violations\":[{\"type\":\"SHIFT_TOO_LONG\",\"staff\":\"N2\""));
+            String logs = send.apply(request.apply("/logs?resident=R9&size=10", null)).body();
+            assertTrue(logs, logs.startsWith("[{\"time\":") && logs.contains("\"action\":\"MOVE_RESIDENT\""));
+            assertEquals("[]", send.apply(request.apply("/logs?staff=nobody", null)).body());
+        }
+    }
+
+    /** Records what it is given; on the writer thread it first waits for release. */
+    private static AsyncLogWriter.Sink stallingSink(CountDownLatch release, List<String> written) {
+        return new AsyncLogWriter.Sink() {
+            public void write(LogEntry[] entries, long[] seqs, int count) {
+                if (Thread.currentThread().getName().equals("carehome-log-writer")) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                for (int i = 0; i < count; i++) written.add(entries[i].getAction());
+            }
+
+            public void force() {
+            }
+        };
+    }
 }